@@ -0,0 +1,261 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Compiles many files in one run (so the JVM only starts once), each on a worker thread and each to
+ * its own output file, then prints a summary: files per second, failures, and the per-file latency.
+ * <p>
+ * The inputs can be files, directories (every ".txt" file in them, recursively), globs such as
+ * "tests/*.txt", or "@list" (a file listing one input per line). The workers are a fixed pool (one
+ * thread per core, by default) or, with "--threads=virtual" on a JVM that has them, virtual threads.
+ * Each worker borrows a {@link ParseSession}, so the parsing infrastructure is only created once per
+ * thread, no matter how many files there are.
+ */
+final class BatchCompiler {
+
+    // Files smaller than this are read onto the heap; bigger ones are memory-mapped.
+    private static final long MAP_THRESHOLD = 1 << 16;
+
+    private BatchCompiler() {
+    }
+
+    /**
+     * Run a batch.
+     *
+     * @param options The command line options.
+     * @return the exit code: 0 if every file compiled, 5 if any did not.
+     */
+    static int run(final CompilerOptions options) {
+        final List<Input> inputs;
+        try {
+            inputs = expand(options.files);
+        } catch (IOException | UncheckedIOException ex) {
+            Logger.getGlobal().log(Level.SEVERE, format("Could not read the file!!! {0}", ex.getMessage()));
+            return 3;
+        }
+        if (inputs.isEmpty()) {
+            Logger.getGlobal().log(Level.SEVERE, "No input files found");
+            return 2;
+        }
+
+        final LL1Grammar grammar;
+        try {
+            grammar = options.grammarFile != null ? LL1Grammar.fromFile(Path.of(options.grammarFile)) : null;
+        } catch (IOException | IllegalArgumentException ex) {
+            Logger.getGlobal().log(Level.SEVERE, format("Bad grammar!!! {0}", ex.getMessage()));
+            return 4;
+        }
+
+        final Path outputDirectory = options.outputDirectory != null ? Path.of(options.outputDirectory) : null;
+        final Queue<ParseSession> sessions = new ConcurrentLinkedQueue<>();
+        final long[] latencies = new long[inputs.size()];
+        final AtomicInteger failures = new AtomicInteger();
+
+        final long start = System.nanoTime();
+        final ExecutorService executor = newExecutor(options.threads);
+        for (int i = 0; i < inputs.size(); i++) {
+            final int index = i;
+            executor.execute(() -> {
+                final long began = System.nanoTime();
+                ParseSession session = sessions.poll();
+                boolean compiled = false;
+                try {
+                    if (session == null) {
+                        session = new ParseSession(options.engine, grammar, !options.validate);
+                        session.setErrorRecovery(options.recover);
+                        session.getCodeGenerator().configure(options);
+                    }
+                    compiled = compile(session, inputs.get(index), outputDirectory, options.format, System.err);
+                } catch (RuntimeException ex) {
+                    System.err.printf("%s: Could not compile the file!!! %s%n", inputs.get(index).file(), ex);
+                    session = null; // (it may be left half way through a parse, so it is not used again)
+                } finally {
+                    if (!compiled) {
+                        failures.incrementAndGet();
+                    }
+                    if (session != null) {
+                        sessions.add(session);
+                    }
+                    latencies[index] = System.nanoTime() - began;
+                }
+            });
+        }
+
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return 3;
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("Compiled %d files in %.2f s (%.0f files/sec), %d failed; latency p50 %.3f ms, p99 %.3f ms%n",
+                inputs.size(), seconds, inputs.size() / seconds, failures.get(),
+                percentile(latencies, 50) / 1e6, percentile(latencies, 99) / 1e6);
+        return failures.get() == 0 ? 0 : 5;
+    }
+
+    /**
+     * Compile one file (and report any errors).
+     *
+     * @param errors Where the errors are reported.
+     * @return true if it compiled.
+     */
+    static boolean compile(final ParseSession session, final Input input, final Path outputDirectory,
+                           final CompilerOptions.Format format, final PrintStream errors) {
+        try {
+            session.parse(read(input.file()));
+
+            if (!session.getDiagnostics().isEmpty()) {
+                for (final ParseException error : session.getDiagnostics()) {
+                    errors.printf("%s:%d:%d: %s%n", input.file(), error.getLine(), error.getColumn(), error.getMessage());
+                }
+                return false;
+            }
+
+            if (session.getParseTree() != null) {
+                final Path destination = destination(input, outputDirectory, format);
+                if (MAIN.isSameFile(input.file(), destination.toString())) {
+                    errors.printf("%s: The output file is the input file%n", input.file());
+                    return false;
+                }
+                try (OutputSink output = OutputSink.toFile(destination)) {
+                    session.getCodeGenerator().setOutput(output);
+                    session.getCodeGenerator().generateCode();
+                }
+            }
+            return true;
+
+        } catch (IOException | UncheckedIOException ex) {
+            errors.printf("%s: Could not compile the file!!! %s%n", input.file(), ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * An input file, and the directory it was found in (its output keeps the same path relative to
+     * that directory under "--out").
+     */
+    record Input(Path file, Path base) {
+    }
+
+    /**
+     * Expand the command line inputs into a list of files.
+     *
+     * @param arguments Files, directories, globs, and "@list" files.
+     * @return the files, in order (with directories and globs sorted by name).
+     * @throws IOException if a directory or list cannot be read.
+     */
+    static List<Input> expand(final List<String> arguments) throws IOException {
+        final List<Input> inputs = new ArrayList<>();
+
+        for (final String argument : arguments) {
+            if (argument.startsWith("@")) {
+                for (final String line : Files.readAllLines(Path.of(argument.substring(1)))) {
+                    if (!line.isBlank()) {
+                        inputs.add(single(Path.of(line.strip())));
+                    }
+                }
+            } else if (argument.contains("*") || argument.contains("?") || argument.contains("[") || argument.contains("{")) {
+                inputs.addAll(glob(argument));
+            } else if (Files.isDirectory(Path.of(argument))) {
+                inputs.addAll(walk(Path.of(argument), "glob:**.txt"));
+            } else {
+                inputs.add(single(Path.of(argument)));
+            }
+        }
+        return inputs;
+    }
+
+    private static Input single(final Path file) {
+        final Path parent = file.getParent();
+        return new Input(file, parent != null ? parent : Path.of(""));
+    }
+
+    // The files matching a glob: the part before the first wildcard is the directory to search.
+    private static List<Input> glob(final String pattern) throws IOException {
+        final int wildcard = pattern.replaceAll("[?\\[{]", "*").indexOf('*');
+        final int separator = pattern.lastIndexOf(File.separatorChar, wildcard);
+        final Path base = separator < 0 ? Path.of(".") : Path.of(pattern.substring(0, separator + 1));
+
+        return walk(base, "glob:" + (separator < 0 ? pattern : pattern.substring(separator + 1)));
+    }
+
+    private static List<Input> walk(final Path base, final String syntaxAndPattern) throws IOException {
+        final var matcher = FileSystems.getDefault().getPathMatcher(syntaxAndPattern);
+        try (Stream<Path> paths = Files.walk(base)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> matcher.matches(base.relativize(path)))
+                    .sorted()
+                    .map(path -> new Input(path, base))
+                    .toList();
+        }
+    }
+
+    // Where the output of an input goes: "name.dot" (or ".ptree"), next to it or at the same place in the output directory.
+    private static Path destination(final Input input, final Path outputDirectory,
+                                    final CompilerOptions.Format format) throws IOException {
+        final String output = MAIN.outputFileName(input.file().getFileName().toString(), format);
+
+        if (outputDirectory == null) {
+            return input.file().resolveSibling(output);
+        }
+        final Path destination = outputDirectory.resolve(input.base().relativize(input.file())).resolveSibling(output);
+        Files.createDirectories(destination.getParent());
+        return destination;
+    }
+
+    private static ByteBuffer read(final Path input) throws IOException {
+        return Files.size(input) < MAP_THRESHOLD
+                ? ByteBuffer.wrap(Files.readAllBytes(input))
+                : LexicalAnalyzer.mapFile(input.toFile());
+    }
+
+    /**
+     * The worker threads: a fixed pool, or virtual threads (found reflectively, as they are not in
+     * every JVM this runs on).
+     */
+    private static ExecutorService newExecutor(final String threads) {
+        if ("virtual".equals(threads)) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException ex) {
+                System.err.println("Virtual threads are not available on this JVM; using one thread per core");
+            }
+        }
+        final int count = threads == null || threads.equals("virtual")
+                ? Runtime.getRuntime().availableProcessors()
+                : Integer.parseInt(threads);
+        return Executors.newFixedThreadPool(count);
+    }
+
+    // The p-th percentile of sorted values (nearest rank).
+    private static long percentile(final long[] sorted, final int p) {
+        final int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(rank - 1, 0)];
+    }
+}
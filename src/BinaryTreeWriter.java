@@ -0,0 +1,149 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * An output pass that writes a {@link ParseTree} in a compact binary format, which
+ * {@link MappedTreeReader} can memory-map and navigate without loading it.
+ * <p>
+ * The format (little-endian; version {@value #VERSION}):
+ * <pre>
+ *   header   magic "PTRE", version (u16), reserved (u16), node count, symbol count,
+ *            offset of the nodes (i64), offset of the symbols (i64)         32 bytes
+ *   nodes    one fixed-width record per node                                32 bytes each
+ *   symbols  (symbol count + 1) offsets into the string bytes, then the UTF-8 bytes of every symbol
+ * </pre>
+ * A node record is: kind (u8), 3 reserved bytes, label (a symbol), parent, first child, child
+ * count, first and last token of the subtree, and the node's id in the original tree (its DOT
+ * name). Missing values are -1.
+ * <p>
+ * The nodes are numbered breadth first (the root is 0), so the children of a node are the
+ * consecutive records [first child, first child + child count).
+ */
+final class BinaryTreeWriter {
+
+    static final int MAGIC = 0x45525450; // "PTRE", little-endian
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int NODE_SIZE = 32;
+
+    private final OutputSink sink;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    private long length;
+
+    private BinaryTreeWriter(final OutputSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Write a tree to a sink.
+     *
+     * @param tree The parse tree.
+     * @param sink Receives the binary tree.
+     * @return the number of bytes written.
+     */
+    static long write(final ParseTree tree, final OutputSink sink) {
+        final int size = tree.size();
+
+        // Number the nodes breadth first (so every node's children are together).
+        final int[] order = new int[size];
+        final int[] numbers = new int[size];
+        int count = size == 0 ? 0 : 1;
+        for (int i = 0; i < count; i++) {
+            numbers[order[i]] = i;
+            for (int child = tree.firstChild(order[i]); child != ParseTree.NONE; child = tree.nextSibling(child)) {
+                order[count++] = child;
+            }
+        }
+
+        // The token span of every subtree (children come after their parents, so walk backwards).
+        final int[] firstTokens = new int[count];
+        final int[] lastTokens = new int[count];
+        for (int i = count - 1; i >= 0; i--) {
+            final int node = order[i];
+            int first = tree.token(node);
+            int last = first;
+            for (int child = tree.firstChild(node); child != ParseTree.NONE; child = tree.nextSibling(child)) {
+                final int number = numbers[child];
+                if (firstTokens[number] != ParseTree.NONE && (first == ParseTree.NONE || firstTokens[number] < first)) {
+                    first = firstTokens[number];
+                }
+                last = Math.max(last, lastTokens[number]);
+            }
+            firstTokens[i] = first;
+            lastTokens[i] = last;
+        }
+
+        final SymbolTable symbols = tree.symbols();
+        final int symbolCount = symbols.size();
+        final var writer = new BinaryTreeWriter(sink);
+
+        // Header
+        writer.reserve(HEADER_SIZE);
+        writer.buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0)
+                .putInt(count).putInt(symbolCount)
+                .putLong(HEADER_SIZE).putLong(HEADER_SIZE + (long) count * NODE_SIZE);
+
+        // Nodes
+        for (int i = 0; i < count; i++) {
+            final int node = order[i];
+            final int firstChild = tree.firstChild(node);
+            int childCount = 0;
+            for (int child = firstChild; child != ParseTree.NONE; child = tree.nextSibling(child)) {
+                childCount++;
+            }
+
+            writer.reserve(NODE_SIZE);
+            writer.buffer.put(tree.kind(node)).put((byte) 0).putShort((short) 0)
+                    .putInt(tree.label(node))
+                    .putInt(tree.parent(node) == ParseTree.NONE ? ParseTree.NONE : numbers[tree.parent(node)])
+                    .putInt(firstChild == ParseTree.NONE ? ParseTree.NONE : numbers[firstChild])
+                    .putInt(childCount)
+                    .putInt(firstTokens[i])
+                    .putInt(lastTokens[i])
+                    .putInt(node);
+        }
+
+        // Symbols: the offsets, then the bytes.
+        int offset = 0;
+        for (int id = 0; id < symbolCount; id++) {
+            writer.reserve(Integer.BYTES);
+            writer.buffer.putInt(offset);
+            offset += symbols.bytes(id).length;
+        }
+        writer.reserve(Integer.BYTES);
+        writer.buffer.putInt(offset);
+
+        for (int id = 0; id < symbolCount; id++) {
+            writer.append(symbols.bytes(id));
+        }
+
+        writer.flush();
+        return writer.length;
+    }
+
+    private void append(final byte[] bytes) {
+        if (bytes.length > buffer.remaining()) {
+            this.flush();
+            if (bytes.length > buffer.capacity()) {
+                sink.write(bytes, 0, bytes.length);
+                length += bytes.length;
+                return;
+            }
+        }
+        buffer.put(bytes);
+    }
+
+    private void reserve(final int bytes) {
+        if (buffer.remaining() < bytes) {
+            this.flush();
+        }
+    }
+
+    private void flush() {
+        sink.write(buffer.array(), 0, buffer.position());
+        length += buffer.position();
+        buffer.clear();
+    }
+}
@@ -0,0 +1,549 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Compiles a program (the executable nodes of an {@link Interpreter}) to JVM bytecode, and loads
+ * it as a hidden class, so the JIT compiles the program itself rather than the interpreter.
+ * <p>
+ * The program becomes one method, {@code run(LongSupplier in, LongConsumer out)} (or its double
+ * version): every variable is a local, every operator an instruction, and "if", "while" and
+ * "do ... until" are plain branches. The class file is written by hand (there is no classfile
+ * library in the JDK 17 API); its stack map frames are simple because the operand stack is empty
+ * at every branch target, and the locals never change type (they are all set to 0 first).
+ * <p>
+ * A method's code is limited to 64 KB (and a branch to 32 KB): larger programs cannot be
+ * compiled, and are left to the interpreter.
+ */
+final class BytecodeCompiler {
+
+    /**
+     * A compiled program that computes with longs.
+     */
+    interface LongProgram {
+        void run(LongSupplier in, LongConsumer out);
+    }
+
+    /**
+     * A compiled program that computes with doubles.
+     */
+    interface DoubleProgram {
+        void run(DoubleSupplier in, DoubleConsumer out);
+    }
+
+    private static final String CLASS_NAME = "BytecodeProgram";
+
+    // Opcodes
+    private static final int LCONST_0 = 0x09, LCONST_1 = 0x0a, DCONST_0 = 0x0e, DCONST_1 = 0x0f, LDC2_W = 0x14;
+    private static final int LLOAD = 0x16, DLOAD = 0x18, ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ALOAD_2 = 0x2c;
+    private static final int LSTORE = 0x37, DSTORE = 0x39;
+    private static final int LADD = 0x61, DADD = 0x63, LSUB = 0x65, DSUB = 0x67;
+    private static final int LMUL = 0x69, DMUL = 0x6b, LDIV = 0x6d, DDIV = 0x6f;
+    private static final int LCMP = 0x94, DCMPL = 0x97, DCMPG = 0x98;
+    private static final int IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e;
+    private static final int GOTO = 0xa7, RETURN = 0xb1, INVOKESPECIAL = 0xb7, INVOKEINTERFACE = 0xb9, WIDE = 0xc4;
+
+    // The branch that skips a comparison's "then" (the opposite test), by Interpreter.Compare constant.
+    private static final int[] BRANCH_IF_FALSE = {IFGE, IFLE, IFGT, IFLT, IFNE, IFEQ};
+
+    // Locals: this, in, out, then the variables (two slots each).
+    private static final int FIRST_VARIABLE = 3;
+
+    private final boolean doubles;
+    private final int variableCount;
+    private final ConstantPool pool = new ConstantPool();
+    private final Bytes code = new Bytes();
+    private final List<Label> labels = new ArrayList<>();
+    private int stack;
+    private int maxStack;
+
+    private final int thisClass;
+    private final int inClass;
+    private final int outClass;
+
+    private BytecodeCompiler(final Interpreter program) {
+        this.doubles = program.mode() == Interpreter.Mode.DOUBLE;
+        this.variableCount = program.variables().size();
+        this.thisClass = pool.classRef(CLASS_NAME);
+        this.inClass = pool.classRef(doubles ? "java/util/function/DoubleSupplier" : "java/util/function/LongSupplier");
+        this.outClass = pool.classRef(doubles ? "java/util/function/DoubleConsumer" : "java/util/function/LongConsumer");
+    }
+
+    /**
+     * Compile a program, and load it.
+     *
+     * @param program The program.
+     * @return the compiled program, ready to run.
+     * @throws IllegalArgumentException if the program is too large to compile.
+     */
+    static Compiled compile(final Interpreter program) {
+        final byte[] classFile = new BytecodeCompiler(program).classFile(program.program());
+        try {
+            final Class<?> type = MethodHandles.lookup().defineHiddenClass(classFile, true).lookupClass();
+            return new Compiled(program.mode(), type.getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Could not load the compiled program", ex);
+        }
+    }
+
+    /**
+     * A loaded program; it is run like an {@link Interpreter}.
+     */
+    static final class Compiled {
+        private final Interpreter.Mode mode;
+        private final Object program;
+
+        private Compiled(final Interpreter.Mode mode, final Object program) {
+            this.mode = mode;
+            this.program = program;
+        }
+
+        /**
+         * Run the program.
+         *
+         * @param input  Where "read" gets its numbers.
+         * @param output Where "write" puts them (flushed at the end).
+         * @throws Interpreter.RuntimeError if the program fails (e.g. divides by 0, or runs out of input).
+         */
+        void run(final InputStream input, final OutputSink output) {
+            final var reader = new Interpreter.NumberReader(input);
+            try {
+                if (mode == Interpreter.Mode.DOUBLE) {
+                    ((DoubleProgram) program).run(reader::nextDouble, value -> output.write(value + "\n"));
+                } else {
+                    ((LongProgram) program).run(reader::nextLong, value -> output.write(value + "\n"));
+                }
+            } catch (ArithmeticException ex) {
+                throw new Interpreter.RuntimeError("Division by zero");
+            } finally {
+                output.flush();
+            }
+        }
+
+        /**
+         * @return the program as a {@link LongProgram} (its mode must be LONG).
+         */
+        LongProgram longProgram() {
+            return (LongProgram) program;
+        }
+
+        /**
+         * @return the program as a {@link DoubleProgram} (its mode must be DOUBLE).
+         */
+        DoubleProgram doubleProgram() {
+            return (DoubleProgram) program;
+        }
+    }
+
+    // *****************************************************************************************************
+
+    private byte[] classFile(final Interpreter.Stmt program) {
+        final int objectClass = pool.classRef("java/lang/Object");
+        final int programInterface = pool.classRef(doubles ? "BytecodeCompiler$DoubleProgram" : "BytecodeCompiler$LongProgram");
+        final int objectInit = pool.methodRef(objectClass, "<init>", "()V", false);
+        final int runDescriptor = pool.utf8(doubles
+                ? "(Ljava/util/function/DoubleSupplier;Ljava/util/function/DoubleConsumer;)V"
+                : "(Ljava/util/function/LongSupplier;Ljava/util/function/LongConsumer;)V");
+
+        // run(): the variables start at 0, then the program.
+        for (int slot = 0; slot < variableCount; slot++) {
+            this.constant(0, 0);
+            this.store(slot);
+        }
+        this.statement(program);
+        this.op(RETURN, 0);
+        this.resolveLabels();
+
+        final var file = new Bytes();
+        final var methods = new Bytes();
+
+        // <init>(): super()
+        final var init = new Bytes();
+        init.u1(ALOAD_0).u1(INVOKESPECIAL).u2(objectInit).u1(RETURN);
+        methods.u2(0x0001).u2(pool.utf8("<init>")).u2(pool.utf8("()V")).u2(1);
+        this.codeAttribute(methods, init, 1, 1, null);
+
+        methods.u2(0x0001).u2(pool.utf8("run")).u2(runDescriptor).u2(1);
+        this.codeAttribute(methods, code, maxStack, FIRST_VARIABLE + 2 * variableCount, this.stackMapTable());
+
+        file.u4(0xCAFEBABE).u2(0).u2(61);
+        pool.writeTo(file);
+        file.u2(0x0030) // final, super
+                .u2(thisClass).u2(objectClass)
+                .u2(1).u2(programInterface)
+                .u2(0) // fields
+                .u2(2).append(methods)
+                .u2(0); // attributes
+        return file.toByteArray();
+    }
+
+    private void codeAttribute(final Bytes method, final Bytes body, final int maxStack, final int maxLocals,
+                               final Bytes stackMapTable) {
+        if (body.length > 65535 || maxStack > 65535 || maxLocals > 65535) {
+            throw new IllegalArgumentException("The program is too large to compile to bytecode");
+        }
+        final int attributes = stackMapTable != null ? 6 + stackMapTable.length : 0;
+        method.u2(pool.utf8("Code")).u4(12 + body.length + attributes)
+                .u2(maxStack).u2(maxLocals)
+                .u4(body.length).append(body)
+                .u2(0) // exceptions
+                .u2(stackMapTable != null ? 1 : 0);
+        if (stackMapTable != null) {
+            method.u2(pool.utf8("StackMapTable")).u4(stackMapTable.length).append(stackMapTable);
+        }
+    }
+
+    // A full frame at every branch target; they are all the same (no stack, and every local set).
+    private Bytes stackMapTable() {
+        final var offsets = new TreeSet<Integer>();
+        for (final Label label : labels) {
+            offsets.add(label.offset);
+        }
+
+        final var table = new Bytes();
+        table.u2(offsets.size());
+        int previous = -1;
+        for (final int offset : offsets) {
+            table.u1(255).u2(offset - previous - 1).u2(FIRST_VARIABLE + variableCount);
+            table.u1(7).u2(thisClass).u1(7).u2(inClass).u1(7).u2(outClass);
+            for (int slot = 0; slot < variableCount; slot++) {
+                table.u1(doubles ? 3 : 4);
+            }
+            table.u2(0);
+            previous = offset;
+        }
+        return table;
+    }
+
+    // *****************************************************************************************************
+
+    private void statement(final Interpreter.Stmt statement) {
+        if (statement instanceof Interpreter.Block block) {
+            for (final Interpreter.Stmt s : block.statements) {
+                this.statement(s);
+            }
+        } else if (statement instanceof Interpreter.AssignLong assign) {
+            this.expression(assign.value);
+            this.store(assign.slot);
+        } else if (statement instanceof Interpreter.AssignDouble assign) {
+            this.expression(assign.value);
+            this.store(assign.slot);
+        } else if (statement instanceof Interpreter.ReadLong read) {
+            this.op(ALOAD_1, 1);
+            this.invokeInterface(inClass, "getAsLong", "()J", 1, 1);
+            this.store(read.slot);
+        } else if (statement instanceof Interpreter.ReadDouble read) {
+            this.op(ALOAD_1, 1);
+            this.invokeInterface(inClass, "getAsDouble", "()D", 1, 1);
+            this.store(read.slot);
+        } else if (statement instanceof Interpreter.WriteLong write) {
+            this.op(ALOAD_2, 1);
+            this.expression(write.value);
+            this.invokeInterface(outClass, "accept", "(J)V", 3, -3);
+        } else if (statement instanceof Interpreter.WriteDouble write) {
+            this.op(ALOAD_2, 1);
+            this.expression(write.value);
+            this.invokeInterface(outClass, "accept", "(D)V", 3, -3);
+        } else if (statement instanceof Interpreter.If branch) {
+            final Label end = new Label();
+            if (branch.otherwise == null) {
+                this.condition(branch.condition, end);
+                this.statement(branch.then);
+            } else {
+                final Label otherwise = new Label();
+                this.condition(branch.condition, otherwise);
+                this.statement(branch.then);
+                this.branch(GOTO, end);
+                this.bind(otherwise);
+                this.statement(branch.otherwise);
+            }
+            this.bind(end);
+        } else if (statement instanceof Interpreter.While loop) {
+            final Label top = new Label();
+            final Label end = new Label();
+            this.bind(top);
+            this.condition(loop.condition, end);
+            this.statement(loop.body);
+            this.branch(GOTO, top);
+            this.bind(end);
+        } else if (statement instanceof Interpreter.DoUntil loop) {
+            final Label top = new Label();
+            this.bind(top);
+            this.statement(loop.body);
+            this.condition(loop.condition, top);
+        } else {
+            throw new IllegalArgumentException("Cannot compile " + statement.getClass().getSimpleName());
+        }
+    }
+
+    // Test a condition, and go to "whenFalse" if it is false.
+    private void condition(final Interpreter.Cond condition, final Label whenFalse) {
+        final int comparison;
+        if (condition instanceof Interpreter.CompareLong compare) {
+            comparison = compare.comparison;
+            this.expression(compare.left);
+            this.expression(compare.right);
+            this.op(LCMP, -3);
+        } else if (condition instanceof Interpreter.CompareDouble compare) {
+            comparison = compare.comparison;
+            this.expression(compare.left);
+            this.expression(compare.right);
+            // (NaN compares as 1 for "<" and "<=", and as -1 otherwise: only "!=" is true.)
+            this.op(comparison == Interpreter.Compare.LT || comparison == Interpreter.Compare.LE ? DCMPG : DCMPL, -3);
+        } else {
+            throw new IllegalArgumentException("Cannot compile " + condition.getClass().getSimpleName());
+        }
+        this.branch(BRANCH_IF_FALSE[comparison], whenFalse);
+    }
+
+    private void expression(final Interpreter.Expr expression) {
+        if (expression instanceof Interpreter.Constant constant) {
+            this.constant(constant.longValue, constant.doubleValue);
+        } else if (expression instanceof Interpreter.Variable variable) {
+            this.local(doubles ? DLOAD : LLOAD, variable.slot);
+            this.stack(2);
+        } else if (expression instanceof Interpreter.Binary binary) {
+            this.binary(binary);
+        } else if (expression instanceof Interpreter.Chain chain) {
+            this.expression(chain.operands[0]);
+            for (int i = 0; i < chain.operators.length; i++) {
+                this.expression(chain.operands[i + 1]);
+                this.op(this.opcode(chain.operators[i]), -2);
+            }
+        } else {
+            throw new IllegalArgumentException("Cannot compile " + expression.getClass().getSimpleName());
+        }
+    }
+
+    // Down the left operands with a loop (a left-deep tree is as deep as it is long), then back up.
+    private void binary(final Interpreter.Binary expression) {
+        final List<Interpreter.Binary> spine = new ArrayList<>();
+        Interpreter.Expr left = expression;
+        while (left instanceof Interpreter.Binary binary) {
+            spine.add(binary);
+            left = binary.left;
+        }
+        this.expression(left);
+        for (int i = spine.size() - 1; i >= 0; i--) {
+            this.expression(spine.get(i).right);
+            this.op(this.opcode(spine.get(i).operator()), -2);
+        }
+    }
+
+    private int opcode(final int operator) {
+        return switch (operator) {
+            case Interpreter.Chain.ADD -> doubles ? DADD : LADD;
+            case Interpreter.Chain.SUBTRACT -> doubles ? DSUB : LSUB;
+            case Interpreter.Chain.MULTIPLY -> doubles ? DMUL : LMUL;
+            default -> doubles ? DDIV : LDIV;
+        };
+    }
+
+    private void constant(final long longValue, final double doubleValue) {
+        if (doubles) {
+            if (Double.doubleToRawLongBits(doubleValue) == 0) {
+                this.op(DCONST_0, 2);
+            } else if (doubleValue == 1) {
+                this.op(DCONST_1, 2);
+            } else {
+                this.op(LDC2_W, 2);
+                code.u2(pool.doubleConstant(doubleValue));
+            }
+        } else if (longValue == 0 || longValue == 1) {
+            this.op(longValue == 0 ? LCONST_0 : LCONST_1, 2);
+        } else {
+            this.op(LDC2_W, 2);
+            code.u2(pool.longConstant(longValue));
+        }
+    }
+
+    private void store(final int slot) {
+        this.local(doubles ? DSTORE : LSTORE, slot);
+        this.stack(-2);
+    }
+
+    // A load or a store of a variable.
+    private void local(final int opcode, final int slot) {
+        final int local = FIRST_VARIABLE + 2 * slot;
+        if (local <= 255) {
+            code.u1(opcode).u1(local);
+        } else {
+            code.u1(WIDE).u1(opcode).u2(local);
+        }
+    }
+
+    private void invokeInterface(final int owner, final String name, final String descriptor, final int argumentSlots,
+                                 final int stackChange) {
+        this.op(INVOKEINTERFACE, stackChange);
+        code.u2(pool.methodRef(owner, name, descriptor, true)).u1(argumentSlots).u1(0);
+    }
+
+    private void op(final int opcode, final int stackChange) {
+        code.u1(opcode);
+        this.stack(stackChange);
+    }
+
+    private void stack(final int change) {
+        stack += change;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    // *****************************************************************************************************
+
+    /**
+     * A branch target.
+     */
+    private static final class Label {
+        int offset = -1;
+
+        // The branches to it: the offset of each branch instruction.
+        final List<Integer> branches = new ArrayList<>();
+    }
+
+    private void branch(final int opcode, final Label target) {
+        target.branches.add(code.length);
+        this.op(opcode, opcode == GOTO ? 0 : -1);
+        code.u2(0);
+    }
+
+    private void bind(final Label label) {
+        label.offset = code.length;
+        labels.add(label);
+    }
+
+    private void resolveLabels() {
+        for (final Label label : labels) {
+            for (final int branch : label.branches) {
+                final int offset = label.offset - branch;
+                if (offset != (short) offset) {
+                    throw new IllegalArgumentException("The program is too large to compile to bytecode");
+                }
+                code.set2(branch + 1, offset);
+            }
+        }
+    }
+
+    // *****************************************************************************************************
+
+    /**
+     * The constant pool: every entry is added once.
+     */
+    private static final class ConstantPool {
+        private final Bytes entries = new Bytes();
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private int count = 1;
+
+        int utf8(final String text) {
+            return this.entry("U" + text, 1, () -> {
+                final byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+                entries.u1(1).u2(bytes.length).append(bytes, bytes.length);
+            });
+        }
+
+        int classRef(final String name) {
+            final int utf8 = this.utf8(name);
+            return this.entry("C" + name, 1, () -> entries.u1(7).u2(utf8));
+        }
+
+        int methodRef(final int owner, final String name, final String descriptor, final boolean isInterface) {
+            final int nameAndType = this.nameAndType(name, descriptor);
+            return this.entry("M" + owner + " " + nameAndType, 1,
+                    () -> entries.u1(isInterface ? 11 : 10).u2(owner).u2(nameAndType));
+        }
+
+        int longConstant(final long value) {
+            return this.entry("J" + value, 2, () -> entries.u1(5).u8(value));
+        }
+
+        int doubleConstant(final double value) {
+            final long bits = Double.doubleToRawLongBits(value);
+            return this.entry("D" + bits, 2, () -> entries.u1(6).u8(bits));
+        }
+
+        void writeTo(final Bytes file) {
+            if (count > 65535) {
+                throw new IllegalArgumentException("The program is too large to compile to bytecode");
+            }
+            file.u2(count).append(entries);
+        }
+
+        private int nameAndType(final String name, final String descriptor) {
+            final int nameIndex = this.utf8(name);
+            final int descriptorIndex = this.utf8(descriptor);
+            return this.entry("N" + name + " " + descriptor, 1,
+                    () -> entries.u1(12).u2(nameIndex).u2(descriptorIndex));
+        }
+
+        // The index of an entry, which is written (taking up "slots" indexes) if it is new.
+        private int entry(final String key, final int slots, final Runnable write) {
+            final Integer index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            write.run();
+            indexes.put(key, count);
+            count += slots;
+            return count - slots;
+        }
+    }
+
+    /**
+     * A growing array of big-endian bytes.
+     */
+    private static final class Bytes {
+        byte[] data = new byte[256];
+        int length;
+
+        Bytes u1(final int value) {
+            if (length == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[length++] = (byte) value;
+            return this;
+        }
+
+        Bytes u2(final int value) {
+            return this.u1(value >>> 8).u1(value);
+        }
+
+        Bytes u4(final int value) {
+            return this.u2(value >>> 16).u2(value);
+        }
+
+        Bytes u8(final long value) {
+            return this.u4((int) (value >>> 32)).u4((int) value);
+        }
+
+        Bytes append(final Bytes bytes) {
+            return this.append(bytes.data, bytes.length);
+        }
+
+        Bytes append(final byte[] bytes, final int count) {
+            for (int i = 0; i < count; i++) {
+                this.u1(bytes[i]);
+            }
+            return this;
+        }
+
+        void set2(final int position, final int value) {
+            data[position] = (byte) (value >>> 8);
+            data[position + 1] = (byte) value;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, length);
+        }
+    }
+}
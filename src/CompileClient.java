@@ -0,0 +1,67 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * The client of a {@link CompileServer}: sends it a command line, prints what it answers (to
+ * stdout and stderr), and exits with its exit code. It loads nothing of the compiler, so it starts
+ * as fast as a JVM can.
+ * <p>
+ * Usage: java CompileClient &lt;socket&gt; [options] &lt;file | directory | glob | @list&gt;...
+ * (or "--stop" to stop the server).
+ */
+public final class CompileClient {
+
+    private CompileClient() {
+    }
+
+    public static void main(final String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java CompileClient <socket> [options] <file | directory | glob | @list>...");
+            System.err.println("       java CompileClient <socket> --stop");
+            System.exit(1);
+        }
+
+        final var request = new StringBuilder(Path.of("").toAbsolutePath().toString());
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].indexOf('\t') >= 0 || args[i].indexOf('\n') >= 0) {
+                System.err.println("Arguments cannot contain tabs or new lines: " + args[i]);
+                System.exit(1);
+            }
+            request.append('\t').append(args[i]);
+        }
+        request.append('\n');
+
+        try (var channel = SocketChannel.open(UnixDomainSocketAddress.of(args[0]))) {
+            final ByteBuffer bytes = ByteBuffer.wrap(request.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+
+            final var reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            for (String line; (line = reader.readLine()) != null; ) {
+                if (line.startsWith("out ")) {
+                    System.out.println(line.substring(4));
+                } else if (line.startsWith("err ")) {
+                    System.err.println(line.substring(4));
+                } else if (line.startsWith("exit ")) {
+                    System.out.flush();
+                    System.exit(Integer.parseInt(line.substring(5)));
+                }
+            }
+            System.err.println("The compile server closed the connection");
+            System.exit(3);
+        } catch (IOException ex) {
+            System.err.printf("Could not reach the compile server at %s!!! %s%n", args[0], ex.getMessage());
+            System.exit(3);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A compiler that stays running ("--serve=<socket>"), so a compile costs milliseconds instead of a
+ * JVM start: it warms up (parsing a generated program until the JIT has compiled the parser), then
+ * takes requests on a Unix domain socket, from {@link CompileClient} or anything that can write a
+ * line to a socket.
+ * <p>
+ * A request is one line: the client's working directory, then the command line arguments, all
+ * separated by tabs. The arguments are the ones of "--batch" (or "--validate"), and relative paths
+ * are relative to the client's directory. The reply is the output, one "out ..." or "err ..."
+ * line per line, then "exit &lt;code&gt;". A connection can send any number of requests; the
+ * request "--stop" stops the server.
+ * <p>
+ * Requests are handled on a pool of threads (one per core); each borrows a {@link ParseSession}
+ * made for its engine and grammar, so those are only built once.
+ */
+final class CompileServer {
+
+    // Warm-up: parse a program of this many statements, this many times.
+    private static final int WARM_UP_STATEMENTS = 2000;
+    private static final int WARM_UP_ROUNDS = 200;
+
+    private final Path socket;
+    private final ServerSocketChannel server;
+    private final Map<SessionKey, Queue<ParseSession>> sessions = new ConcurrentHashMap<>();
+    private final Map<Path, LoadedGrammar> grammars = new ConcurrentHashMap<>();
+    private volatile boolean stopping;
+
+    private CompileServer(final Path socket, final ServerSocketChannel server) {
+        this.socket = socket;
+        this.server = server;
+    }
+
+    /**
+     * Run a server until it is stopped.
+     *
+     * @param options The command line options ("--serve=<socket>").
+     * @return the exit code: 0 once stopped, 3 if the socket cannot be used.
+     */
+    static int serve(final CompilerOptions options) {
+        final Path socket = Path.of(options.serve).toAbsolutePath();
+        final CompileServer compileServer;
+        try {
+            compileServer = new CompileServer(socket, bind(socket));
+        } catch (IOException | UncheckedIOException ex) {
+            System.err.printf("Could not listen on %s!!! %s%n", socket, ex.getMessage());
+            return 3;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(compileServer::deleteSocket));
+
+        final long start = System.nanoTime();
+        compileServer.warmUp();
+        System.out.printf("Listening on %s (warmed up in %.0f ms)%n", socket, (System.nanoTime() - start) / 1e6);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try (compileServer.server) {
+            while (!compileServer.stopping) {
+                final SocketChannel client = compileServer.server.accept();
+                executor.execute(() -> compileServer.handle(client));
+            }
+        } catch (IOException ex) {
+            if (!compileServer.stopping) {
+                System.err.printf("The server failed!!! %s%n", ex.getMessage());
+                return 3;
+            }
+        } finally {
+            executor.shutdown();
+            compileServer.deleteSocket();
+        }
+        return 0;
+    }
+
+    // Listen on a socket file (replacing it, if no server is listening on it any more).
+    private static ServerSocketChannel bind(final Path socket) throws IOException {
+        final var address = UnixDomainSocketAddress.of(socket);
+        if (Files.exists(socket)) {
+            boolean listening;
+            try {
+                SocketChannel.open(address).close();
+                listening = true;
+            } catch (IOException ex) {
+                listening = false;
+            }
+            if (listening) {
+                throw new IOException("a server is already listening on it");
+            }
+            Files.delete(socket); // (stale: left by a server that did not stop cleanly)
+        }
+        final var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(address);
+        return server;
+    }
+
+    private void deleteSocket() {
+        try {
+            Files.deleteIfExists(socket);
+        } catch (IOException ex) {
+            // (nothing more to do)
+        }
+    }
+
+    // Parse (and write, to memory) a generated program until the JIT has compiled the hot paths.
+    private void warmUp() {
+        final var program = new StringBuilder();
+        for (int i = 0; i < WARM_UP_STATEMENTS; i++) {
+            program.append(switch (i % 5) {
+                case 0 -> "sum := (sum + count) * 2 - n / 3\n";
+                case 1 -> "read n\n";
+                case 2 -> "if sum >= 10 then write sum else write 0 fi\n";
+                case 3 -> "while count < n do count := count + 1 od\n";
+                default -> "do abs := abs - 1 until abs <= 0\n";
+            });
+        }
+        final String text = program.toString();
+
+        final var session = new ParseSession(CompilerOptions.Engine.RECURSIVE, null, true);
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            session.parse(text);
+            session.getCodeGenerator().generateCode();
+        }
+    }
+
+    // *****************************************************************************************************
+
+    // Answer the requests on a connection, until the client closes it.
+    private void handle(final SocketChannel client) {
+        try (client;
+             var reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+             var writer = new PrintStream(Channels.newOutputStream(client), false, StandardCharsets.UTF_8)) {
+
+            for (String line; (line = reader.readLine()) != null; ) {
+                final List<String> fields = Arrays.asList(line.split("\t", -1));
+                if (fields.size() == 2 && fields.get(1).equals("--stop")) {
+                    writer.print("exit 0\n");
+                    writer.flush();
+                    this.stop();
+                    return;
+                }
+
+                final long start = System.nanoTime();
+                int exitCode;
+                try (var out = new PrintStream(new TaggedOutput("out ", writer), false, StandardCharsets.UTF_8);
+                     var err = new PrintStream(new TaggedOutput("err ", writer), false, StandardCharsets.UTF_8)) {
+                    try {
+                        exitCode = this.request(Path.of(fields.get(0)), fields.subList(1, fields.size()), out, err);
+                    } catch (RuntimeException ex) {
+                        err.printf("The compile server failed!!! %s%n", ex);
+                        exitCode = 3;
+                    }
+                }
+                writer.print("exit " + exitCode + "\n");
+                writer.flush();
+                System.out.printf("%s: exit %d in %.2f ms%n", String.join(" ", fields.subList(1, fields.size())),
+                        exitCode, (System.nanoTime() - start) / 1e6);
+            }
+        } catch (IOException | UncheckedIOException ex) {
+            System.err.printf("A connection failed!!! %s%n", ex.getMessage());
+        }
+    }
+
+    private void stop() {
+        stopping = true;
+        try {
+            server.close();
+        } catch (IOException ex) {
+            // (the accept loop ends either way)
+        }
+    }
+
+    /**
+     * Handle one request.
+     *
+     * @param directory The client's working directory.
+     * @param arguments The client's command line.
+     * @param out       Receives what would go to stdout.
+     * @param err       Receives what would go to stderr.
+     * @return the exit code, as for "--batch" (or "--validate").
+     */
+    int request(final Path directory, final List<String> arguments, final PrintStream out, final PrintStream err) {
+        final CompilerOptions options;
+        try {
+            final List<String> args = new ArrayList<>(arguments);
+            args.add(0, "--batch");
+            options = CompilerOptions.parse(args.toArray(String[]::new));
+            if (options.run || options.serve != null || options.watch || options.outputFile != null
+                    || options.streaming || options.files.contains("-")) {
+                throw new IllegalArgumentException("The compile server only compiles (or validates) files");
+            }
+            if (options.scan != null) {
+                throw new IllegalArgumentException("--scan applies to the whole server: give it when starting the server");
+            }
+        } catch (IllegalArgumentException ex) {
+            err.println(ex.getMessage());
+            err.println(CompilerOptions.USAGE);
+            return 1;
+        }
+
+        // Paths are the client's.
+        options.files.replaceAll(file -> file.startsWith("@")
+                ? "@" + directory.resolve(file.substring(1))
+                : directory.resolve(file).toString());
+        final Path outputDirectory = options.outputDirectory != null ? directory.resolve(options.outputDirectory) : null;
+
+        final List<BatchCompiler.Input> inputs;
+        final LL1Grammar grammar;
+        try {
+            inputs = BatchCompiler.expand(options.files);
+            grammar = options.grammarFile != null ? this.grammar(directory.resolve(options.grammarFile)) : null;
+        } catch (IOException | UncheckedIOException ex) {
+            err.printf("Could not read the file!!! %s%n", ex.getMessage());
+            return 3;
+        } catch (IllegalArgumentException ex) {
+            err.printf("Bad grammar!!! %s%n", ex.getMessage());
+            return 4;
+        }
+        if (inputs.isEmpty()) {
+            err.println("No input files found");
+            return 2;
+        }
+
+        // (The grammar is the one loaded for the file as it is now, so an edited grammar gets new sessions.)
+        final var key = new SessionKey(options.engine, grammar, options.validate);
+        final Queue<ParseSession> pool = sessions.computeIfAbsent(key, k -> new ConcurrentLinkedQueue<>());
+        ParseSession session = pool.poll();
+        if (session == null) {
+            session = new ParseSession(options.engine, grammar, !options.validate);
+        }
+        session.setErrorRecovery(options.recover);
+        session.getCodeGenerator().configure(options);
+
+        // A session is only put back once it has finished (one that failed may be left half way through a parse).
+        int failures = 0;
+        for (final BatchCompiler.Input input : inputs) {
+            final boolean compiled = options.validate
+                    ? validate(session, input.file(), out)
+                    : BatchCompiler.compile(session, input, outputDirectory, options.format, err);
+            if (!compiled) {
+                failures++;
+            }
+        }
+        pool.add(session);
+        return failures == 0 ? 0 : 5;
+    }
+
+    // Check a file's syntax, printing "file: OK" or its errors (as "--validate" does).
+    private static boolean validate(final ParseSession session, final Path file, final PrintStream out) {
+        try {
+            session.parse(LexicalAnalyzer.mapFile(file.toFile()));
+        } catch (IOException | UncheckedIOException ex) {
+            out.printf("%s: Could not read the file!!! %s%n", file, ex.getMessage());
+            return false;
+        }
+        if (session.getDiagnostics().isEmpty()) {
+            out.printf("%s: OK%n", file);
+            return true;
+        }
+        for (final ParseException error : session.getDiagnostics()) {
+            out.printf("%s:%d:%d: %s%n", file, error.getLine(), error.getColumn(), error.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * What the sessions in a pool were made for. A grammar is compared by identity: {@link #grammar}
+     * returns the same one for a file until the file changes.
+     */
+    private record SessionKey(CompilerOptions.Engine engine, LL1Grammar grammar, boolean validate) {
+    }
+
+    // A grammar file, loaded again only if it has changed (then the old grammar and its sessions are dropped).
+    private LL1Grammar grammar(final Path file) throws IOException {
+        final Path path = file.toRealPath();
+        final FileTime modified = Files.getLastModifiedTime(path);
+        final LoadedGrammar cached = grammars.get(path);
+        if (cached != null && cached.modified().equals(modified)) {
+            return cached.grammar();
+        }
+        final LL1Grammar grammar = LL1Grammar.fromFile(path);
+        grammars.put(path, new LoadedGrammar(modified, grammar));
+        if (cached != null) {
+            sessions.keySet().removeIf(key -> key.grammar() == cached.grammar());
+        }
+        return grammar;
+    }
+
+    // A grammar file as it was when it was loaded.
+    private record LoadedGrammar(FileTime modified, LL1Grammar grammar) {
+    }
+
+    /**
+     * Prefixes every line written through it with a tag (so stdout and stderr can share a socket).
+     */
+    private static final class TaggedOutput extends OutputStream {
+        private final byte[] tag;
+        private final OutputStream target;
+        private boolean lineStart = true;
+
+        TaggedOutput(final String tag, final OutputStream target) {
+            this.tag = tag.getBytes(StandardCharsets.US_ASCII);
+            this.target = target;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            if (lineStart) {
+                target.write(tag);
+            }
+            target.write(b);
+            lineStart = b == '\n';
+        }
+
+        @Override
+        public void close() throws IOException {
+            // End the last line (but leave the target open).
+            if (!lineStart) {
+                target.write('\n');
+                lineStart = true;
+            }
+        }
+    }
+}
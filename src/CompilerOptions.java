@@ -0,0 +1,187 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The command line options for {@link MAIN}.
+ */
+final class CompilerOptions {
+
+    static final String USAGE = """
+            Usage: MAIN [options] <file | ->          ("-" reads from stdin)
+                   MAIN --validate [options] <file>...
+                   MAIN --batch [options] <file | directory | glob | @list>...
+                   MAIN --watch [options] <directory>...
+                   MAIN --serve=<socket>          (then: java CompileClient <socket> [options] <file>...)
+              --stream                  lex the input as a stream (constant memory; the only way to
+                                        read a file over 2 GB, which the other lexers map in one piece)
+              --parallel                lex the input on all cores (files up to 2 GB)
+              --scan=scalar|swar        the scanner's inner loops
+              --engine=recursive|stack|table|parallel
+                                        the parsing engine
+              --grammar=<file>          parse with this LL(1) grammar (implies --engine=table)
+              --validate                only check the syntax (no output)
+              --recover                 report every syntax error, not just the first one
+              --output=<file>|-         where the output goes (default: <file>.dot, "-" is the console)
+              --echo                    also copy the output to the console
+              --format=dot|binary|svg   the output: GraphViz, a binary tree that can be memory-mapped,
+                                        or a picture of the tree
+              --dag                     output a DAG: each distinct subtree once, shared by every use
+              --compact                 output an AST-like tree (no epsilons, unit chains or token boxes)
+              --run                     run the program ("read" reads stdin, "write" writes stdout)
+              --input=<file>            where --run reads from, instead of stdin
+              --numbers=long|double     what --run computes with (default: double only if the
+                                        program has a number with a decimal point)
+              --backend=interpreter|bytecode
+                                        how --run runs the program: walk its tree, or compile it to
+                                        JVM bytecode (which the JIT then compiles)
+              --time                    print how long --run took
+              --optimize[=<pass>,...]   optimize the program before --run: copy, fold, hoist, dse
+                                        (default: every pass)
+              --dump-ir                 print the program's three-address IR, before and after each pass
+              --batch                   compile many files at once, each to its own output file
+              --out=<directory>         where --batch writes the output files (default: next to each input)
+              --threads=<n>|virtual     the --batch worker threads (default: one per core)
+              --watch                   recompile the ".txt" files in the directories whenever they change
+              --serve=<socket>          keep a warm compiler running, taking requests on a Unix domain socket""";
+
+    /**
+     * The parsing engines.
+     */
+    enum Engine { RECURSIVE, STACK, TABLE, PARALLEL }
+
+    /**
+     * How "--run" runs a program.
+     */
+    enum Backend { INTERPRETER, BYTECODE }
+
+    /**
+     * The output formats (and the extensions of their files).
+     */
+    enum Format {
+        DOT(".dot"), BINARY(".ptree"), SVG(".svg");
+
+        final String extension;
+
+        Format(final String extension) {
+            this.extension = extension;
+        }
+    }
+
+    boolean streaming;
+    boolean parallel;
+    boolean validate;
+    boolean recover;
+    boolean batch;
+    boolean run;
+    String inputFile;
+    Interpreter.Mode numbers;
+    Backend backend = Backend.INTERPRETER;
+    boolean time;
+    final Set<Optimizer.Pass> optimizations = EnumSet.noneOf(Optimizer.Pass.class);
+    boolean dumpIr;
+    boolean echo;
+    boolean compact;
+    boolean dag;
+    Format format = Format.DOT;
+    String outputFile;
+    String outputDirectory;
+    String threads;
+    boolean watch;
+    String serve;
+    Engine engine = Engine.RECURSIVE;
+    String grammarFile;
+    ScanBackend scan; // (null: the default)
+    final List<String> files = new ArrayList<>();
+
+    /**
+     * Parse the command line.
+     *
+     * @param args The arguments.
+     * @return the options.
+     * @throws IllegalArgumentException if an argument is not understood.
+     */
+    static CompilerOptions parse(final String[] args) {
+        final var options = new CompilerOptions();
+
+        for (final String arg : args) {
+            if (arg.equals("--stream")) {
+                options.streaming = true;
+            } else if (arg.equals("--parallel")) {
+                options.parallel = true;
+            } else if (arg.equals("--validate")) {
+                options.validate = true;
+            } else if (arg.equals("--recover")) {
+                options.recover = true;
+            } else if (arg.startsWith("--format=")) {
+                options.format = Format.valueOf(value(arg).toUpperCase());
+            } else if (arg.equals("--dag")) {
+                options.dag = true;
+            } else if (arg.equals("--compact")) {
+                options.compact = true;
+            } else if (arg.equals("--echo")) {
+                options.echo = true;
+            } else if (arg.startsWith("--output=")) {
+                options.outputFile = value(arg);
+            } else if (arg.equals("--run")) {
+                options.run = true;
+            } else if (arg.startsWith("--input=")) {
+                options.inputFile = value(arg);
+            } else if (arg.startsWith("--numbers=")) {
+                options.numbers = Interpreter.Mode.valueOf(value(arg).toUpperCase());
+            } else if (arg.startsWith("--backend=")) {
+                options.backend = Backend.valueOf(value(arg).toUpperCase());
+            } else if (arg.equals("--time")) {
+                options.time = true;
+            } else if (arg.equals("--optimize")) {
+                options.optimizations.addAll(EnumSet.allOf(Optimizer.Pass.class));
+            } else if (arg.startsWith("--optimize=")) {
+                for (final String pass : value(arg).split(",")) {
+                    options.optimizations.add(Optimizer.Pass.valueOf(pass.trim().toUpperCase()));
+                }
+            } else if (arg.equals("--dump-ir")) {
+                options.dumpIr = true;
+            } else if (arg.equals("--batch")) {
+                options.batch = true;
+            } else if (arg.startsWith("--out=")) {
+                options.outputDirectory = value(arg);
+            } else if (arg.startsWith("--threads=")) {
+                options.threads = value(arg);
+                if (!options.threads.equals("virtual") && Integer.parseInt(options.threads) < 1) {
+                    throw new IllegalArgumentException("Bad thread count: " + arg);
+                }
+            } else if (arg.equals("--watch")) {
+                options.watch = true;
+            } else if (arg.startsWith("--serve=")) {
+                options.serve = value(arg);
+            } else if (arg.startsWith("--engine=")) {
+                options.engine = Engine.valueOf(value(arg).toUpperCase());
+            } else if (arg.startsWith("--grammar=")) {
+                options.grammarFile = value(arg);
+                options.engine = Engine.TABLE;
+            } else if (arg.startsWith("--scan=")) {
+                options.scan = ScanBackend.valueOf(value(arg).toUpperCase());
+            } else if (arg.equals("-") || !arg.startsWith("--")) {
+                options.files.add(arg);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        if (options.files.isEmpty() && options.serve == null) {
+            throw new IllegalArgumentException("Must Provide an input filename!! (or \"-\" for stdin)");
+        }
+        if (options.files.size() > 1 && !options.validate && !options.batch && !options.watch) {
+            throw new IllegalArgumentException("Only one input file can be compiled at a time");
+        }
+        return options;
+    }
+
+    // The part of "--name=value" after the "=".
+    private static String value(final String arg) {
+        return arg.substring(arg.indexOf('=') + 1);
+    }
+}
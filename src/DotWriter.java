@@ -0,0 +1,186 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An output pass that turns a {@link ParseTree} into GraphViz (DOT) source.
+ * <p>
+ * Non-terminals (and the boxes for matched tokens) are drawn as rectangles, lexemes as ovals, epsilon
+ * productions as "&amp;epsilon;" and the root as a diamond. Every node is named "label-id".
+ * <p>
+ * The DOT is assembled as bytes in a buffer that is handed to the sink whenever it fills up: labels
+ * are the symbol table's own UTF-8 bytes, the fixed pieces of every line are encoded once, and node
+ * ids are written digit by digit. Nothing is allocated per node.
+ * <p>
+ * Given a {@link SubtreeSharing}, the output is a DAG instead: each distinct subtree is written
+ * once, and every other place it is used gets a plain edge to it.
+ */
+final class DotWriter {
+
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    // The fixed pieces of the output.
+    private static final byte[] HEADER = ascii("digraph ParseTree {\n\t\"");
+    private static final byte[] ROOT_LABEL = ascii("\" [label=\"");
+    private static final byte[] ROOT_SHAPE = ascii("\", shape=diamond];\n");
+    private static final byte[] EDGE_FROM = ascii("\t\"");
+    private static final byte[] EDGE_TO = ascii("\" -> {\"");
+    private static final byte[] EDGE_TO_SHARED = ascii("\" -> \"");
+    private static final byte[] EDGE_END = ascii("\";\n");
+    private static final byte[] LABEL = ascii("\" [label=\"");
+    private static final byte[] OVAL = ascii("\", shape=oval]};\n");
+    private static final byte[] RECT = ascii("\", shape=rect]};\n");
+    private static final byte[] NONE = ascii("\", shape=none]};\n");
+    private static final byte[] ERROR_END = ascii("\"};\n");
+    private static final byte[] EMPTY_NAME = ascii("EMPTY");
+    private static final byte[] EPSILON = ascii("&epsilon;");
+    private static final byte[] FOOTER = ascii("}\n");
+
+    private final OutputSink sink;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private long length;
+
+    private DotWriter(final OutputSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Generate the DOT source for a whole tree.
+     *
+     * @param tree The parse tree.
+     * @return the DOT graph.
+     */
+    static String write(final ParseTree tree) {
+        final var output = OutputSink.inMemory();
+        write(tree, output);
+        return output.toString();
+    }
+
+    /**
+     * Write the DOT source for a whole tree to a sink.
+     *
+     * @param tree The parse tree.
+     * @param sink Receives the DOT graph.
+     * @return the number of bytes written.
+     */
+    static long write(final ParseTree tree, final OutputSink sink) {
+        return write(tree, null, sink);
+    }
+
+    /**
+     * Write the DOT source for a tree to a sink, as a DAG.
+     *
+     * @param tree    The parse tree.
+     * @param sharing The tree's identical subtrees (or null, to write the whole tree).
+     * @param sink    Receives the DOT graph.
+     * @return the number of bytes written.
+     */
+    static long write(final ParseTree tree, final SubtreeSharing sharing, final OutputSink sink) {
+        if (tree.size() == 0) {
+            return 0;
+        }
+
+        final var writer = new DotWriter(sink);
+        final SymbolTable symbols = tree.symbols();
+
+        // The header for the "compiled" output
+        final int root = 0;
+        writer.append(HEADER);
+        writer.appendName(tree, root);
+        writer.append(ROOT_LABEL);
+        writer.append(symbols.bytes(tree.label(root)));
+        writer.append(ROOT_SHAPE);
+
+        // Every other node, as an edge from its parent (in the order they were parsed).
+        int node = tree.nextPreOrder(root, root);
+        while (node != ParseTree.NONE) {
+            writer.append(EDGE_FROM);
+            writer.appendName(tree, tree.parent(node));
+
+            final byte kind = tree.kind(node);
+            final int shared = sharing == null || kind == ParseTree.ERROR ? node : sharing.representative(node);
+            if (shared != node) {
+                // A copy of a subtree that has already been written: just an edge to it.
+                writer.append(EDGE_TO_SHARED);
+                writer.appendName(tree, shared);
+                writer.append(EDGE_END);
+                node = tree.skipSubtree(node, root);
+                continue;
+            }
+
+            writer.append(EDGE_TO);
+            if (kind == ParseTree.ERROR) {
+                writer.append(symbols.bytes(tree.label(node)));
+                writer.append(ERROR_END);
+                node = tree.nextPreOrder(node, root);
+                continue;
+            }
+
+            writer.appendName(tree, node);
+            writer.append(LABEL);
+            writer.append(kind == ParseTree.EMPTY ? EPSILON : symbols.bytes(tree.label(node)));
+            writer.append(switch (kind) {
+                case ParseTree.LEXEME -> OVAL;
+                case ParseTree.EMPTY -> NONE;
+                default -> RECT;
+            });
+            node = tree.nextPreOrder(node, root);
+        }
+
+        // Our output requires a footer as well.
+        writer.append(FOOTER);
+        writer.flush();
+        return writer.length;
+    }
+
+    // The unique name of a node: "label-id".
+    private void appendName(final ParseTree tree, final int node) {
+        this.append(tree.kind(node) == ParseTree.EMPTY ? EMPTY_NAME : tree.symbols().bytes(tree.label(node)));
+        this.reserve(12);
+        buffer[position++] = '-';
+        this.appendInt(node);
+    }
+
+    private void append(final byte[] bytes) {
+        if (bytes.length > buffer.length - position) {
+            this.flush();
+            if (bytes.length > buffer.length) {
+                sink.write(bytes, 0, bytes.length);
+                length += bytes.length;
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    // A non-negative int, in decimal (there must be room for 10 digits).
+    private void appendInt(int value) {
+        int digits = 1;
+        for (int bound = 10; digits < 10 && value >= bound; bound *= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += digits;
+    }
+
+    private void reserve(final int bytes) {
+        if (buffer.length - position < bytes) {
+            this.flush();
+        }
+    }
+
+    private void flush() {
+        sink.write(buffer, 0, position);
+        length += position;
+        position = 0;
+    }
+
+    private static byte[] ascii(final String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,304 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a program's tokens and parse tree up to date as its text is edited, re-doing only the work
+ * around each edit.
+ * <p>
+ * The scanner works a line at a time, so an edit only re-scans the lines it touches. The new tokens
+ * are then re-parsed at statement granularity: the run of statements (in one StmtList) from the
+ * statement holding the token before the edit up to the first one that ends after it. If that run
+ * does not parse into statements that end exactly where it used to, the enclosing statement is
+ * tried next, and so on out to the whole program.
+ * <p>
+ * Everything outside the re-parsed statements (and its node ids) is left as it is. The tree is
+ * always the same shape as a full parse of the edited text would give; only the ids of the new
+ * nodes differ. Offsets are byte offsets into the UTF-8 text (the same ones the lexer uses).
+ */
+final class IncrementalParser {
+
+    // The text, its tokens, and the parse tree.
+    private byte[] text;
+    private TokenBuffer tokens;
+    private final ParseTree parseTree = new ParseTree();
+
+    // The TERMINAL node of each token.
+    private int[] terminals = new int[0];
+
+    // The first syntax error (if any): a tree with errors is always re-parsed in full.
+    private ParseException error;
+
+    // Nodes no longer in the tree (when there are too many, the tree is rebuilt from scratch).
+    private int garbage;
+
+    /**
+     * Parse a program.
+     *
+     * @param program The text of the program.
+     */
+    IncrementalParser(final String program) {
+        this.text = program.getBytes(StandardCharsets.UTF_8);
+        this.tokens = new TokenBuffer(ByteBuffer.wrap(text));
+        this.tokens.scan(0, text.length);
+        this.parseAll();
+    }
+
+    ParseTree getParseTree() {
+        return parseTree;
+    }
+
+    TokenBuffer getTokens() {
+        return tokens;
+    }
+
+    String getText() {
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the first syntax error in the program, or null if it is valid.
+     */
+    ParseException getError() {
+        return error;
+    }
+
+    /**
+     * Replace a range of the text, and bring the tokens and the parse tree up to date.
+     *
+     * @param start       The offset of the first byte replaced.
+     * @param end         One past the offset of the last byte replaced.
+     * @param replacement The new text.
+     * @return the number of tokens re-parsed (0 if only blanks or comments changed).
+     */
+    int edit(final int start, final int end, final String replacement) {
+        if (start < 0 || start > end || end > text.length) {
+            throw new IndexOutOfBoundsException("Bad edit range: " + start + ".." + end);
+        }
+
+        // Splice the text.
+        final byte[] inserted = replacement.getBytes(StandardCharsets.UTF_8);
+        final int shift = inserted.length - (end - start);
+        final byte[] edited = new byte[text.length + shift];
+        System.arraycopy(text, 0, edited, 0, start);
+        System.arraycopy(inserted, 0, edited, start, inserted.length);
+        System.arraycopy(text, end, edited, start + inserted.length, text.length - end);
+
+        // Re-scan the lines the edit touched: [lineStart, lineEnd) in the old text.
+        int lineStart = start;
+        while (lineStart > 0 && text[lineStart - 1] != '\n') {
+            lineStart--;
+        }
+        int lineEnd = end;
+        while (lineEnd < text.length && text[lineEnd] != '\n') {
+            lineEnd++;
+        }
+        lineEnd = Math.min(lineEnd + 1, text.length);
+
+        final ByteBuffer source = ByteBuffer.wrap(edited);
+        final var rescanned = new TokenBuffer(source, 16);
+        rescanned.scan(lineStart, lineEnd + shift);
+
+        // The old tokens [from, to) are replaced by the rescanned ones.
+        final int from = tokens.indexAt(lineStart);
+        final int to = tokens.indexAt(lineEnd);
+        final int tokenShift = rescanned.size() - (to - from);
+        final boolean unchanged = this.sameTokens(from, to, rescanned);
+
+        // Find the statements to re-parse (in the old numbering) before anything is changed.
+        final List<int[]> candidates = error == null && !unchanged ? this.candidates(from, to) : List.of();
+
+        this.text = edited;
+        final TokenBuffer previous = this.tokens;
+        this.tokens = previous.splice(source, from, to, rescanned, shift);
+
+        if (unchanged) {
+            return 0;
+        }
+        if (error != null || garbage > parseTree.size() / 2) {
+            return this.parseAll();
+        }
+
+        parseTree.shiftTokens(from, to, tokenShift);
+        this.spliceTerminals(from, to, rescanned.size());
+
+        for (final int[] candidate : candidates) {
+            final int parsed = this.reparse(candidate[0], candidate[1], candidate[2], candidate[3] + tokenShift);
+            if (parsed >= 0) {
+                return parsed;
+            }
+        }
+        return this.parseAll();
+    }
+
+    // Parse the whole program again.
+    private int parseAll() {
+        final var codeGenerator = new CodeGenerator(parseTree);
+        this.error = new Parser(new LexicalAnalyzer(tokens), codeGenerator).parse();
+        this.garbage = 0;
+
+        terminals = new int[tokens.size()];
+        for (int node = 0; node < parseTree.size(); node++) {
+            if (parseTree.kind(node) == ParseTree.TERMINAL) {
+                terminals[parseTree.token(node)] = node;
+            }
+        }
+        return tokens.size();
+    }
+
+    /**
+     * Try to re-parse a run of statements.
+     *
+     * @return the number of tokens re-parsed, or -1 if they are not a run of statements any more.
+     */
+    private int reparse(final int first, final int last, final int firstToken, final int endToken) {
+        final var lexer = new LexicalAnalyzer(tokens);
+        final var parser = new Parser(lexer, new CodeGenerator(parseTree));
+        final int holder = parseTree.addNode(ParseTree.NONE, ParseTree.NONTERMINAL, SymbolTable.of(NonTerminal.STMT_LIST), ParseTree.NONE);
+        final int before = parseTree.size();
+
+        lexer.seekToken(firstToken);
+        try {
+            if (!parser.parseStatements(holder, endToken)) {
+                garbage += parseTree.size() - before + 1;
+                return -1;
+            }
+        } catch (ParseException | StackOverflowError ex) {
+            garbage += parseTree.size() - before + 1;
+            return -1;
+        }
+
+        // Count the replaced nodes, then swap the new statements in.
+        for (int node = first; node != parseTree.nextSibling(last); node = parseTree.nextSibling(node)) {
+            garbage += this.countNodes(node);
+        }
+        final int after = parseTree.nextSibling(last);
+        final boolean empty = parseTree.firstChild(holder) == ParseTree.NONE;
+        parseTree.replaceSiblings(first, last, holder);
+
+        // Point the re-parsed tokens at their new TERMINAL nodes.
+        if (!empty) {
+            for (int statement = first; statement != after; statement = parseTree.nextSibling(statement)) {
+                for (int node = statement; node != ParseTree.NONE; node = parseTree.nextPreOrder(node, statement)) {
+                    if (parseTree.kind(node) == ParseTree.TERMINAL) {
+                        terminals[parseTree.token(node)] = node;
+                    }
+                }
+            }
+        }
+        return endToken - firstToken;
+    }
+
+    /**
+     * The runs of statements that could be re-parsed after the tokens [from, to) changed, from the
+     * innermost out: each is {first statement, last statement, first token, end token}. A run
+     * starts with the statement holding the token before the edit (so the tokens before the run,
+     * and the way they were parsed, cannot have changed) and ends with the first statement that
+     * ends after the edit.
+     */
+    private List<int[]> candidates(final int from, final int to) {
+        final List<int[]> candidates = new ArrayList<>();
+
+        int statement;
+        if (from > 0) {
+            statement = this.enclosingStatement(terminals[from - 1]);
+        } else {
+            // The edit is before the first token: start with the first statement of the program.
+            final int program = parseTree.firstChild(0);
+            final int statements = program == ParseTree.NONE ? ParseTree.NONE : parseTree.firstChild(program);
+            statement = statements == ParseTree.NONE ? ParseTree.NONE : parseTree.firstChild(statements);
+            if (statement != ParseTree.NONE && !this.isStatement(statement)) {
+                statement = ParseTree.NONE;
+            }
+        }
+
+        while (statement != ParseTree.NONE) {
+            int last = statement;
+            int endToken = this.tokenAfter(last);
+            while (endToken < to && this.isStatement(parseTree.nextSibling(last))) {
+                last = parseTree.nextSibling(last);
+                endToken = this.tokenAfter(last);
+            }
+
+            if (endToken >= to) {
+                candidates.add(new int[]{statement, last, this.firstToken(statement), endToken});
+            }
+            statement = this.enclosingStatement(parseTree.parent(statement));
+        }
+        return candidates;
+    }
+
+    // Did the rescan give exactly the tokens that were there before (so only blanks or comments changed)?
+    private boolean sameTokens(final int from, final int to, final TokenBuffer rescanned) {
+        if (rescanned.size() != to - from) {
+            return false;
+        }
+        for (int i = 0; i < rescanned.size(); i++) {
+            final int length = rescanned.length(i);
+            if (rescanned.token(i) != tokens.token(from + i) || length != tokens.length(from + i)
+                    || !rescanned.source().slice(rescanned.offset(i), length).equals(tokens.source().slice(tokens.offset(from + i), length))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Replace the TERMINAL nodes of the tokens [from, to) with room for "count" new ones.
+    private void spliceTerminals(final int from, final int to, final int count) {
+        final int[] spliced = new int[terminals.length - (to - from) + count];
+        System.arraycopy(terminals, 0, spliced, 0, from);
+        System.arraycopy(terminals, to, spliced, from + count, terminals.length - to);
+        terminals = spliced;
+    }
+
+    // The innermost <stmt> node at or above a node (or NONE).
+    private int enclosingStatement(int node) {
+        while (node != ParseTree.NONE && !this.isStatement(node)) {
+            node = parseTree.parent(node);
+        }
+        return node;
+    }
+
+    private boolean isStatement(final int node) {
+        return node != ParseTree.NONE && parseTree.kind(node) == ParseTree.NONTERMINAL
+                && parseTree.label(node) == SymbolTable.of(NonTerminal.STMT);
+    }
+
+    // The index of the first token in a subtree.
+    private int firstToken(final int root) {
+        for (int node = root; node != ParseTree.NONE; node = parseTree.nextPreOrder(node, root)) {
+            if (parseTree.kind(node) == ParseTree.TERMINAL) {
+                return parseTree.token(node);
+            }
+        }
+        return this.tokenAfter(root);
+    }
+
+    // The index of the first token after a subtree (the number of tokens, at the end of the program).
+    private int tokenAfter(int node) {
+        while (parseTree.nextSibling(node) == ParseTree.NONE) {
+            node = parseTree.parent(node);
+            if (node == ParseTree.NONE) {
+                return terminals.length;
+            }
+        }
+
+        for (node = parseTree.nextSibling(node); node != ParseTree.NONE; node = parseTree.nextPreOrder(node, 0)) {
+            if (parseTree.kind(node) == ParseTree.TERMINAL) {
+                return parseTree.token(node);
+            }
+        }
+        return terminals.length;
+    }
+
+    private int countNodes(final int root) {
+        int count = 0;
+        for (int node = root; node != ParseTree.NONE; node = parseTree.nextPreOrder(node, root)) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,905 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs a parsed program.
+ * <p>
+ * The parse tree is first turned into a tree of small executable nodes: every variable is given a
+ * slot in an array (so running a program never looks a name up), and every operator is a node
+ * class of its own. The program then runs either on longs or on doubles (on doubles if it has a
+ * number with a decimal point in it, unless told otherwise), and nothing is boxed on the way.
+ * <p>
+ * Variables start at 0; "read" takes the next number from the input stream (numbers are separated
+ * by blanks or new lines), and "write" writes a number on a line of its own. Division of longs
+ * rounds toward 0.
+ */
+final class Interpreter {
+
+    /**
+     * What the program computes with.
+     */
+    enum Mode { LONG, DOUBLE }
+
+    private final Stmt program;
+    private final Mode mode;
+    private final String[] variables;
+
+    private Interpreter(final Stmt program, final Mode mode, final String[] variables) {
+        this.program = program;
+        this.mode = mode;
+        this.variables = variables;
+    }
+
+    /**
+     * Prepare a program to be run.
+     *
+     * @param tree The program's (valid) parse tree.
+     * @param mode What to compute with (null to choose by the program's numbers).
+     * @return the program, ready to run.
+     * @throws IllegalArgumentException if the tree is not a program.
+     */
+    static Interpreter compile(final ParseTree tree, final Mode mode) {
+        final var compiler = new Compiler(tree, mode != null ? mode : chooseMode(tree));
+        final Stmt program = compiler.program();
+        return new Interpreter(program, compiler.mode, compiler.names.toArray(String[]::new));
+    }
+
+    /**
+     * A program made of executable nodes built elsewhere (e.g. by {@link Ir#toInterpreter()}).
+     *
+     * @param program   The program.
+     * @param mode      What it computes with (the nodes must be the ones for this mode).
+     * @param variables The names of its slots.
+     * @return the program, ready to run.
+     */
+    static Interpreter of(final Stmt program, final Mode mode, final List<String> variables) {
+        return new Interpreter(program, mode, variables.toArray(String[]::new));
+    }
+
+    /**
+     * Run the program.
+     *
+     * @param input  Where "read" gets its numbers.
+     * @param output Where "write" puts them (flushed at the end).
+     * @throws RuntimeError if the program fails (e.g. divides by 0, or runs out of input).
+     */
+    void run(final InputStream input, final OutputSink output) {
+        final var frame = new Frame(variables.length, new NumberReader(input), output);
+        try {
+            program.exec(frame);
+        } finally {
+            output.flush();
+        }
+    }
+
+    Mode mode() {
+        return mode;
+    }
+
+    /**
+     * @return the program's executable nodes (for {@link BytecodeCompiler}).
+     */
+    Stmt program() {
+        return program;
+    }
+
+    /**
+     * @return the program's variables, in the order of their slots.
+     */
+    List<String> variables() {
+        return List.of(variables);
+    }
+
+    // LONG, unless a number has a decimal point.
+    private static Mode chooseMode(final ParseTree tree) {
+        final int number = SymbolTable.of(Token.NUMBER);
+        for (int node = 0; node < tree.size(); node++) {
+            if (tree.kind(node) == ParseTree.TERMINAL && tree.label(node) == number
+                    && tree.labelText(tree.firstChild(node)).indexOf('.') >= 0) {
+                return Mode.DOUBLE;
+            }
+        }
+        return Mode.LONG;
+    }
+
+    /**
+     * An error while running a program.
+     */
+    static final class RuntimeError extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        RuntimeError(final String message) {
+            super(message);
+        }
+    }
+
+    // *****************************************************************************************************
+
+    /**
+     * Turns the parse tree into executable nodes, giving every variable a slot.
+     */
+    private static final class Compiler {
+
+        // values() clones its array on every call, so keep one copy around.
+        private static final NonTerminal[] NON_TERMINALS = NonTerminal.values();
+        private static final Token[] TOKENS = Token.values();
+
+        final ParseTree tree;
+        final Mode mode;
+
+        // The slot of each variable, by the symbol id of its name (-1 if it has none yet).
+        final int[] slots;
+        private final List<String> names = new ArrayList<>();
+
+        Compiler(final ParseTree tree, final Mode mode) {
+            this.tree = tree;
+            this.mode = mode;
+            this.slots = new int[tree.symbols().size()];
+            Arrays.fill(slots, -1);
+        }
+
+        // PARSE TREE -> Program -> StmtList
+        Stmt program() {
+            final int program = this.child(0, 0, NonTerminal.PROGRAM);
+            return this.statements(this.child(program, 0, NonTerminal.STMT_LIST));
+        }
+
+        // StmtList -> <stmt>* EMPTY
+        Stmt statements(final int list) {
+            final List<Stmt> statements = new ArrayList<>();
+            for (int child = tree.firstChild(list); child != ParseTree.NONE; child = tree.nextSibling(child)) {
+                if (tree.kind(child) == ParseTree.NONTERMINAL) {
+                    statements.add(this.statement(child));
+                }
+            }
+            return statements.size() == 1 ? statements.get(0) : new Block(statements.toArray(Stmt[]::new));
+        }
+
+        Stmt statement(final int stmt) {
+            final int first = tree.firstChild(stmt);
+
+            if (tree.kind(first) == ParseTree.NONTERMINAL) {
+                return switch (this.nonTerminal(first)) {
+                    case IF_STMT -> this.ifStatement(first);
+                    case WHILE_STMT -> new While(this.condition(this.child(first, 1, NonTerminal.CONDITION)),
+                            this.statements(this.child(first, 3, NonTerminal.STMT_LIST)));
+                    case DO_UNTIL_STMT -> new DoUntil(this.statements(this.child(first, 1, NonTerminal.STMT_LIST)),
+                            this.condition(this.child(first, 3, NonTerminal.CONDITION)));
+                    default -> throw this.notAProgram(first);
+                };
+            }
+
+            return switch (this.token(first)) {
+                // ID := Expr
+                case ID -> {
+                    final int slot = this.slot(first);
+                    final Expr value = this.expression(this.child(stmt, 2, NonTerminal.EXPR));
+                    yield mode == Mode.LONG ? new AssignLong(slot, value) : new AssignDouble(slot, value);
+                }
+                // read ID
+                case READ -> {
+                    final int slot = this.slot(this.child(stmt, 1));
+                    yield mode == Mode.LONG ? new ReadLong(slot) : new ReadDouble(slot);
+                }
+                // write Expr
+                case WRITE -> {
+                    final Expr value = this.expression(this.child(stmt, 1, NonTerminal.EXPR));
+                    yield mode == Mode.LONG ? new WriteLong(value) : new WriteDouble(value);
+                }
+                default -> throw this.notAProgram(first);
+            };
+        }
+
+        // if Condition then StmtList [<else_part>] fi
+        Stmt ifStatement(final int node) {
+            final Cond condition = this.condition(this.child(node, 1, NonTerminal.CONDITION));
+            final Stmt then = this.statements(this.child(node, 3, NonTerminal.STMT_LIST));
+
+            final int elsePart = this.child(node, 4);
+            final Stmt otherwise = tree.kind(elsePart) == ParseTree.NONTERMINAL
+                    ? this.statements(this.child(elsePart, 1, NonTerminal.STMT_LIST))
+                    : null;
+            return new If(condition, then, otherwise);
+        }
+
+        // Expr REL_OP Expr
+        Cond condition(final int node) {
+            final Expr left = this.expression(this.child(node, 0, NonTerminal.EXPR));
+            final int operator = this.child(node, 1);
+            final Expr right = this.expression(this.child(node, 2, NonTerminal.EXPR));
+
+            final int comparison = switch (this.lexeme(operator)) {
+                case "<" -> Compare.LT;
+                case ">" -> Compare.GT;
+                case "<=" -> Compare.LE;
+                case ">=" -> Compare.GE;
+                case "=" -> Compare.EQ;
+                case "!=" -> Compare.NE;
+                default -> throw this.notAProgram(operator);
+            };
+            return mode == Mode.LONG ? new CompareLong(comparison, left, right) : new CompareDouble(comparison, left, right);
+        }
+
+        // Expr -> Expo -> Term TermTail, with TermTail -> ADD_OP Term TermTail | EMPTY (left associative: a Chain)
+        Expr expression(final int expr) {
+            final int expo = this.child(expr, 0, NonTerminal.EXPO);
+            final List<Expr> operands = new ArrayList<>();
+            final List<Integer> operators = new ArrayList<>();
+            operands.add(this.term(this.child(expo, 0, NonTerminal.TERM)));
+
+            for (int tail = this.child(expo, 1, NonTerminal.TERM_TAIL); ; tail = this.child(tail, 2, NonTerminal.TERM_TAIL)) {
+                final int operator = tree.firstChild(tail);
+                if (tree.kind(operator) != ParseTree.TERMINAL) {
+                    return Chain.of(operands, operators);
+                }
+                operands.add(this.term(this.child(tail, 1, NonTerminal.TERM)));
+                operators.add(this.lexeme(operator).equals("+") ? Chain.ADD : Chain.SUBTRACT);
+            }
+        }
+
+        // Term -> Factor FactorTail, with FactorTail -> MULT_OP Factor FactorTail | EMPTY (left associative: a Chain)
+        Expr term(final int term) {
+            final List<Expr> operands = new ArrayList<>();
+            final List<Integer> operators = new ArrayList<>();
+            operands.add(this.factor(this.child(term, 0, NonTerminal.FACTOR)));
+
+            for (int tail = this.child(term, 1, NonTerminal.FACTOR_TAIL); ; tail = this.child(tail, 2, NonTerminal.FACTOR_TAIL)) {
+                final int operator = tree.firstChild(tail);
+                if (tree.kind(operator) != ParseTree.TERMINAL) {
+                    return Chain.of(operands, operators);
+                }
+                operands.add(this.factor(this.child(tail, 1, NonTerminal.FACTOR)));
+                operators.add(this.lexeme(operator).equals("*") ? Chain.MULTIPLY : Chain.DIVIDE);
+            }
+        }
+
+        // ( Expr ) | ID | NUMBER
+        Expr factor(final int factor) {
+            final int first = tree.firstChild(factor);
+            return switch (this.token(first)) {
+                case LEFT_PAREN -> this.expression(this.child(factor, 1, NonTerminal.EXPR));
+                case ID -> new Variable(this.slot(first));
+                case NUMBER -> this.number(first);
+                default -> throw this.notAProgram(first);
+            };
+        }
+
+        Expr number(final int terminal) {
+            final String text = this.lexeme(terminal);
+            if (mode == Mode.DOUBLE) {
+                return new Constant(0, Double.parseDouble(text));
+            }
+            try {
+                final long value = Long.parseLong(text);
+                return new Constant(value, value);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Number out of range: " + text);
+            }
+        }
+
+        // The slot of the variable named by an ID terminal.
+        int slot(final int terminal) {
+            final int name = tree.label(tree.firstChild(terminal));
+            if (slots[name] < 0) {
+                slots[name] = names.size();
+                names.add(tree.labelText(tree.firstChild(terminal)));
+            }
+            return slots[name];
+        }
+
+        // The i-th child of a node.
+        int child(final int node, final int i) {
+            int child = tree.firstChild(node);
+            for (int k = 0; k < i && child != ParseTree.NONE; k++) {
+                child = tree.nextSibling(child);
+            }
+            if (child == ParseTree.NONE) {
+                throw this.notAProgram(node);
+            }
+            return child;
+        }
+
+        // The i-th child of a node, which must be a given Non-Terminal.
+        int child(final int node, final int i, final NonTerminal expected) {
+            final int child = this.child(node, i);
+            if (tree.kind(child) != ParseTree.NONTERMINAL || tree.label(child) != SymbolTable.of(expected)) {
+                throw this.notAProgram(child);
+            }
+            return child;
+        }
+
+        NonTerminal nonTerminal(final int node) {
+            return NON_TERMINALS[tree.label(node)];
+        }
+
+        Token token(final int terminal) {
+            if (tree.kind(terminal) != ParseTree.TERMINAL) {
+                throw this.notAProgram(terminal);
+            }
+            return TOKENS[tree.label(terminal) - SymbolTable.of(TOKENS[0])];
+        }
+
+        String lexeme(final int terminal) {
+            return tree.labelText(tree.firstChild(terminal));
+        }
+
+        IllegalArgumentException notAProgram(final int node) {
+            return new IllegalArgumentException("Not a valid program (at node " + tree.labelText(node) + "-" + node + ")");
+        }
+    }
+
+    // *****************************************************************************************************
+
+    /**
+     * The state of a running program: the variables, and the input and output.
+     */
+    static final class Frame {
+        final long[] longs;
+        final double[] doubles;
+        final NumberReader input;
+        final OutputSink output;
+
+        Frame(final int slots, final NumberReader input, final OutputSink output) {
+            this.longs = new long[slots];
+            this.doubles = new double[slots];
+            this.input = input;
+            this.output = output;
+        }
+    }
+
+    /**
+     * An expression: it can be evaluated on longs or on doubles.
+     */
+    abstract static class Expr {
+        abstract long evalLong(long[] variables);
+
+        abstract double evalDouble(double[] variables);
+    }
+
+    static final class Constant extends Expr {
+        final long longValue;
+        final double doubleValue;
+
+        Constant(final long longValue, final double doubleValue) {
+            this.longValue = longValue;
+            this.doubleValue = doubleValue;
+        }
+
+        @Override
+        long evalLong(final long[] variables) {
+            return longValue;
+        }
+
+        @Override
+        double evalDouble(final double[] variables) {
+            return doubleValue;
+        }
+    }
+
+    static final class Variable extends Expr {
+        final int slot;
+
+        Variable(final int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        long evalLong(final long[] variables) {
+            return variables[slot];
+        }
+
+        @Override
+        double evalDouble(final double[] variables) {
+            return variables[slot];
+        }
+    }
+
+    /**
+     * An operator and its two operands.
+     */
+    abstract static class Binary extends Expr {
+        final Expr left;
+        final Expr right;
+
+        Binary(final Expr left, final Expr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        // Its operator (one of Chain's).
+        abstract int operator();
+    }
+
+    static final class Add extends Binary {
+
+        Add(final Expr left, final Expr right) {
+            super(left, right);
+        }
+
+        @Override
+        int operator() {
+            return Chain.ADD;
+        }
+
+        @Override
+        long evalLong(final long[] variables) {
+            return left.evalLong(variables) + right.evalLong(variables);
+        }
+
+        @Override
+        double evalDouble(final double[] variables) {
+            return left.evalDouble(variables) + right.evalDouble(variables);
+        }
+    }
+
+    static final class Subtract extends Binary {
+
+        Subtract(final Expr left, final Expr right) {
+            super(left, right);
+        }
+
+        @Override
+        int operator() {
+            return Chain.SUBTRACT;
+        }
+
+        @Override
+        long evalLong(final long[] variables) {
+            return left.evalLong(variables) - right.evalLong(variables);
+        }
+
+        @Override
+        double evalDouble(final double[] variables) {
+            return left.evalDouble(variables) - right.evalDouble(variables);
+        }
+    }
+
+    static final class Multiply extends Binary {
+
+        Multiply(final Expr left, final Expr right) {
+            super(left, right);
+        }
+
+        @Override
+        int operator() {
+            return Chain.MULTIPLY;
+        }
+
+        @Override
+        long evalLong(final long[] variables) {
+            return left.evalLong(variables) * right.evalLong(variables);
+        }
+
+        @Override
+        double evalDouble(final double[] variables) {
+            return left.evalDouble(variables) * right.evalDouble(variables);
+        }
+    }
+
+    static final class Divide extends Binary {
+
+        Divide(final Expr left, final Expr right) {
+            super(left, right);
+        }
+
+        @Override
+        int operator() {
+            return Chain.DIVIDE;
+        }
+
+        @Override
+        long evalLong(final long[] variables) {
+            return divide(left.evalLong(variables), right.evalLong(variables));
+        }
+
+        @Override
+        double evalDouble(final double[] variables) {
+            return left.evalDouble(variables) / right.evalDouble(variables);
+        }
+
+        static long divide(final long dividend, final long divisor) {
+            if (divisor == 0) {
+                throw new RuntimeError("Division by zero");
+            }
+            return dividend / divisor;
+        }
+    }
+
+    /**
+     * A run of operators of the same precedence, worked out left to right: operands[0] operators[0]
+     * operands[1] operators[1] operands[2]... A long sum is one of these, evaluated in a loop (as
+     * nested Add nodes, it would recurse once per term, and a long enough one would overflow the
+     * stack).
+     */
+    static final class Chain extends Expr {
+        static final int ADD = 0, SUBTRACT = 1, MULTIPLY = 2, DIVIDE = 3;
+
+        final Expr[] operands;
+        final int[] operators;
+
+        private Chain(final Expr[] operands, final int[] operators) {
+            this.operands = operands;
+            this.operators = operators;
+        }
+
+        /**
+         * @return operands[0] operators[0] operands[1]...: the operand itself, a {@link Binary} node,
+         * or (for 3 operands or more) a Chain.
+         */
+        static Expr of(final List<Expr> operands, final List<Integer> operators) {
+            if (operands.size() == 1) {
+                return operands.get(0);
+            }
+            if (operands.size() == 2) {
+                return binary(operators.get(0), operands.get(0), operands.get(1));
+            }
+            return new Chain(operands.toArray(Expr[]::new), operators.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        static Expr binary(final int operator, final Expr left, final Expr right) {
+            return switch (operator) {
+                case ADD -> new Add(left, right);
+                case SUBTRACT -> new Subtract(left, right);
+                case MULTIPLY -> new Multiply(left, right);
+                default -> new Divide(left, right);
+            };
+        }
+
+        /**
+         * Turn the runs of same-precedence {@link Binary} nodes down the left of an expression (as
+         * built one operator at a time, e.g. by {@link Ir#toInterpreter()}) into Chains. This does
+         * not recurse down a run, only into the operands of one.
+         */
+        static Expr flatten(final Expr expression) {
+            if (!(expression instanceof Binary binary)) {
+                return expression;
+            }
+            final boolean additive = isAdditive(binary.operator());
+
+            final List<Expr> rights = new ArrayList<>();
+            final List<Integer> operators = new ArrayList<>();
+            Expr left = expression;
+            while (left instanceof Binary node && isAdditive(node.operator()) == additive) {
+                rights.add(node.right);
+                operators.add(node.operator());
+                left = node.left;
+            }
+
+            final List<Expr> operands = new ArrayList<>(rights.size() + 1);
+            operands.add(flatten(left));
+            for (int i = rights.size() - 1; i >= 0; i--) {
+                operands.add(flatten(rights.get(i)));
+            }
+            Collections.reverse(operators);
+            return of(operands, operators);
+        }
+
+        private static boolean isAdditive(final int operator) {
+            return operator == ADD || operator == SUBTRACT;
+        }
+
+        @Override
+        long evalLong(final long[] variables) {
+            long value = operands[0].evalLong(variables);
+            for (int i = 0; i < operators.length; i++) {
+                final long operand = operands[i + 1].evalLong(variables);
+                value = switch (operators[i]) {
+                    case ADD -> value + operand;
+                    case SUBTRACT -> value - operand;
+                    case MULTIPLY -> value * operand;
+                    default -> Divide.divide(value, operand);
+                };
+            }
+            return value;
+        }
+
+        @Override
+        double evalDouble(final double[] variables) {
+            double value = operands[0].evalDouble(variables);
+            for (int i = 0; i < operators.length; i++) {
+                final double operand = operands[i + 1].evalDouble(variables);
+                value = switch (operators[i]) {
+                    case ADD -> value + operand;
+                    case SUBTRACT -> value - operand;
+                    case MULTIPLY -> value * operand;
+                    default -> value / operand;
+                };
+            }
+            return value;
+        }
+    }
+
+    /**
+     * A condition.
+     */
+    abstract static class Cond {
+        abstract boolean test(Frame frame);
+    }
+
+    /**
+     * The comparison operators (and how they are tested, given the sign of left - right).
+     */
+    static final class Compare {
+        static final int LT = 0, GT = 1, LE = 2, GE = 3, EQ = 4, NE = 5;
+
+        static boolean test(final int comparison, final int sign) {
+            return switch (comparison) {
+                case LT -> sign < 0;
+                case GT -> sign > 0;
+                case LE -> sign <= 0;
+                case GE -> sign >= 0;
+                case EQ -> sign == 0;
+                default -> sign != 0;
+            };
+        }
+    }
+
+    static final class CompareLong extends Cond {
+        final int comparison;
+        final Expr left;
+        final Expr right;
+
+        CompareLong(final int comparison, final Expr left, final Expr right) {
+            this.comparison = comparison;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean test(final Frame frame) {
+            return Compare.test(comparison, Long.compare(left.evalLong(frame.longs), right.evalLong(frame.longs)));
+        }
+    }
+
+    static final class CompareDouble extends Cond {
+        final int comparison;
+        final Expr left;
+        final Expr right;
+
+        CompareDouble(final int comparison, final Expr left, final Expr right) {
+            this.comparison = comparison;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean test(final Frame frame) {
+            final double l = left.evalDouble(frame.doubles);
+            final double r = right.evalDouble(frame.doubles);
+            // (NaN is unordered: only "!=" is true.)
+            return l == l && r == r ? Compare.test(comparison, l < r ? -1 : l > r ? 1 : 0) : comparison == Compare.NE;
+        }
+    }
+
+    /**
+     * A statement.
+     */
+    abstract static class Stmt {
+        abstract void exec(Frame frame);
+    }
+
+    static final class Block extends Stmt {
+        final Stmt[] statements;
+
+        Block(final Stmt[] statements) {
+            this.statements = statements;
+        }
+
+        @Override
+        void exec(final Frame frame) {
+            for (final Stmt statement : statements) {
+                statement.exec(frame);
+            }
+        }
+    }
+
+    static final class AssignLong extends Stmt {
+        final int slot;
+        final Expr value;
+
+        AssignLong(final int slot, final Expr value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        void exec(final Frame frame) {
+            frame.longs[slot] = value.evalLong(frame.longs);
+        }
+    }
+
+    static final class AssignDouble extends Stmt {
+        final int slot;
+        final Expr value;
+
+        AssignDouble(final int slot, final Expr value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        void exec(final Frame frame) {
+            frame.doubles[slot] = value.evalDouble(frame.doubles);
+        }
+    }
+
+    static final class ReadLong extends Stmt {
+        final int slot;
+
+        ReadLong(final int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        void exec(final Frame frame) {
+            frame.longs[slot] = frame.input.nextLong();
+        }
+    }
+
+    static final class ReadDouble extends Stmt {
+        final int slot;
+
+        ReadDouble(final int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        void exec(final Frame frame) {
+            frame.doubles[slot] = frame.input.nextDouble();
+        }
+    }
+
+    static final class WriteLong extends Stmt {
+        final Expr value;
+
+        WriteLong(final Expr value) {
+            this.value = value;
+        }
+
+        @Override
+        void exec(final Frame frame) {
+            frame.output.write(value.evalLong(frame.longs) + "\n");
+        }
+    }
+
+    static final class WriteDouble extends Stmt {
+        final Expr value;
+
+        WriteDouble(final Expr value) {
+            this.value = value;
+        }
+
+        @Override
+        void exec(final Frame frame) {
+            frame.output.write(value.evalDouble(frame.doubles) + "\n");
+        }
+    }
+
+    static final class If extends Stmt {
+        final Cond condition;
+        final Stmt then;
+        final Stmt otherwise;
+
+        If(final Cond condition, final Stmt then, final Stmt otherwise) {
+            this.condition = condition;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        void exec(final Frame frame) {
+            if (condition.test(frame)) {
+                then.exec(frame);
+            } else if (otherwise != null) {
+                otherwise.exec(frame);
+            }
+        }
+    }
+
+    static final class While extends Stmt {
+        final Cond condition;
+        final Stmt body;
+
+        While(final Cond condition, final Stmt body) {
+            this.condition = condition;
+            this.body = body;
+        }
+
+        @Override
+        void exec(final Frame frame) {
+            while (condition.test(frame)) {
+                body.exec(frame);
+            }
+        }
+    }
+
+    static final class DoUntil extends Stmt {
+        final Stmt body;
+        final Cond condition;
+
+        DoUntil(final Stmt body, final Cond condition) {
+            this.body = body;
+            this.condition = condition;
+        }
+
+        @Override
+        void exec(final Frame frame) {
+            do {
+                body.exec(frame);
+            } while (!condition.test(frame));
+        }
+    }
+
+    /**
+     * Reads blank separated words (the numbers for "read") from a stream.
+     */
+    static final class NumberReader {
+        final InputStream input;
+        private final byte[] buffer = new byte[1 << 13];
+        private int position;
+        private int limit;
+
+        NumberReader(final InputStream input) {
+            this.input = input;
+        }
+
+        String next() {
+            int ch = this.read();
+            while (ch == ' ' || ch == '\t' || ch == '\r' || ch == '\n') {
+                ch = this.read();
+            }
+            if (ch < 0) {
+                throw new RuntimeError("read: no more input");
+            }
+
+            final var word = new StringBuilder();
+            while (ch >= 0 && ch != ' ' && ch != '\t' && ch != '\r' && ch != '\n') {
+                word.append((char) ch);
+                ch = this.read();
+            }
+            return word.toString();
+        }
+
+        long nextLong() {
+            final String text = this.next();
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException ex) {
+                throw new RuntimeError("read: '" + text + "' is not an integer");
+            }
+        }
+
+        double nextDouble() {
+            final String text = this.next();
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException ex) {
+                throw new RuntimeError("read: '" + text + "' is not a number");
+            }
+        }
+
+        private int read() {
+            if (position == limit) {
+                try {
+                    limit = input.read(buffer);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++] & 0xFF;
+        }
+    }
+}
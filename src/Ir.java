@@ -0,0 +1,532 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A program in three-address form, for {@link Optimizer}: every instruction is one operation on at
+ * most two operands (constants, variables or temporaries), and the result goes to a variable or a
+ * temporary.
+ * <p>
+ * Temporaries are assigned once (the way SSA values are), and are defined before they are used;
+ * variables are assigned any number of times. The control flow stays structured: "if", "while" and
+ * "do ... until" hold blocks of instructions, and a "while" condition is computed by a header block
+ * that runs before every test.
+ * <p>
+ * An IR is lowered from an {@link Interpreter}'s nodes (which already know nothing of the grammar,
+ * and have every variable in a slot), and raised back to them by {@link #toInterpreter()}, so the
+ * interpreter and {@link BytecodeCompiler} both run the optimized program.
+ */
+final class Ir {
+
+    // Operand kinds
+    static final int CONSTANT = 0, VARIABLE = 1, TEMPORARY = 2;
+
+    // Operations
+    static final int COPY = 0, ADD = 1, SUBTRACT = 2, MULTIPLY = 3, DIVIDE = 4;
+
+    // The operations of Interpreter.Chain's operators.
+    private static final int[] OPERATIONS = {ADD, SUBTRACT, MULTIPLY, DIVIDE};
+
+    private static final String[] OPERATORS = {"", "+", "-", "*", "/"};
+    private static final String[] COMPARISONS = {"<", ">", "<=", ">=", "=", "!="};
+
+    /**
+     * A constant, a variable or a temporary (variables and temporaries are numbered separately).
+     */
+    record Operand(int kind, int index, long longValue, double doubleValue) {
+
+        static Operand constant(final long longValue, final double doubleValue) {
+            return new Operand(CONSTANT, -1, longValue, doubleValue);
+        }
+
+        static Operand variable(final int index) {
+            return new Operand(VARIABLE, index, 0, 0);
+        }
+
+        static Operand temporary(final int index) {
+            return new Operand(TEMPORARY, index, 0, 0);
+        }
+
+        boolean isConstant() {
+            return kind == CONSTANT;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            // (doubles are compared by their bits, so 0.0 is not -0.0, and NaN is NaN.)
+            return other instanceof Operand that && kind == that.kind && index == that.index && longValue == that.longValue
+                    && Double.doubleToRawLongBits(doubleValue) == Double.doubleToRawLongBits(that.doubleValue);
+        }
+
+        @Override
+        public int hashCode() {
+            return (kind * 31 + index) * 31 + Long.hashCode(longValue) + Double.hashCode(doubleValue);
+        }
+    }
+
+    /**
+     * An instruction, or a structured statement.
+     */
+    interface Node {
+    }
+
+    /**
+     * destination = left [operation right]
+     */
+    static final class Assign implements Node {
+        final Operand destination;
+        int operation;
+        Operand left;
+        Operand right;
+
+        Assign(final Operand destination, final int operation, final Operand left, final Operand right) {
+            this.destination = destination;
+            this.operation = operation;
+            this.left = left;
+            this.right = right;
+        }
+
+        void copy(final Operand value) {
+            operation = COPY;
+            left = value;
+            right = null;
+        }
+    }
+
+    /**
+     * read variable
+     */
+    static final class Read implements Node {
+        final Operand variable;
+
+        Read(final Operand variable) {
+            this.variable = variable;
+        }
+    }
+
+    /**
+     * write value
+     */
+    static final class Write implements Node {
+        Operand value;
+
+        Write(final Operand value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * left comparison right (an {@link Interpreter.Compare} constant).
+     */
+    static final class Cond {
+        final int comparison;
+        Operand left;
+        Operand right;
+
+        Cond(final int comparison, final Operand left, final Operand right) {
+            this.comparison = comparison;
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    static final class If implements Node {
+        final Cond condition;
+        final List<Node> then;
+        final List<Node> otherwise;
+
+        If(final Cond condition, final List<Node> then, final List<Node> otherwise) {
+            this.condition = condition;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+    }
+
+    static final class While implements Node {
+        final List<Node> header;
+        final Cond condition;
+        final List<Node> body;
+
+        While(final List<Node> header, final Cond condition, final List<Node> body) {
+            this.header = header;
+            this.condition = condition;
+            this.body = body;
+        }
+    }
+
+    static final class DoUntil implements Node {
+        final List<Node> body;
+        final Cond condition;
+
+        DoUntil(final List<Node> body, final Cond condition) {
+            this.body = body;
+            this.condition = condition;
+        }
+    }
+
+    final Interpreter.Mode mode;
+    final List<String> variables;
+    final List<Node> program = new ArrayList<>();
+    private int temporaries;
+
+    private Ir(final Interpreter.Mode mode, final List<String> variables) {
+        this.mode = mode;
+        this.variables = variables;
+    }
+
+    /**
+     * Lower a program to three-address form.
+     *
+     * @param program The program.
+     * @return its IR.
+     */
+    static Ir lower(final Interpreter program) {
+        final var ir = new Ir(program.mode(), program.variables());
+        ir.statement(program.program(), ir.program);
+        return ir;
+    }
+
+    int temporaries() {
+        return temporaries;
+    }
+
+    /**
+     * @return whether an instruction can fail (a long division by anything but a non-0 constant),
+     * so it must not be removed or moved.
+     */
+    boolean canFail(final Assign assign) {
+        return mode == Interpreter.Mode.LONG && assign.operation == DIVIDE
+                && !(assign.right.isConstant() && assign.right.longValue() != 0);
+    }
+
+    // *****************************************************************************************************
+
+    private void statement(final Interpreter.Stmt statement, final List<Node> out) {
+        if (statement instanceof Interpreter.Block block) {
+            for (final Interpreter.Stmt s : block.statements) {
+                this.statement(s, out);
+            }
+        } else if (statement instanceof Interpreter.AssignLong assign) {
+            this.assign(Operand.variable(assign.slot), assign.value, out);
+        } else if (statement instanceof Interpreter.AssignDouble assign) {
+            this.assign(Operand.variable(assign.slot), assign.value, out);
+        } else if (statement instanceof Interpreter.ReadLong read) {
+            out.add(new Read(Operand.variable(read.slot)));
+        } else if (statement instanceof Interpreter.ReadDouble read) {
+            out.add(new Read(Operand.variable(read.slot)));
+        } else if (statement instanceof Interpreter.WriteLong write) {
+            out.add(new Write(this.operand(write.value, out)));
+        } else if (statement instanceof Interpreter.WriteDouble write) {
+            out.add(new Write(this.operand(write.value, out)));
+        } else if (statement instanceof Interpreter.If branch) {
+            final Cond condition = this.condition(branch.condition, out);
+            final List<Node> then = new ArrayList<>();
+            final List<Node> otherwise = new ArrayList<>();
+            this.statement(branch.then, then);
+            if (branch.otherwise != null) {
+                this.statement(branch.otherwise, otherwise);
+            }
+            out.add(new If(condition, then, otherwise));
+        } else if (statement instanceof Interpreter.While loop) {
+            final List<Node> header = new ArrayList<>();
+            final List<Node> body = new ArrayList<>();
+            final Cond condition = this.condition(loop.condition, header);
+            this.statement(loop.body, body);
+            out.add(new While(header, condition, body));
+        } else if (statement instanceof Interpreter.DoUntil loop) {
+            final List<Node> body = new ArrayList<>();
+            this.statement(loop.body, body);
+            out.add(new DoUntil(body, this.condition(loop.condition, body)));
+        } else {
+            throw new IllegalArgumentException("Cannot lower " + statement.getClass().getSimpleName());
+        }
+    }
+
+    private Cond condition(final Interpreter.Cond condition, final List<Node> out) {
+        if (condition instanceof Interpreter.CompareLong compare) {
+            return new Cond(compare.comparison, this.operand(compare.left, out), this.operand(compare.right, out));
+        }
+        if (condition instanceof Interpreter.CompareDouble compare) {
+            return new Cond(compare.comparison, this.operand(compare.left, out), this.operand(compare.right, out));
+        }
+        throw new IllegalArgumentException("Cannot lower " + condition.getClass().getSimpleName());
+    }
+
+    private void assign(final Operand destination, final Interpreter.Expr value, final List<Node> out) {
+        if (value instanceof Interpreter.Binary binary) {
+            this.assign(destination, OPERATIONS[binary.operator()], binary.left, binary.right, out);
+        } else if (value instanceof Interpreter.Chain chain) {
+            // One step at a time, through new temporaries (the destination is assigned last: it may be an operand).
+            Operand left = this.operand(chain.operands[0], out);
+            for (int i = 0; i < chain.operators.length; i++) {
+                final Operand right = this.operand(chain.operands[i + 1], out);
+                final Operand result = i == chain.operators.length - 1 ? destination : Operand.temporary(temporaries++);
+                out.add(new Assign(result, OPERATIONS[chain.operators[i]], left, right));
+                left = result;
+            }
+        } else {
+            out.add(new Assign(destination, COPY, this.operand(value, out), null));
+        }
+    }
+
+    private void assign(final Operand destination, final int operation, final Interpreter.Expr left,
+                        final Interpreter.Expr right, final List<Node> out) {
+        final Operand l = this.operand(left, out);
+        final Operand r = this.operand(right, out);
+        out.add(new Assign(destination, operation, l, r));
+    }
+
+    // An expression as an operand (computed into a new temporary if it is not a constant or a variable).
+    private Operand operand(final Interpreter.Expr value, final List<Node> out) {
+        if (value instanceof Interpreter.Constant constant) {
+            return Operand.constant(constant.longValue, constant.doubleValue);
+        }
+        if (value instanceof Interpreter.Variable variable) {
+            return Operand.variable(variable.slot);
+        }
+        final Operand temporary = Operand.temporary(temporaries++);
+        this.assign(temporary, value, out);
+        return temporary;
+    }
+
+    // *****************************************************************************************************
+
+    /**
+     * @return the program as text, one instruction per line.
+     */
+    String dump() {
+        final var text = new StringBuilder();
+        this.dump(program, 0, text);
+        return text.toString();
+    }
+
+    private void dump(final List<Node> block, final int depth, final StringBuilder text) {
+        final String indent = "    ".repeat(depth);
+        for (final Node node : block) {
+            if (node instanceof Assign assign) {
+                text.append(indent).append(this.text(assign.destination)).append(" = ").append(this.text(assign.left));
+                if (assign.operation != COPY) {
+                    text.append(' ').append(OPERATORS[assign.operation]).append(' ').append(this.text(assign.right));
+                }
+                text.append('\n');
+            } else if (node instanceof Read read) {
+                text.append(indent).append("read ").append(this.text(read.variable)).append('\n');
+            } else if (node instanceof Write write) {
+                text.append(indent).append("write ").append(this.text(write.value)).append('\n');
+            } else if (node instanceof If branch) {
+                text.append(indent).append("if ").append(this.text(branch.condition)).append(" then\n");
+                this.dump(branch.then, depth + 1, text);
+                if (!branch.otherwise.isEmpty()) {
+                    text.append(indent).append("else\n");
+                    this.dump(branch.otherwise, depth + 1, text);
+                }
+                text.append(indent).append("fi\n");
+            } else if (node instanceof While loop) {
+                text.append(indent).append("while\n");
+                this.dump(loop.header, depth + 1, text);
+                text.append(indent).append("test ").append(this.text(loop.condition)).append(" do\n");
+                this.dump(loop.body, depth + 1, text);
+                text.append(indent).append("od\n");
+            } else if (node instanceof DoUntil loop) {
+                text.append(indent).append("do\n");
+                this.dump(loop.body, depth + 1, text);
+                text.append(indent).append("until ").append(this.text(loop.condition)).append('\n');
+            }
+        }
+    }
+
+    private String text(final Cond condition) {
+        return this.text(condition.left) + " " + COMPARISONS[condition.comparison] + " " + this.text(condition.right);
+    }
+
+    String text(final Operand operand) {
+        return switch (operand.kind()) {
+            case CONSTANT -> mode == Interpreter.Mode.LONG
+                    ? Long.toString(operand.longValue())
+                    : Double.toString(operand.doubleValue());
+            case VARIABLE -> variables.get(operand.index());
+            default -> "t" + operand.index();
+        };
+    }
+
+    // *****************************************************************************************************
+
+    /**
+     * Raise the IR back to executable nodes: the temporaries used once, in the block that defines
+     * them, become expression trees again, and the others get slots of their own (after the
+     * variables').
+     *
+     * @return the program, ready to run.
+     */
+    Interpreter toInterpreter() {
+        return new Raiser().raise();
+    }
+
+    private final class Raiser {
+        final boolean longs = mode == Interpreter.Mode.LONG;
+        final int[] uses = new int[temporaries];
+        final int[] slots = new int[temporaries];
+        final List<String> names = new ArrayList<>(variables);
+
+        Interpreter raise() {
+            Arrays.fill(slots, -1);
+            this.count(program);
+            return Interpreter.of(this.block(program, null).statement(), mode, names);
+        }
+
+        private void count(final List<Node> block) {
+            for (final Node node : block) {
+                if (node instanceof Assign assign) {
+                    this.use(assign.left);
+                    this.use(assign.right);
+                } else if (node instanceof Write write) {
+                    this.use(write.value);
+                } else if (node instanceof If branch) {
+                    this.use(branch.condition);
+                    this.count(branch.then);
+                    this.count(branch.otherwise);
+                } else if (node instanceof While loop) {
+                    this.count(loop.header);
+                    this.use(loop.condition);
+                    this.count(loop.body);
+                } else if (node instanceof DoUntil loop) {
+                    this.count(loop.body);
+                    this.use(loop.condition);
+                }
+            }
+        }
+
+        private void use(final Cond condition) {
+            this.use(condition.left);
+            this.use(condition.right);
+        }
+
+        private void use(final Operand operand) {
+            if (operand != null && operand.kind() == TEMPORARY) {
+                uses[operand.index()]++;
+            }
+        }
+
+        /**
+         * The statements of a block, and (if there is one) the condition tested after it.
+         */
+        private record Raised(List<Interpreter.Stmt> statements, Interpreter.Cond condition) {
+            Interpreter.Stmt statement() {
+                return statements.size() == 1 ? statements.get(0) : new Interpreter.Block(statements.toArray(Interpreter.Stmt[]::new));
+            }
+        }
+
+        private Raised block(final List<Node> block, final Cond last) {
+            final List<Interpreter.Stmt> out = new ArrayList<>();
+            // The temporaries waiting to be used by the next instruction, in the order they were defined.
+            final Map<Integer, Interpreter.Expr> pending = new LinkedHashMap<>();
+
+            for (final Node node : block) {
+                if (node instanceof Assign assign && assign.destination.kind() == TEMPORARY) {
+                    final Interpreter.Expr value = this.expression(assign, pending);
+                    if (uses[assign.destination.index()] == 1) {
+                        pending.put(assign.destination.index(), value);
+                    } else {
+                        this.materialize(pending, out);
+                        out.add(this.store(this.slot(assign.destination.index()), value));
+                    }
+                } else if (node instanceof Assign assign) {
+                    final Interpreter.Expr value = this.expression(assign, pending);
+                    this.materialize(pending, out);
+                    out.add(this.store(assign.destination.index(), value));
+                } else if (node instanceof Read read) {
+                    this.materialize(pending, out);
+                    out.add(longs ? new Interpreter.ReadLong(read.variable.index()) : new Interpreter.ReadDouble(read.variable.index()));
+                } else if (node instanceof Write write) {
+                    final Interpreter.Expr value = Interpreter.Chain.flatten(this.operand(write.value, pending));
+                    this.materialize(pending, out);
+                    out.add(longs ? new Interpreter.WriteLong(value) : new Interpreter.WriteDouble(value));
+                } else if (node instanceof If branch) {
+                    final Interpreter.Cond condition = this.condition(branch.condition, pending);
+                    this.materialize(pending, out);
+                    out.add(new Interpreter.If(condition, this.block(branch.then, null).statement(),
+                            branch.otherwise.isEmpty() ? null : this.block(branch.otherwise, null).statement()));
+                } else if (node instanceof While loop) {
+                    this.materialize(pending, out);
+                    final Raised header = this.block(loop.header, loop.condition);
+                    final Interpreter.Stmt body = this.block(loop.body, null).statement();
+                    if (header.statements.isEmpty()) {
+                        out.add(new Interpreter.While(header.condition, body));
+                    } else {
+                        // The header runs before the first test, and again after every pass through the body.
+                        final Interpreter.Stmt before = header.statement();
+                        out.add(before);
+                        out.add(new Interpreter.While(header.condition, new Interpreter.Block(new Interpreter.Stmt[]{body, before})));
+                    }
+                } else if (node instanceof DoUntil loop) {
+                    this.materialize(pending, out);
+                    final Raised body = this.block(loop.body, loop.condition);
+                    out.add(new Interpreter.DoUntil(body.statement(), body.condition));
+                }
+            }
+
+            final Interpreter.Cond condition = last != null ? this.condition(last, pending) : null;
+            this.materialize(pending, out);
+            return new Raised(out, condition);
+        }
+
+        // Store the pending temporaries that were not used in their slots.
+        private void materialize(final Map<Integer, Interpreter.Expr> pending, final List<Interpreter.Stmt> out) {
+            for (final var entry : pending.entrySet()) {
+                out.add(this.store(this.slot(entry.getKey()), entry.getValue()));
+            }
+            pending.clear();
+        }
+
+        private int slot(final int temporary) {
+            if (slots[temporary] < 0) {
+                slots[temporary] = names.size();
+                names.add("t" + temporary);
+            }
+            return slots[temporary];
+        }
+
+        // (The expressions built here, one operator at a time, are flattened into chains where they are used.)
+        private Interpreter.Stmt store(final int slot, final Interpreter.Expr expression) {
+            final Interpreter.Expr value = Interpreter.Chain.flatten(expression);
+            return longs ? new Interpreter.AssignLong(slot, value) : new Interpreter.AssignDouble(slot, value);
+        }
+
+        private Interpreter.Cond condition(final Cond condition, final Map<Integer, Interpreter.Expr> pending) {
+            final Interpreter.Expr left = Interpreter.Chain.flatten(this.operand(condition.left, pending));
+            final Interpreter.Expr right = Interpreter.Chain.flatten(this.operand(condition.right, pending));
+            return longs
+                    ? new Interpreter.CompareLong(condition.comparison, left, right)
+                    : new Interpreter.CompareDouble(condition.comparison, left, right);
+        }
+
+        private Interpreter.Expr expression(final Assign assign, final Map<Integer, Interpreter.Expr> pending) {
+            final Interpreter.Expr left = this.operand(assign.left, pending);
+            if (assign.operation == COPY) {
+                return left;
+            }
+            final Interpreter.Expr right = this.operand(assign.right, pending);
+            return switch (assign.operation) {
+                case ADD -> new Interpreter.Add(left, right);
+                case SUBTRACT -> new Interpreter.Subtract(left, right);
+                case MULTIPLY -> new Interpreter.Multiply(left, right);
+                default -> new Interpreter.Divide(left, right);
+            };
+        }
+
+        private Interpreter.Expr operand(final Operand operand, final Map<Integer, Interpreter.Expr> pending) {
+            return switch (operand.kind()) {
+                case CONSTANT -> new Interpreter.Constant(operand.longValue(), operand.doubleValue());
+                case VARIABLE -> new Interpreter.Variable(operand.index());
+                default -> {
+                    final Interpreter.Expr value = pending.remove(operand.index());
+                    yield value != null ? value : new Interpreter.Variable(this.slot(operand.index()));
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,333 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An LL(1) grammar, read from a text description (see {@link #BUILT_IN}), along with the
+ * FIRST/FOLLOW sets computed from it and the prediction table used by the {@link TableParser}.
+ * <p>
+ * Rules look like "NAME -> A B C | D | EMPTY", one per line ("#" starts a comment line). Rule names
+ * are {@link NonTerminal} names, or helper names starting with "_": a helper gets no node of its own
+ * in the parse tree (its children are added to its parent instead). Everything else must be a
+ * {@link Token} name or EMPTY, which derives nothing but adds an epsilon node to the tree; an
+ * alternative with nothing in it derives nothing and adds nothing. The first rule is the start rule,
+ * and the whole input must match it (followed by the end of input, $$).
+ * <p>
+ * Symbols are ints: 0 .. (number of tokens - 1) are the tokens (by ordinal), then EMPTY, then the
+ * rules (in the order they were defined).
+ */
+final class LL1Grammar {
+
+    private static final Token[] TOKENS = Token.values();
+
+    // The symbol for "EMPTY" (an epsilon node).
+    static final int EMPTY = TOKENS.length;
+
+    // The first rule's symbol.
+    static final int FIRST_RULE = EMPTY + 1;
+
+    // The grammar that ships with the program (the same language as Parser.java), built into the class
+    // so that a plain "javac" build has it; a starting point for grammars given with "--grammar=<file>".
+    private static final String BUILT_IN = """
+            PROGRAM       -> STMT_LIST
+            STMT_LIST     -> _STMTS
+            _STMTS        -> STMT _STMTS | EMPTY
+            STMT          -> ID ASSIGN_OP EXPR | READ ID | WRITE EXPR | IF_STMT | WHILE_STMT | DO_UNTIL_STMT
+            DO_UNTIL_STMT -> DO STMT_LIST UNTIL CONDITION
+            IF_STMT       -> IF CONDITION THEN STMT_LIST _ELSE FI
+            _ELSE         -> ELSE_PART |
+            ELSE_PART     -> ELSE STMT_LIST
+            WHILE_STMT    -> WHILE CONDITION DO STMT_LIST OD
+            CONDITION     -> EXPR REL_OP EXPR
+            EXPR          -> EXPO
+            EXPO          -> TERM TERM_TAIL
+            TERM_TAIL     -> ADD_OP TERM TERM_TAIL | EMPTY
+            TERM          -> FACTOR FACTOR_TAIL
+            FACTOR_TAIL   -> MULT_OP FACTOR FACTOR_TAIL | EMPTY
+            FACTOR        -> LEFT_PAREN EXPR RIGHT_PAREN | ID | NUMBER
+            """;
+
+    // For each rule (index = symbol - FIRST_RULE): its name, and its node label (null for helpers).
+    private final List<String> ruleNames = new ArrayList<>();
+    private final List<NonTerminal> ruleLabels = new ArrayList<>();
+
+    // The productions: the rule each one belongs to, and its right-hand side.
+    private final List<Integer> productionRules = new ArrayList<>();
+    private final List<int[]> productions = new ArrayList<>();
+
+    // FIRST and FOLLOW of each rule, and whether it can derive nothing.
+    private BitSet[] first;
+    private BitSet[] follow;
+    private boolean[] nullable;
+
+    // table[rule * TOKENS.length + token.ordinal()] = the production to use, or -1.
+    private int[] table;
+
+    /**
+     * Read a grammar from a file.
+     *
+     * @param path The grammar file.
+     * @return the grammar.
+     * @throws IOException if it cannot be read.
+     */
+    static LL1Grammar fromFile(final Path path) throws IOException {
+        return new LL1Grammar(Files.readString(path));
+    }
+
+    /**
+     * The grammar that ships with the program (built once).
+     *
+     * @return the built-in grammar.
+     */
+    static LL1Grammar builtIn() {
+        return BuiltIn.GRAMMAR;
+    }
+
+    // Holds the built-in grammar, which is built the first time it is used.
+    private static final class BuiltIn {
+        static final LL1Grammar GRAMMAR = new LL1Grammar(BUILT_IN);
+    }
+
+    /**
+     * Construct a grammar from its description, and build its tables.
+     *
+     * @param description The rules.
+     * @throws IllegalArgumentException if the grammar is malformed, or is not LL(1).
+     */
+    LL1Grammar(final String description) {
+        // Pass 1: find all the rule names (so rules can be used before they are defined).
+        final List<String[]> definitions = new ArrayList<>();
+        final Map<String, Integer> rules = new HashMap<>();
+
+        for (var line : description.split("\\R")) {
+            final var text = line.strip();
+            if (text.isEmpty() || text.startsWith("#")) {
+                continue;
+            }
+
+            final var parts = text.split("->", 2);
+            final var name = parts[0].strip();
+            if (parts.length != 2 || name.isEmpty() || rules.containsKey(name)) {
+                throw new IllegalArgumentException("Bad grammar rule: " + text);
+            }
+
+            rules.put(name, FIRST_RULE + ruleNames.size());
+            ruleNames.add(name);
+            ruleLabels.add(name.startsWith("_") ? null : NonTerminal.valueOf(name));
+            definitions.add(parts);
+        }
+
+        if (ruleNames.isEmpty()) {
+            throw new IllegalArgumentException("The grammar has no rules");
+        }
+
+        // Pass 2: the productions.
+        for (int rule = 0; rule < definitions.size(); rule++) {
+            for (var alternative : definitions.get(rule)[1].split("\\|", -1)) {
+                final var names = alternative.strip().isEmpty() ? new String[0] : alternative.strip().split("\\s+");
+                final int[] rightHandSide = new int[names.length];
+
+                for (int i = 0; i < names.length; i++) {
+                    rightHandSide[i] = symbol(names[i], rules);
+                }
+
+                productionRules.add(rule);
+                productions.add(rightHandSide);
+            }
+        }
+
+        this.computeFirstSets();
+        for (int rule = 0; rule < ruleNames.size(); rule++) {
+            if (first[rule].isEmpty() && !nullable[rule]) {
+                throw new IllegalArgumentException("The grammar rule " + ruleNames.get(rule) + " cannot derive any input");
+            }
+        }
+        this.computeFollowSets();
+        this.buildTable();
+    }
+
+    int startSymbol() {
+        return FIRST_RULE;
+    }
+
+    static boolean isToken(final int symbol) {
+        return symbol < EMPTY;
+    }
+
+    static boolean isRule(final int symbol) {
+        return symbol >= FIRST_RULE;
+    }
+
+    /**
+     * @return the symbol of the rule for a Non-Terminal, or -1 if the grammar has no such rule.
+     */
+    int rule(final NonTerminal nonTerminal) {
+        final int rule = ruleLabels.indexOf(nonTerminal);
+        return rule < 0 ? -1 : FIRST_RULE + rule;
+    }
+
+    /**
+     * @return the label of a rule's tree node, or null for a helper rule.
+     */
+    NonTerminal label(final int ruleSymbol) {
+        return ruleLabels.get(ruleSymbol - FIRST_RULE);
+    }
+
+    /**
+     * Look up the production to use for a rule, given the current token.
+     *
+     * @return the production's right-hand side, or null if the token cannot start the rule.
+     */
+    int[] predict(final int ruleSymbol, final Token current) {
+        final int production = table[(ruleSymbol - FIRST_RULE) * TOKENS.length + current.ordinal()];
+        return production < 0 ? null : productions.get(production);
+    }
+
+    /**
+     * @return the tokens that can start a rule (or, for a nullable rule, follow it).
+     */
+    BitSet expected(final int ruleSymbol) {
+        final int rule = ruleSymbol - FIRST_RULE;
+        final var expected = (BitSet) first[rule].clone();
+        if (nullable[rule]) {
+            expected.or(follow[rule]);
+        }
+        return expected;
+    }
+
+    /**
+     * @return FIRST of a rule, as a set of token ordinals.
+     */
+    BitSet first(final int ruleSymbol) {
+        return (BitSet) first[ruleSymbol - FIRST_RULE].clone();
+    }
+
+    /**
+     * @return FOLLOW of a rule, as a set of token ordinals.
+     */
+    BitSet follow(final int ruleSymbol) {
+        return (BitSet) follow[ruleSymbol - FIRST_RULE].clone();
+    }
+
+    // Resolve a name in a right-hand side to its symbol.
+    private static int symbol(final String name, final Map<String, Integer> rules) {
+        if (rules.containsKey(name)) {
+            return rules.get(name);
+        }
+        if (name.equals("EMPTY")) {
+            return EMPTY;
+        }
+        try {
+            return Token.valueOf(name).ordinal();
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unknown grammar symbol: " + name, ex);
+        }
+    }
+
+    // FIRST of a sequence of symbols starting at "from"; returns true if the whole sequence is nullable.
+    private boolean firstOfSequence(final int[] symbols, final int from, final BitSet result) {
+        for (int i = from; i < symbols.length; i++) {
+            final int symbol = symbols[i];
+            if (isToken(symbol)) {
+                result.set(symbol);
+                return false;
+            }
+            if (isRule(symbol)) {
+                result.or(first[symbol - FIRST_RULE]);
+                if (!nullable[symbol - FIRST_RULE]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void computeFirstSets() {
+        final int ruleCount = ruleNames.size();
+        first = new BitSet[ruleCount];
+        nullable = new boolean[ruleCount];
+        Arrays.setAll(first, i -> new BitSet(TOKENS.length));
+
+        // Iterate until nothing changes.
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int p = 0; p < productions.size(); p++) {
+                final int rule = productionRules.get(p);
+                final int before = first[rule].cardinality();
+
+                if (this.firstOfSequence(productions.get(p), 0, first[rule]) && !nullable[rule]) {
+                    nullable[rule] = true;
+                    changed = true;
+                }
+                changed |= first[rule].cardinality() != before;
+            }
+        }
+    }
+
+    private void computeFollowSets() {
+        final int ruleCount = ruleNames.size();
+        follow = new BitSet[ruleCount];
+        Arrays.setAll(follow, i -> new BitSet(TOKENS.length));
+
+        // The start rule is followed by the end of input.
+        follow[0].set(Token.$$.ordinal());
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int p = 0; p < productions.size(); p++) {
+                final int rule = productionRules.get(p);
+                final int[] rightHandSide = productions.get(p);
+
+                for (int i = 0; i < rightHandSide.length; i++) {
+                    if (!isRule(rightHandSide[i])) {
+                        continue;
+                    }
+
+                    final var target = follow[rightHandSide[i] - FIRST_RULE];
+                    final int before = target.cardinality();
+
+                    if (this.firstOfSequence(rightHandSide, i + 1, target)) {
+                        target.or(follow[rule]);
+                    }
+                    changed |= target.cardinality() != before;
+                }
+            }
+        }
+    }
+
+    private void buildTable() {
+        table = new int[ruleNames.size() * TOKENS.length];
+        Arrays.fill(table, -1);
+
+        for (int p = 0; p < productions.size(); p++) {
+            final int rule = productionRules.get(p);
+
+            // The production is chosen on FIRST of its right-hand side (plus FOLLOW of the rule, if
+            // the right-hand side can derive nothing).
+            final var lookahead = new BitSet(TOKENS.length);
+            if (this.firstOfSequence(productions.get(p), 0, lookahead)) {
+                lookahead.or(follow[rule]);
+            }
+
+            for (int token = lookahead.nextSetBit(0); token >= 0; token = lookahead.nextSetBit(token + 1)) {
+                final int index = rule * TOKENS.length + token;
+                if (table[index] >= 0) {
+                    throw new IllegalArgumentException(String.format(
+                            "The grammar is not LL(1): %s has two productions for %s",
+                            ruleNames.get(rule), TOKENS[token]));
+                }
+                table[index] = p;
+            }
+        }
+    }
+}
@@ -5,20 +5,21 @@ import java.awt.*;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
-import java.net.URISyntaxException;
-import java.net.URL;
-import java.net.URLEncoder;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 import java.util.Scanner;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
-import static java.nio.file.Files.lines;
 import static java.text.MessageFormat.format;
 
 /**
@@ -39,72 +40,358 @@ public class MAIN {
     // !!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
     // !!!!!!! Toggle to display Graphviz prompt. !!!!!!!
 
-    // NOTE: this can be overridden in the Parser class.
-    public static boolean PROMPT_FOR_GRAPHVIZ;
+    // (A constant, rather than something every Parser sets, so parsers can run side by side.)
+    public static final boolean PROMPT_FOR_GRAPHVIZ = true;
 
     // !!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
 
 
     public static void main(String[] args) {
-        // Check for an input file argument
-        if (args.length != 1) {
-            System.err.println("Must Provide an input filename!!");
+        // Check for an input file argument (and options).
+        final CompilerOptions options;
+        try {
+            options = CompilerOptions.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(CompilerOptions.USAGE);
             System.exit(1);
+            return;
+        }
+        if (options.scan != null) {
+            ScanBackend.active = options.scan; // (for the whole process: a server's requests cannot change it)
         }
 
-        final File file = new File(args[0]);
+        if (options.serve != null) {
+            System.exit(CompileServer.serve(options));
+        }
+        if (options.watch) {
+            System.exit(WatchCompiler.watch(options));
+        }
+        if (options.batch) {
+            System.exit(BatchCompiler.run(options));
+        }
+        if (options.validate) {
+            System.exit(Validate(options));
+        }
+        if (options.run) {
+            System.exit(Run(options));
+        }
 
-        if (!file.exists() || !file.isFile() || !file.canRead()) {
+        final String fileName = options.files.get(0);
+        final File file = new File(fileName);
+
+        if (!fileName.equals("-") && (!file.exists() || !file.isFile() || !file.canRead())) {
             System.err.printf("Input file not found: %s%n", file.toPath());
             System.exit(2);
         }
+        if (!fileName.equals("-") && isSameFile(file.toPath(), outputFile(options, fileName))) {
+            // (Opening the output would empty the input before it is read.)
+            System.err.printf("The output file is the input file: %s%n", outputFile(options, fileName));
+            System.exit(2);
+        }
 
         try {
-            final String compiledCode = ScanAndParse(file);
+            final LL1Grammar grammar = options.grammarFile != null ? LL1Grammar.fromFile(Path.of(options.grammarFile)) : null;
+            final CodeGenerator codeGenerator = new CodeGenerator();
+
+            try (var channel = openChannel(options, fileName); var output = openOutput(options, fileName)) {
+                final LexicalAnalyzer lexicalAnalyzer = openLexer(options, file, channel);
+                codeGenerator.setOutput(output);
+                codeGenerator.configure(options);
+                ScanAndParse(newParser(options, lexicalAnalyzer, codeGenerator, grammar), codeGenerator);
+            }
 
-            // Display the graphviz test page, if desired.
+            final SubtreeSharing sharing = codeGenerator.getSharing();
+            if (sharing != null) {
+                System.err.printf("DAG: %d nodes, %d distinct subtrees (%.1fx smaller)%n",
+                        sharing.nodes(), sharing.unique(), sharing.ratio());
+            }
+
+            // Display a picture of the tree, if desired (a "--format=svg" output already is one).
             if (PROMPT_FOR_GRAPHVIZ) {
-                GraphViewer.openWebGraphViz(compiledCode);
+                final String outputFile = outputFile(options, fileName);
+                if (options.format == CompilerOptions.Format.SVG && !outputFile.equals("-")) {
+                    GraphViewer.openPicture(codeGenerator, Path.of(outputFile), true);
+                } else {
+                    GraphViewer.openPicture(codeGenerator, null, false);
+                }
             }
-        } catch (IOException ex) {
+        } catch (IOException | UncheckedIOException ex) {
             final String msg = format("Could not read the file!!! {0}", ex.getMessage());
             Logger.getGlobal().log(Level.SEVERE, msg);
             System.exit(3);
+        } catch (IllegalArgumentException ex) {
+            final String msg = format("Bad grammar!!! {0}", ex.getMessage());
+            Logger.getGlobal().log(Level.SEVERE, msg);
+            System.exit(4);
+        }
+    }
+
+    /**
+     * Check the syntax of every input file without building any output, printing "file: OK" or
+     * "file:line:column: error" for each error (every one of them, with "--recover").
+     *
+     * @return the exit code: 0 if every file is valid, 5 if any is not.
+     */
+    private static int Validate(final CompilerOptions options) {
+        int failures = 0;
+
+        try {
+            final LL1Grammar grammar = options.grammarFile != null ? LL1Grammar.fromFile(Path.of(options.grammarFile)) : null;
+
+            // One session for all the (non streamed) files.
+            final ParseSession session = new ParseSession(options.engine, grammar, false);
+            session.setErrorRecovery(options.recover);
+
+            for (final String fileName : options.files) {
+                final File file = new File(fileName);
+                if (!fileName.equals("-") && (!file.exists() || !file.isFile() || !file.canRead())) {
+                    System.out.printf("%s: Input file not found%n", fileName);
+                    failures++;
+                    continue;
+                }
+
+                try (var channel = openChannel(options, fileName)) {
+                    final List<ParseException> errors;
+                    if (channel != null) {
+                        final Parser parser = newParser(options, new StreamingLexicalAnalyzer(channel), new RecognizerCodeGenerator(), grammar);
+                        parser.parse();
+                        errors = parser.getDiagnostics();
+                    } else {
+                        if (options.parallel) {
+                            session.parse(ParallelLexer.tokenize(LexicalAnalyzer.mapFile(file)));
+                        } else {
+                            session.parse(LexicalAnalyzer.mapFile(file));
+                        }
+                        errors = session.getDiagnostics();
+                    }
+
+                    if (errors.isEmpty()) {
+                        System.out.printf("%s: OK%n", fileName);
+                    } else {
+                        for (final ParseException error : errors) {
+                            System.out.printf("%s:%d:%d: %s%n", fileName, error.getLine(), error.getColumn(), error.getMessage());
+                        }
+                        failures++;
+                    }
+                } catch (IOException | UncheckedIOException ex) {
+                    System.out.printf("%s: Could not read the file!!! %s%n", fileName, ex.getMessage());
+                    failures++;
+                }
+            }
+        } catch (IOException | IllegalArgumentException ex) {
+            final String msg = format("Bad grammar!!! {0}", ex.getMessage());
+            Logger.getGlobal().log(Level.SEVERE, msg);
+            return 4;
+        }
+        return failures == 0 ? 0 : 5;
+    }
+
+    /**
+     * Parse a program and run it (see {@link Interpreter}, and {@link BytecodeCompiler} with
+     * "--backend=bytecode"): "read" reads from "--input=<file>" (or stdin), and "write" writes to stdout.
+     *
+     * @return the exit code: 0 if the program ran, 5 if it has a syntax error, 6 if it failed (or is
+     *     nested too deeply to run).
+     */
+    private static int Run(final CompilerOptions options) {
+        final String fileName = options.files.get(0);
+        final File file = new File(fileName);
+        if (!fileName.equals("-") && (!file.exists() || !file.isFile() || !file.canRead())) {
+            System.err.printf("Input file not found: %s%n", file.toPath());
+            return 2;
+        }
+
+        final Interpreter program;
+        BytecodeCompiler.Compiled compiled = null;
+        try {
+            final LL1Grammar grammar = options.grammarFile != null ? LL1Grammar.fromFile(Path.of(options.grammarFile)) : null;
+            final CodeGenerator codeGenerator = new CodeGenerator();
+
+            try (var channel = openChannel(options, fileName)) {
+                final Parser parser = newParser(options, openLexer(options, file, channel), codeGenerator, grammar);
+                parser.analyze();
+                if (!parser.getDiagnostics().isEmpty()) {
+                    return 5;
+                }
+            }
+            program = optimize(Interpreter.compile(codeGenerator.getParseTree(), options.numbers), options);
+            if (options.backend == CompilerOptions.Backend.BYTECODE) {
+                try {
+                    compiled = BytecodeCompiler.compile(program);
+                } catch (IllegalArgumentException ex) {
+                    Logger.getGlobal().log(Level.WARNING, format("{0}; interpreting it instead", ex.getMessage()));
+                } catch (StackOverflowError ex) {
+                    Logger.getGlobal().log(Level.WARNING, "The program is nested too deeply to compile to bytecode; interpreting it instead");
+                }
+            }
+        } catch (IOException | UncheckedIOException ex) {
+            final String msg = format("Could not read the file!!! {0}", ex.getMessage());
+            Logger.getGlobal().log(Level.SEVERE, msg);
+            return 3;
+        } catch (IllegalArgumentException ex) {
+            final String msg = format("Could not run the program!!! {0}", ex.getMessage());
+            Logger.getGlobal().log(Level.SEVERE, msg);
+            return 4;
+        } catch (StackOverflowError ex) {
+            // (Compiling and optimizing both recurse over the program's nesting.)
+            System.err.println("Could not run the program!!! It is nested too deeply");
+            return 6;
+        }
+
+        try (var input = options.inputFile != null ? Files.newInputStream(Path.of(options.inputFile)) : System.in) {
+            final long start = System.nanoTime();
+            if (compiled != null) {
+                compiled.run(input, OutputSink.toConsole());
+            } else {
+                program.run(input, OutputSink.toConsole());
+            }
+            if (options.time) {
+                System.err.printf("Ran in %.1f ms (%s)%n", (System.nanoTime() - start) / 1e6,
+                        compiled != null ? "bytecode" : "interpreter");
+            }
+            return 0;
+        } catch (Interpreter.RuntimeError ex) {
+            System.err.printf("Runtime error: %s%n", ex.getMessage());
+            return 6;
+        } catch (StackOverflowError ex) {
+            System.err.println("Runtime error: the program is nested too deeply");
+            return 6;
+        } catch (IOException | UncheckedIOException ex) {
+            System.err.printf("Runtime error: could not read the input!!! %s%n", ex.getMessage());
+            return 6;
+        }
+    }
+
+    // Run the optimization passes asked for (see Optimizer), dumping the IR if asked.
+    private static Interpreter optimize(final Interpreter program, final CompilerOptions options) {
+        if (options.optimizations.isEmpty() && !options.dumpIr) {
+            return program;
         }
+        final Ir ir = Ir.lower(program);
+        Optimizer.optimize(ir, options.optimizations, options.dumpIr ? System.err : null);
+        return ir.toInterpreter();
     }
 
-    private static String ScanAndParse(final File inputFile) throws IOException {
-        // Create the code generator and lexical analyzer.
+    // The channel to stream the input from: stdin, or the file with "--stream" (otherwise null).
+    private static ReadableByteChannel openChannel(final CompilerOptions options, final String fileName) throws IOException {
+        if (fileName.equals("-")) {
+            return Channels.newChannel(System.in);
+        }
+        return options.streaming ? FileChannel.open(Path.of(fileName), StandardOpenOption.READ) : null;
+    }
 
-        final CodeGenerator codeGenerator = new CodeGenerator();
-        final LexicalAnalyzer lexicalAnalyzer = new LexicalAnalyzer(inputFile);
+    /**
+     * Where the output goes: "--output=<file>" ("-" for the console), or by default a ".dot" (or
+     * ".ptree") file next to the input (the console, for stdin). "--echo" copies it to the console
+     * as well.
+     */
+    private static OutputSink openOutput(final CompilerOptions options, final String fileName) throws IOException {
+        final String outputFile = outputFile(options, fileName);
+        if (outputFile.equals("-")) {
+            return OutputSink.toConsole();
+        }
+        final OutputSink output = OutputSink.toFile(Path.of(outputFile));
+        return options.echo ? OutputSink.tee(output, OutputSink.toConsole()) : output;
+    }
 
+    // The output file's name ("-" for the console).
+    private static String outputFile(final CompilerOptions options, final String fileName) {
+        if (options.outputFile != null) {
+            return options.outputFile;
+        }
+        return fileName.equals("-") ? "-" : outputFileName(fileName, options.format);
+    }
+
+    /**
+     * @return true if an output file ("-" for the console) is the input file (by another name, too).
+     */
+    static boolean isSameFile(final Path input, final String outputFile) {
+        if (outputFile.equals("-")) {
+            return false;
+        }
+        try {
+            final Path output = Path.of(outputFile);
+            return Files.exists(output) && Files.isSameFile(input, output);
+        } catch (IOException ex) {
+            return false; // (opening it will report the problem)
+        }
+    }
+
+    // The input's file name, with the output format's extension in place of its own.
+    static String outputFileName(final String fileName, final CompilerOptions.Format format) {
+        final int dot = fileName.lastIndexOf('.');
+        final int separator = fileName.lastIndexOf(File.separatorChar);
+        return (dot > separator + 1 ? fileName.substring(0, dot) : fileName) + format.extension;
+    }
+
+    // The lexer for the input: streamed (from stdin this is always done as a stream), lexed in parallel, or mapped.
+    private static LexicalAnalyzer openLexer(final CompilerOptions options, final File file, final ReadableByteChannel channel) throws IOException {
+        if (channel != null) {
+            return new StreamingLexicalAnalyzer(channel);
+        }
+        return options.parallel
+                ? new LexicalAnalyzer(ParallelLexer.tokenize(LexicalAnalyzer.mapFile(file)))
+                : new LexicalAnalyzer(file);
+    }
+
+    // The parser for the chosen engine.
+    private static Parser newParser(final CompilerOptions options, final LexicalAnalyzer lexicalAnalyzer,
+                                    final CodeGenerator codeGenerator, final LL1Grammar grammar) {
+        final Parser parser = ParseSession.newParser(options.engine, lexicalAnalyzer, codeGenerator, grammar);
+        parser.setErrorRecovery(options.recover);
+        return parser;
+    }
+
+    private static void ScanAndParse(final Parser parser, final CodeGenerator codeGenerator) {
         // Compile the program from the input supplied by the lexical analyzer.
-        final Parser parser = new Parser(lexicalAnalyzer, codeGenerator);
         parser.analyze();
 
-        return codeGenerator.getGeneratedCodeBuffer();
+        // Generate the output from the parse tree.
+        codeGenerator.generateCode();
     }
 }
 
 // *********************************************************************************************************
 
 /**
- * This is a *FAKE* (Overly simplified) Lexical Analyzer...
- * <p>
- * NOTE: This DOES NOT "lex" the input in the traditional manner on a DFA based "state machine".
+ * The Lexical Analyzer.
  * <p>
- * Instead of using "state transitions", this is merely a quick hack to create a something that
- * BEHAVES like a traditional lexer in its FUNCTIONALITY, but it ONLY knows how to separate
- * (tokenize) lexemes delimited by SPACES. A Real Lexer would tokenize based upon far more
- * sophisticated lexical rules.
+ * The actual "lexing" is done by a DFA based {@link TokenScanner} that walks the raw bytes of the
+ * input (a memory-mapped file, or the bytes of a string) in a single pass, skipping whitespace and
+ * '#' comment lines as it goes.
  * <p>
- * AGAIN: ALL TOKENS MUST BE [space|tab|CR|LF] DELIMITED.
+ * Tokens no longer need to be [space|tab|CR|LF] delimited: "sum:=sum+1" lexes the same as
+ * "sum := sum + 1".
  */
 class LexicalAnalyzer {
 
     // TOKENIZED input.
-    private Queue<TokenString> tokenList;
+    private TokenBuffer tokens;
+
+    // Index of the current token.
+    private int current;
+
+    // Where the last line/column lookup was (this lexer's own: see TokenBuffer.Position).
+    private final TokenBuffer.Position position = new TokenBuffer.Position();
+
+    /**
+     * Constructor for lexers (such as {@link StreamingLexicalAnalyzer}) that supply their tokens
+     * some other way.
+     */
+    LexicalAnalyzer() {
+    }
+
+    /**
+     * Construct a lexer over tokens that have already been scanned (e.g. by the
+     * {@link ParallelLexer}).
+     *
+     * @param tokens The tokens.
+     */
+    LexicalAnalyzer(final TokenBuffer tokens) {
+        this.tokens = tokens;
+        this.current = 0;
+    }
 
     /**
      * Construct a lexer over an input string.
@@ -112,47 +399,86 @@ class LexicalAnalyzer {
      * @param inputString The input file as a string.
      */
     LexicalAnalyzer(final String inputString) {
-        this.tokenize(inputString);
+        this.tokenize(ByteBuffer.wrap(inputString.getBytes(StandardCharsets.UTF_8)));
     }
 
     /**
-     * Construct a Lexer over the contents of a file. Filters out lines starting with a '#' Symbol.
-     * Removes EOL markers; otherwise, our grammar would have to deal with them.
+     * Construct a Lexer over the contents of a file. The file is memory-mapped, so it is never
+     * copied onto the heap; lines starting with a '#' Symbol are skipped by the scanner.
      *
      * @param inputFile The file to read from.
      */
     LexicalAnalyzer(final File inputFile) throws IOException {
-        Path filePath = inputFile.toPath();
-
-        try (var lines = lines(filePath)) {
-            this.tokenize(lines
-                    .map(String::trim) // trim leading/trailing whitespace
-                    .filter(x -> !x.startsWith("#")) // filter out comments
-                    .map(String::trim) // trim again, since there may be whitespace after the comment.
-                    .collect(Collectors.joining(" "))); // join into a single string
+        this.tokenize(mapFile(inputFile));
+    }
+
+    /**
+     * Memory-map a file (read only).
+     *
+     * @param inputFile The file to map.
+     * @return the contents of the file.
+     * @throws IOException if the file cannot be read or is too large to be mapped in one piece.
+     */
+    static MappedByteBuffer mapFile(final File inputFile) throws IOException {
+        try (var channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(format("File is too large to be mapped (over 2 GB): {0} bytes", size));
+            }
+
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * Convert the input to a series of tokens.
+     */
+    private void tokenize(final ByteBuffer input) {
+        this.tokens = new TokenBuffer(input);
+        this.tokens.scan(0, input.limit());
+        this.current = 0;
+        this.position.reset();
+    }
+
+    /**
+     * Start over on a new input, re-using the token buffer (so a lexer can be used for any number
+     * of inputs without allocating a new one each time).
+     *
+     * @param input The new input.
+     */
+    void reset(final ByteBuffer input) {
+        if (this.tokens == null) {
+            this.tokenize(input);
+            return;
         }
+        this.tokens.reset(input);
+        this.tokens.scan(0, input.limit());
+        this.current = 0;
+        this.position.reset();
     }
 
     /**
-     * Convert the line to a series of tokens.
+     * Start over on tokens that have already been scanned (e.g. by the {@link ParallelLexer}).
+     *
+     * @param tokens The tokens.
      */
-    private void tokenize(final String line) {
-        // Using Java 8's "Function Streams"
-        this.tokenList = Arrays.stream(line.trim().split("\\s+")) // split string on spaces
-                .map(TokenString::new) // map to a new compiler.Token
-                .collect(Collectors.toCollection(LinkedList::new)); // collect into a new list
+    void reset(final TokenBuffer tokens) {
+        this.tokens = tokens;
+        this.current = 0;
+        this.position.reset();
     }
 
     /**
      * Method to return the current lexeme.
-     * If the tokenList is empty or the current token is $$, the function will return "EOF".
+     * If there are no tokens left or the current token is $$, the function will return "EOF".
      *
      * @return the Lexeme as an Optional string since an empty list has no tokens.
      */
 
     //this was my error I didn't have this set to Token.EOF when I was using EOF for end of file, my fault
     public String getCurrentLexeme() {
-        return (this.tokenList.isEmpty() || this.currentToken() == Token.$$) ? "EOF" : this.tokenList.peek().lexeme;
+        return (this.current >= this.tokens.size() || this.currentToken() == Token.$$) ? "EOF" : this.tokens.lexeme(this.current);
     }
 
     /**
@@ -161,46 +487,94 @@ class LexicalAnalyzer {
      * @return the current token.
      */
     public Token currentToken() {
-        return this.tokenList.isEmpty() ? Token.$$ : this.tokenList.peek().token;
+        return this.current >= this.tokens.size() ? Token.$$ : this.tokens.token(this.current);
     }
 
     /**
-     * Advance to next token, making it current.
+     * @return the (1 based) line number of the current token.
      */
-    public void advanceToken() {
-        if (!this.tokenList.isEmpty()) {
-            this.tokenList.remove();
-        }
+    public int currentLine() {
+        return this.tokens.line(this.position, this.currentOffset());
     }
 
     /**
-     * To string for debugging.
-     * <p>
-     * (Converts the current token list to a string for debugging.)
+     * @return the (1 based) column of the current token.
      */
-    @Override
-    public String toString() {
-        return this.tokenList.toString();
+    public int currentColumn() {
+        return this.tokens.column(this.position, this.currentOffset());
+    }
+
+    // Where the current token starts (the end of the input, if there are no more tokens).
+    private int currentOffset() {
+        return this.current < this.tokens.size() ? this.tokens.offset(this.current) : this.tokens.source().limit();
     }
 
     /**
-     * Nested class: a "Pair Tuple/Struct" for the token type and original string.
+     * Get the index of the current token (counting from 0 at the start of the input).
+     *
+     * @return the index of the current token.
      */
-    private static class TokenString {
+    public int currentTokenIndex() {
+        return this.current;
+    }
 
-        private final String lexeme;
-        private final Token token;
+    /**
+     * Intern the current lexeme straight from the input (no String is created for a lexeme that
+     * has been seen before).
+     *
+     * @param symbols The table to intern it in.
+     * @return the lexeme's symbol id.
+     */
+    int internCurrentLexeme(final SymbolTable symbols) {
+        return symbols.intern(this.tokens.source(), this.tokens.offset(this.current), this.tokens.length(this.current));
+    }
 
-        TokenString(final String lexeme) {
-            this.lexeme = lexeme;
-            this.token = Token.fromLexeme(lexeme);
-        }
+    /**
+     * Look ahead at an upcoming token without consuming anything.
+     *
+     * @param distance How far ahead to look (0 is the current token).
+     * @return the token, or $$ past the end of the input.
+     */
+    public Token peekToken(final int distance) {
+        final int index = this.current + distance;
+        return index >= this.tokens.size() ? Token.$$ : this.tokens.token(index);
+    }
+
+    /**
+     * @return all the tokens (null for a lexer, such as the {@link StreamingLexicalAnalyzer}, that
+     * never holds them all at once).
+     */
+    TokenBuffer tokens() {
+        return this.tokens;
+    }
+
+    /**
+     * Make a token the current one (to parse part of the input again).
+     *
+     * @param index The index of the token.
+     */
+    void seekToken(final int index) {
+        this.current = Math.min(index, this.tokens.size());
+    }
 
-        @Override
-        public String toString() {
-            return String.format("{lexeme=%s, token=%s}", lexeme, token);
+    /**
+     * Advance to next token, making it current.
+     */
+    public void advanceToken() {
+        if (this.current < this.tokens.size()) {
+            this.current++;
         }
     }
+
+    /**
+     * To string for debugging.
+     * <p>
+     * (Converts the current token list to a string for debugging.)
+     */
+    @Override
+    public String toString() {
+        return this.tokens.toString();
+    }
 }
 
 // *********************************************************************************************************
@@ -210,251 +584,252 @@ class LexicalAnalyzer {
  * This is a ***SIMULATION*** of a "code generator" that simply generates GraphViz output.
  * Technically, this would represent the "Intermediate Code Generation" step.
  * <p>
- * Also, Instead of building an entire tree in memory followed by a traversal the tree at the end,
- * here we are just adding "code" as we go.
- * <p>
- * (This simulates a single-pass compiler; keep in mind that most modern compilers work in several
- * passes... eg. Scan for all top level identifiers, build subtrees for each class/method/etc.,
- * generate an internal intermediate code representation, and so on).
+ * As the parser calls in, the nodes are added to an in-memory {@link ParseTree} (a compact,
+ * array based "arena"). Generating the output is a separate traversal of the finished tree (see
+ * {@link DotWriter}), so the speed of parsing doesn't depend on output formatting, and the same
+ * parse can be written out more than once.
  * <p>
- * DESIGN NOTE: From an OOP design perspective, creating instances of "utility classes" (classes
- * with no internal state) is generally bad. However, in a more elaborate example, the code
- * generator would most certainly maintain some internal state information. (Memory address offsets,
- * etc.)
+ * (Keep in mind that most modern compilers work in several passes... eg. Scan for all top level
+ * identifiers, build subtrees for each class/method/etc., generate an internal intermediate code
+ * representation, and so on).
  */
 class CodeGenerator {
 
-    // Buffer for generated code
-    private final StringBuffer generatedCodeBuffer;
+    // The parse tree being built.
+    private final ParseTree parseTree;
+
+    // Where the generated code goes (by default, memory: nothing is echoed to the console).
+    private OutputSink output = OutputSink.inMemory();
+
+    // The length of the generated code (in bytes).
+    private long generatedCodeLength;
+
+    // Generate the output from the compact (AST-like) tree? See TreeCompactor.
+    private boolean compact;
+
+    // Share identical subtrees (output a DAG)? See SubtreeSharing. The last output's sharing is kept.
+    private boolean dag;
+    private SubtreeSharing sharing;
+
+    // The output format.
+    private CompilerOptions.Format format = CompilerOptions.Format.DOT;
 
     // Constructor
     CodeGenerator() {
-        this.generatedCodeBuffer = new StringBuffer();
+        this(new ParseTree());
     }
 
-    // Write generated code to both the screen AND the buffer.
-    void outputGeneratedCode(final String msg) {
-        System.out.print(msg);
-        this.generatedCodeBuffer.append(msg);
+    // Constructor for generators that build no tree (parseTree may be null).
+    CodeGenerator(final ParseTree parseTree) {
+        this.parseTree = parseTree;
     }
 
-    // Show the terminals as ovals...
-    public void addTerminalToTree(final TreeNode fromNode, final String lexeme) {
-        final var node = new TreeNode(lexeme);
-        final var msg = String.format("\t\"%s\" -> {\"%s\" [label=\"%s\", shape=oval]};%n", fromNode, node, lexeme);
-
-        this.outputGeneratedCode(msg);
+    /**
+     * Generate the output: a pass over the parse tree, written (and flushed) to the output sink.
+     */
+    void generateCode() {
+        if (output instanceof OutputSink.MemorySink memory) {
+            memory.clear();
+        }
+        final ParseTree tree = this.outputTree();
+        this.sharing = dag && format == CompilerOptions.Format.DOT ? SubtreeSharing.of(tree) : null;
+        this.generatedCodeLength = switch (format) {
+            case DOT -> DotWriter.write(tree, sharing, output);
+            case BINARY -> BinaryTreeWriter.write(tree, output);
+            case SVG -> SvgWriter.write(tree, output);
+        };
+        output.flush();
     }
 
     /**
-     * Add an "inner node" to the parse tree.
-     * <p>
-     * The following code employs a bit of a trick to automatically build the calling method name.
-     * The "getStackTrace()" method returns information about the entire active stack. Element[0] is
-     * the actual "getStackTrace()" method (it doesn't eliminate itself from the array), element[1]
-     * is THIS method (since we called "getStackTrace()") and element[2] is the method that called
-     * us, etc.
+     * Take the output settings from the command line: the format, "--compact" and "--dag".
      *
-     * @param parentNode the parent of the node being added to the tree
-     * @return the newly added node as ParseNode object.
+     * @param options The command line options.
      */
-    public TreeNode addNonTerminalToTree(final TreeNode parentNode) {
-        // This uses a Java "Trick" to return the name of the function that called this method.
-        final var fromMethodName = Thread
-                .currentThread()
-                .getStackTrace()[2]
-                .getMethodName()
-                .toUpperCase();
-
-        // Build a node name
-        final var toNode = this.buildNode("<" + fromMethodName + ">");
+    void configure(final CompilerOptions options) {
+        this.format = options.format;
+        this.compact = options.compact;
+        this.dag = options.dag;
+    }
 
-        this.addNonTerminalToTree(parentNode, toNode);
+    // The tree the output is generated from.
+    ParseTree outputTree() {
+        return compact ? TreeCompactor.compact(this.parseTree) : this.parseTree;
+    }
 
-        return toNode;
+    /**
+     * Generate the output from the compact tree: no epsilon nodes, no single child chains, and one
+     * node per token.
+     *
+     * @param compact true for the compact tree, false for the full parse tree.
+     */
+    void setCompact(final boolean compact) {
+        this.compact = compact;
     }
 
     /**
-     * Show the non-terminals as boxes...
+     * Output a DAG, with each distinct subtree written once (and an edge to it from every use).
      *
-     * @param fromNode the parent node
-     * @param toNode   the child node
-     * @return the child node
+     * @param dag true for a DAG, false for a tree.
      */
-    public TreeNode addNonTerminalToTree(final TreeNode fromNode, final TreeNode toNode) {
-        final var msg = String.format("\t\"%s\" -> {\"%s\" [label=\"%s\", shape=rect]};%n", fromNode, toNode, toNode.getNodeName());
+    void setDag(final boolean dag) {
+        this.dag = dag;
+    }
 
-        this.outputGeneratedCode(msg);
-        return toNode;
+    /**
+     * @return the identical subtrees found for the last output (null if it was not a DAG).
+     */
+    SubtreeSharing getSharing() {
+        return sharing;
     }
 
     /**
-     * Add the "from node" to the tree and return a new "next node" object.
+     * Send the generated code somewhere else (the caller closes the sink).
      *
-     * @param fromNode The node to add to the tree.
-     * @return the newly added node as ParseNode object.
+     * @param output The sink: a file, the console, etc.
      */
-    public TreeNode addNonTerminalToTree(final TreeNode fromNode, final String toNodeString) {
-        final var toNode = this.buildNode(toNodeString);
-        return this.addNonTerminalToTree(fromNode, toNode);
+    void setOutput(final OutputSink output) {
+        this.output = output;
     }
 
-    // Show the terminals as ovals...
-    public void addEmptyToTree(final TreeNode fromNode) {
-        final var node = new TreeNode("EMPTY");
-        final var msg = String.format("\t\"%s\" -> {\"%s\" [label=\"%s\", shape=none]};%n", fromNode, node, "&epsilon;");
+    /**
+     * Show the terminals: a box for the token, and an oval (below it) for its lexeme.
+     *
+     * @param parentNode the parent of the terminal
+     * @param token      the token matched
+     * @param lexer      the lexer (its current token is the one matched)
+     */
+    public void addTerminalToTree(final int parentNode, final Token token, final LexicalAnalyzer lexer) {
+        final int tokenIndex = lexer.currentTokenIndex();
+        final int terminalNode = parseTree.addNode(parentNode, ParseTree.TERMINAL, SymbolTable.of(token), tokenIndex);
+        final int lexeme = lexer.internCurrentLexeme(parseTree.symbols());
 
-        this.outputGeneratedCode(msg);
+        parseTree.addNode(terminalNode, ParseTree.LEXEME, lexeme, tokenIndex);
     }
 
-    // Call this if a syntax error occurs...
-    public void syntaxError(final String err, TreeNode fromNode) throws ParseException {
-        final var msg = String.format("\t\"%s\" -> {\"%s\"};%n}%n", fromNode, err);
+    /**
+     * Show the non-terminals as boxes...
+     *
+     * @param parentNode  the parent node
+     * @param nonTerminal the rule being added
+     * @return the newly added node
+     */
+    public int addNonTerminalToTree(final int parentNode, final NonTerminal nonTerminal) {
+        return parseTree.addNode(parentNode, ParseTree.NONTERMINAL, SymbolTable.of(nonTerminal), ParseTree.NONE);
+    }
 
-        this.outputGeneratedCode(msg);
-        throw new ParseException(err);
+    // Show the result of an epsilon production...
+    public void addEmptyToTree(final int parentNode) {
+        parseTree.addNode(parentNode, ParseTree.EMPTY, 0, ParseTree.NONE);
     }
 
-    // Build a node name, so it can be later "deconstructed" for the output.
-    private TreeNode buildNode(final String name) {
-        return new TreeNode(name);
+    // Call this if a syntax error occurs (at the lexer's current token)...
+    public void syntaxError(final String err, final int fromNode, final LexicalAnalyzer lexer) throws ParseException {
+        parseTree.addNode(fromNode, ParseTree.ERROR, parseTree.symbols().intern(err), ParseTree.NONE);
+        throw new ParseException(err, lexer.currentLine(), lexer.currentColumn());
     }
 
     // "Real" executable code generally has a header.  See:
     // https://en.wikipedia.org/wiki/Executable_and_Linkable_Format
     // (There are some good diagrams at the link)
-    public void writeHeader(TreeNode node) {
-        // The header for the "compiled" output
-        var msg = String.format("""
-                digraph ParseTree {
-                \t"%s" [label="%s", shape=diamond];
-                """, node, node.getNodeName());
-
-        this.outputGeneratedCode(msg);
+    public int writeHeader(final NonTerminal rootNode) {
+        // The root of the tree (the header for the "compiled" output).
+        parseTree.clear();
+        return parseTree.addNode(ParseTree.NONE, ParseTree.NONTERMINAL, SymbolTable.of(rootNode), ParseTree.NONE);
     }
 
-    public TreeNode writeHeader(final String nodeString) {
-        // The header for the "compiled" output
-        final var headerNode = this.buildNode(nodeString);
-
-        this.writeHeader(headerNode);
-        return headerNode;
-    }
-
-    // Our output requires a footer as well.
+    // Our output requires a footer as well (written by the output pass).
     public void writeFooter() {
-        final var msg = "}\n";
-
-        this.outputGeneratedCode(msg);
-    }
-
-    public String getGeneratedCodeBuffer() {
-        return generatedCodeBuffer.toString();
-    }
-}
-
-// *********************************************************************************************************
-
-/**
- * A "3-Tuple" for the node name and id number.
- */
-class TreeNode {
-
-    private static Integer currentNodeID = 0;
-    private final String nodeName;
-    private final Integer nodeId;
-
-    TreeNode(final String nodeName) {
-        this.nodeName = nodeName;
-        this.nodeId = currentNodeID++;
     }
 
-    public String getNodeName() {
-        return nodeName;
+    public ParseTree getParseTree() {
+        return parseTree;
     }
 
-    public Integer getNodeId() {
-        return nodeId;
+    public long getGeneratedCodeLength() {
+        return generatedCodeLength;
     }
 
-    @Override
-    public String toString() {
-        return String.format("%s-%s", this.getNodeName(), this.getNodeId());
+    /**
+     * Get the generated code as a string: the output itself if it went to memory, otherwise another
+     * pass over the tree (nothing else is buffered while the output is being written).
+     *
+     * @return the generated code.
+     */
+    public String getGeneratedCodeBuffer() {
+        if (output instanceof OutputSink.MemorySink memory && memory.size() == generatedCodeLength
+                && format == CompilerOptions.Format.DOT) {
+            return memory.toString();
+        }
+        if (dag) {
+            final ParseTree tree = this.outputTree();
+            final var output = OutputSink.inMemory();
+            DotWriter.write(tree, SubtreeSharing.of(tree), output);
+            return output.toString();
+        }
+        return DotWriter.write(this.outputTree());
     }
 }
 
 // *********************************************************************************************************
 
 /**
- * Code to invoke the online graph viewer.
+ * Code to show a picture of the parse tree: it is drawn locally (see {@link TreeLayout} and
+ * {@link SvgWriter}) and opened in the default browser, so there is no size limit, and no network.
  */
 class GraphViewer {
 
     /**
-     * To open a browser window...
+     * Draw the tree (unless that has been done already) and offer to open the picture.
      * <p>
      * FEEL FREE TO IGNORE THIS!!! It's just for opening the default browser, if desired.
+     *
+     * @param codeGenerator The code generator (with the tree).
+     * @param picture       The SVG file (null for a temporary file).
+     * @param drawn         Is the picture there already?
      */
-    static void openWebGraphViz(final String graph) {
-        /* Online/Web versions of Graphviz
-         http://www.webgraphviz.com
-         http://viz-js.com
-         https://dreampuf.github.io/GraphvizOnline
-         */
-        final var WEBGRAPHVIZ_HOME = "https://dreampuf.github.io/GraphvizOnline/";
+    static void openPicture(final CodeGenerator codeGenerator, final Path picture, final boolean drawn) {
+        final var MSG = "To see the parse tree, compile with --format=svg and open the .svg file in any browser.";
 
-        final var MSG =
-                ("To visualize the output you may Copy/Paste the parser output into:%n" +
-                 "%s%n" +
-                 "(or any other online graphviz tool)").formatted(WEBGRAPHVIZ_HOME);
-
-        // For some reason, the URL encoder always uses "+" instead of "%20" for spaces...which are not always accepted.
-        String encodedURL = URLEncoder.encode(graph, StandardCharsets.UTF_8).replace("+", "%20");
+        // Can we open a browser?
+        if (GraphicsEnvironment.isHeadless() || !Desktop.isDesktopSupported()
+                || !Desktop.getDesktop().isSupported(Desktop.Action.BROWSE)) {
+            System.err.println(MSG);
+            return;
+        }
 
-        // URI Length limit reached.
-        if (WEBGRAPHVIZ_HOME.length() + encodedURL.length() >= 32_000) {
-            System.err.println("Can't use remote graphviz; the output is too long for a \"GET\" Request");
-            System.err.println("But you can still manually Copy/Paste instead.");
+        // Try to set the default skin
+        try {
+            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException |
+                 UnsupportedLookAndFeelException e) {
+            // Ignore the error, but notify.
+            System.out.println("Using Default Skin");
+        }
 
+        final var response =
+                JOptionPane.showConfirmDialog(
+                        null,
+                        "Open a picture of the parse tree in the browser?",
+                        "Show Parse Tree",
+                        JOptionPane.YES_NO_OPTION);
+        if (response != JOptionPane.YES_OPTION) {
+            System.out.println(MSG);
             return;
         }
 
-        // Can we open a browser?
-        if (Desktop.isDesktopSupported()) {
-            // Try to set the default skin
-            try {
-                UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-            } catch (ClassNotFoundException | InstantiationException | IllegalAccessException |
-                     UnsupportedLookAndFeelException e) {
-                // Ignore the error, but notify.
-                System.out.println("Using Default Skin");
-            }
-
-            // Open the default browser with the url:
-            try {
-                final URL webGraphvizURI = new URL(WEBGRAPHVIZ_HOME + "#" + encodedURL);
-                final Desktop desktop = Desktop.getDesktop();
-
-                // Can we launch a browser?
-                if (desktop.isSupported(Desktop.Action.BROWSE)) {
-                    final var response =
-                            JOptionPane.showConfirmDialog(
-                                    null,
-                                    String.format("%s%n%nOpen %s?", MSG, WEBGRAPHVIZ_HOME),
-                                    "Open Web Graphviz Page",
-                                    JOptionPane.YES_NO_OPTION);
-
-                    // Open Browser?
-                    if (response == JOptionPane.YES_OPTION) {
-                        desktop.browse(webGraphvizURI.toURI());
-                    } else {
-                        System.out.println(MSG);
-                    }
+        try {
+            Path file = picture;
+            if (!drawn) {
+                file = picture != null ? picture : Files.createTempFile("parse-tree", ".svg");
+                try (var output = OutputSink.toFile(file)) {
+                    SvgWriter.write(codeGenerator.outputTree(), output);
                 }
-            } catch (IOException | URISyntaxException ex) {
-                java.util.logging.Logger.getAnonymousLogger()
-                        .log(java.util.logging.Level.WARNING, "Could not open browser (URL \"GET\" May be too long!!!)", ex);
             }
+            Desktop.getDesktop().browse(file.toUri());
+        } catch (IOException | UncheckedIOException ex) {
+            java.util.logging.Logger.getAnonymousLogger()
+                    .log(java.util.logging.Level.WARNING, "Could not open the picture in a browser", ex);
         }
     }
 }
@@ -468,7 +843,25 @@ final class ParseException extends RuntimeException implements Serializable {
 
     private final String ExceptionID = "ZU3vkDLZRB3pOms4woQh";
 
+    // Where the error is (0 if unknown).
+    private final int line;
+    private final int column;
+
     public ParseException(String errMsg) {
+        this(errMsg, 0, 0);
+    }
+
+    public ParseException(String errMsg, int line, int column) {
         super(errMsg);
+        this.line = line;
+        this.column = column;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
     }
 }
@@ -0,0 +1,166 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a parse tree written by {@link BinaryTreeWriter}, straight out of the memory-mapped file:
+ * opening it only checks the header, and each node is read (and each label decoded) only when it
+ * is asked for. Node numbers are the file's (breadth first, the root is 0).
+ * <p>
+ * A reader is immutable, so it can be shared by any number of threads.
+ */
+final class MappedTreeReader {
+
+    // Field offsets in a node record.
+    private static final int KIND = 0;
+    private static final int LABEL = 4;
+    private static final int PARENT = 8;
+    private static final int FIRST_CHILD = 12;
+    private static final int CHILD_COUNT = 16;
+    private static final int FIRST_TOKEN = 20;
+    private static final int LAST_TOKEN = 24;
+    private static final int ORIGINAL_ID = 28;
+
+    private final ByteBuffer map;
+    private final int size;
+    private final int symbolCount;
+    private final int nodes;
+    private final int symbolOffsets;
+    private final int symbolBytes;
+
+    private MappedTreeReader(final ByteBuffer map) {
+        this.map = map.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (map.capacity() < BinaryTreeWriter.HEADER_SIZE || map.getInt(0) != BinaryTreeWriter.MAGIC) {
+            throw new IllegalArgumentException("Not a parse tree file");
+        }
+        final short version = map.getShort(4);
+        if (version != BinaryTreeWriter.VERSION) {
+            throw new IllegalArgumentException("Unsupported parse tree file version: " + version);
+        }
+
+        this.size = map.getInt(8);
+        this.symbolCount = map.getInt(12);
+        this.nodes = Math.toIntExact(map.getLong(16));
+        this.symbolOffsets = Math.toIntExact(map.getLong(24));
+        this.symbolBytes = symbolOffsets + (symbolCount + 1) * Integer.BYTES;
+
+        if (size < 0 || symbolCount < 0 || nodes + (long) size * BinaryTreeWriter.NODE_SIZE > symbolOffsets
+                || symbolBytes > map.capacity() || symbolBytes + (long) map.getInt(symbolBytes - Integer.BYTES) > map.capacity()) {
+            throw new IllegalArgumentException("Truncated parse tree file");
+        }
+    }
+
+    /**
+     * Map a file.
+     *
+     * @param path The file.
+     * @return a reader for it.
+     * @throws IOException              if the file cannot be read.
+     * @throws IllegalArgumentException if it is not a parse tree file (of a version we can read).
+     */
+    static MappedTreeReader open(final Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to map: " + path);
+            }
+            return new MappedTreeReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Read a tree from memory (e.g. a {@link OutputSink.MemorySink}'s bytes).
+     *
+     * @param bytes The binary tree.
+     * @return a reader for it.
+     */
+    static MappedTreeReader of(final ByteBuffer bytes) {
+        return new MappedTreeReader(bytes.slice());
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte kind(final int node) {
+        return map.get(this.record(node) + KIND);
+    }
+
+    int label(final int node) {
+        return map.getInt(this.record(node) + LABEL);
+    }
+
+    int parent(final int node) {
+        return map.getInt(this.record(node) + PARENT);
+    }
+
+    int childCount(final int node) {
+        return map.getInt(this.record(node) + CHILD_COUNT);
+    }
+
+    /**
+     * @return a node's i-th child.
+     */
+    int child(final int node, final int i) {
+        if (i < 0 || i >= this.childCount(node)) {
+            throw new IndexOutOfBoundsException("Node " + node + " has no child " + i);
+        }
+        return map.getInt(this.record(node) + FIRST_CHILD) + i;
+    }
+
+    /**
+     * @return the index of the first token in a node's subtree (-1 if there is none).
+     */
+    int firstToken(final int node) {
+        return map.getInt(this.record(node) + FIRST_TOKEN);
+    }
+
+    /**
+     * @return the index of the last token in a node's subtree (-1 if there is none).
+     */
+    int lastToken(final int node) {
+        return map.getInt(this.record(node) + LAST_TOKEN);
+    }
+
+    /**
+     * @return the node's id in the tree that was written (its name in the DOT output).
+     */
+    int originalId(final int node) {
+        return map.getInt(this.record(node) + ORIGINAL_ID);
+    }
+
+    int symbolCount() {
+        return symbolCount;
+    }
+
+    /**
+     * @return a symbol (label or lexeme) as a string; only this symbol is decoded.
+     */
+    String symbol(final int id) {
+        if (id < 0 || id >= symbolCount) {
+            throw new IndexOutOfBoundsException("No symbol " + id);
+        }
+        final int start = map.getInt(symbolOffsets + id * Integer.BYTES);
+        final int end = map.getInt(symbolOffsets + (id + 1) * Integer.BYTES);
+        final byte[] bytes = new byte[end - start];
+        map.get(symbolBytes + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    String labelText(final int node) {
+        return this.symbol(this.label(node));
+    }
+
+    private int record(final int node) {
+        if (node < 0 || node >= size) {
+            throw new IndexOutOfBoundsException("No node " + node);
+        }
+        return nodes + node * BinaryTreeWriter.NODE_SIZE;
+    }
+}
@@ -0,0 +1,41 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+/**
+ * All the Non-Terminals (inner nodes) that can appear in the parse tree, along with the label each
+ * one is displayed with.
+ * <p>
+ * The Parser names the rule it is in with one of these, instead of a string, so the tree only needs
+ * to store a small number for every inner node.
+ */
+public enum NonTerminal {
+    // The root of the tree (not really part of the grammar).
+    PARSE_TREE("PARSE TREE"),
+
+    PROGRAM("Program"),
+    STMT_LIST("StmtList"),
+    STMT("<stmt>"),
+    DO_UNTIL_STMT("<do_until_stmt>"),
+    IF_STMT("<if_stmt>"),
+    ELSE_PART("<else_part>"),
+    WHILE_STMT("<while_stmt>"),
+    CONDITION("<condition>"),
+    EXPR("Expr"),
+    EXPO("Expo"),
+    TERM_TAIL("TermTail"),
+    TERM("Term"),
+    FACTOR_TAIL("FactorTail"),
+    FACTOR("Factor");
+
+    /**
+     * The label shown for this Non-Terminal in the output.
+     */
+    private final String label;
+
+    NonTerminal(final String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
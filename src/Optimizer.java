@@ -0,0 +1,637 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The optimization passes over an {@link Ir}. Each one can be turned on by itself, and the IR can
+ * be dumped after each one; they always run in the order of {@link Pass}.
+ * <p>
+ * No pass changes what a program writes, or where it fails: a long division that might divide by
+ * 0 is never removed or moved (and never folded, if it does), and "read" always stays where it is.
+ */
+final class Optimizer {
+
+    /**
+     * The passes, in the order they run.
+     */
+    enum Pass {
+        /** Copy propagation: uses of a copy become uses of what it copies (while that is unchanged). */
+        COPY,
+        /** Constant folding: constant variables and temporaries are propagated, constant operations computed,
+         * identities simplified (x + 0, x * 1...: longs only), and branches with constant conditions taken. */
+        FOLD,
+        /** Loop-invariant hoisting: temporaries computed from values a loop does not change move out of it. */
+        HOIST,
+        /** Dead-store elimination: assignments whose values are never used are removed (and empty ifs). */
+        DSE
+    }
+
+    private Optimizer() {
+    }
+
+    /**
+     * Optimize a program.
+     *
+     * @param ir     The program (changed in place).
+     * @param passes The passes to run.
+     * @param dump   Where to print the IR before and after each pass (null for nowhere).
+     */
+    static void optimize(final Ir ir, final Set<Pass> passes, final PrintStream dump) {
+        if (dump != null) {
+            dump.printf("== lowered ==%n%s", ir.dump());
+        }
+        for (final Pass pass : Pass.values()) {
+            if (!passes.contains(pass)) {
+                continue;
+            }
+            switch (pass) {
+                case COPY -> new Copies(ir).block(ir.program, new Copies.Facts());
+                case FOLD -> new Fold(ir).block(ir.program, new Ir.Operand[ir.variables.size()]);
+                case HOIST -> new Hoist(ir).block(ir.program);
+                case DSE -> new DeadStores(ir).run();
+            }
+            if (dump != null) {
+                dump.printf("== after %s ==%n%s", pass.name().toLowerCase(), ir.dump());
+            }
+        }
+    }
+
+    // The variables a block assigns (to anywhere in it).
+    private static void assigned(final List<Ir.Node> block, final BitSet variables) {
+        for (final Ir.Node node : block) {
+            if (node instanceof Ir.Assign assign && assign.destination.kind() == Ir.VARIABLE) {
+                variables.set(assign.destination.index());
+            } else if (node instanceof Ir.Read read) {
+                variables.set(read.variable.index());
+            } else if (node instanceof Ir.If branch) {
+                assigned(branch.then, variables);
+                assigned(branch.otherwise, variables);
+            } else if (node instanceof Ir.While loop) {
+                assigned(loop.header, variables);
+                assigned(loop.body, variables);
+            } else if (node instanceof Ir.DoUntil loop) {
+                assigned(loop.body, variables);
+            }
+        }
+    }
+
+    // The variables a loop assigns (what is known about them differs from one pass to the next).
+    private static BitSet assignedIn(final Ir.Node loop) {
+        final var variables = new BitSet();
+        assigned(List.of(loop), variables);
+        return variables;
+    }
+
+    // Forget what is known about the variables a loop assigns.
+    private static void forgetAssigned(final Ir.Node loop, final Ir.Operand[] known) {
+        final BitSet variables = assignedIn(loop);
+        for (int variable = variables.nextSetBit(0); variable >= 0; variable = variables.nextSetBit(variable + 1)) {
+            known[variable] = null;
+        }
+    }
+
+    // Keep only what is known on both paths.
+    private static void meet(final Ir.Operand[] known, final Ir.Operand[] other) {
+        for (int i = 0; i < known.length; i++) {
+            if (!Objects.equals(known[i], other[i])) {
+                known[i] = null;
+            }
+        }
+    }
+
+    // *****************************************************************************************************
+
+    /**
+     * Copy propagation. What each variable and temporary is known to be a copy of is tracked down
+     * the program; a fact about a variable is forgotten when it, or what it copies, is assigned.
+     */
+    private static final class Copies {
+        final int variables;
+
+        Copies(final Ir ir) {
+            this.variables = ir.variables.size();
+        }
+
+        /**
+         * What is known at a point of the program: what each variable or temporary (by id) is a copy
+         * of, and the other way round, the ids that are copies of each variable (so assigning one
+         * only has to look at those). Only the facts are kept, so copying them for a branch costs
+         * as much as they do, not as much as the program has variables and temporaries.
+         */
+        static final class Facts {
+            private final Map<Integer, Ir.Operand> copies;
+            private final Map<Integer, Set<Integer>> copiedBy;
+
+            Facts() {
+                this.copies = new HashMap<>();
+                this.copiedBy = new HashMap<>();
+            }
+
+            private Facts(final Facts facts) {
+                this.copies = new HashMap<>(facts.copies);
+                this.copiedBy = new HashMap<>(facts.copiedBy.size());
+                facts.copiedBy.forEach((variable, ids) -> copiedBy.put(variable, new HashSet<>(ids)));
+            }
+
+            Facts copy() {
+                return new Facts(this);
+            }
+
+            Ir.Operand get(final int id) {
+                return copies.get(id);
+            }
+
+            void put(final int id, final Ir.Operand copied) {
+                this.remove(id);
+                copies.put(id, copied);
+                if (copied.kind() == Ir.VARIABLE) {
+                    copiedBy.computeIfAbsent(copied.index(), variable -> new HashSet<>()).add(id);
+                }
+            }
+
+            void remove(final int id) {
+                final Ir.Operand copied = copies.remove(id);
+                if (copied != null && copied.kind() == Ir.VARIABLE) {
+                    final Set<Integer> ids = copiedBy.get(copied.index());
+                    ids.remove(id);
+                    if (ids.isEmpty()) {
+                        copiedBy.remove(copied.index());
+                    }
+                }
+            }
+
+            // A variable is assigned: forget what it was a copy of, and what was a copy of it.
+            void kill(final int variable) {
+                this.remove(variable);
+                final Set<Integer> ids = copiedBy.remove(variable);
+                if (ids != null) {
+                    for (final int id : ids) {
+                        copies.remove(id);
+                    }
+                }
+            }
+
+            // Keep only what is known on both paths.
+            void meet(final Facts other) {
+                final List<Integer> differ = new ArrayList<>();
+                copies.forEach((id, copied) -> {
+                    if (!copied.equals(other.copies.get(id))) {
+                        differ.add(id);
+                    }
+                });
+                differ.forEach(this::remove);
+            }
+        }
+
+        void block(final List<Ir.Node> block, final Facts known) {
+            for (final Ir.Node node : block) {
+                if (node instanceof Ir.Assign assign) {
+                    assign.left = this.rewrite(assign.left, known);
+                    assign.right = this.rewrite(assign.right, known);
+                    final int destination = this.id(assign.destination);
+                    if (assign.destination.kind() == Ir.VARIABLE) {
+                        known.kill(destination);
+                    }
+                    if (assign.operation == Ir.COPY && !assign.left.equals(assign.destination)) {
+                        known.put(destination, assign.left);
+                    }
+                } else if (node instanceof Ir.Read read) {
+                    known.kill(read.variable.index());
+                } else if (node instanceof Ir.Write write) {
+                    write.value = this.rewrite(write.value, known);
+                } else if (node instanceof Ir.If branch) {
+                    this.rewrite(branch.condition, known);
+                    final Facts otherwise = known.copy();
+                    this.block(branch.then, known);
+                    this.block(branch.otherwise, otherwise);
+                    known.meet(otherwise);
+                } else if (node instanceof Ir.While loop) {
+                    this.forgetAssigned(loop, known);
+                    this.block(loop.header, known);
+                    this.rewrite(loop.condition, known);
+                    this.block(loop.body, known.copy());
+                } else if (node instanceof Ir.DoUntil loop) {
+                    this.forgetAssigned(loop, known);
+                    this.block(loop.body, known);
+                    this.rewrite(loop.condition, known);
+                }
+            }
+        }
+
+        private void forgetAssigned(final Ir.Node loop, final Facts known) {
+            final BitSet assigned = assignedIn(loop);
+            for (int variable = assigned.nextSetBit(0); variable >= 0; variable = assigned.nextSetBit(variable + 1)) {
+                known.kill(variable);
+            }
+        }
+
+        private void rewrite(final Ir.Cond condition, final Facts known) {
+            condition.left = this.rewrite(condition.left, known);
+            condition.right = this.rewrite(condition.right, known);
+        }
+
+        private Ir.Operand rewrite(final Ir.Operand operand, final Facts known) {
+            if (operand == null || operand.isConstant()) {
+                return operand;
+            }
+            final Ir.Operand copied = known.get(this.id(operand));
+            return copied != null ? copied : operand;
+        }
+
+        private int id(final Ir.Operand operand) {
+            return operand.kind() == Ir.VARIABLE ? operand.index() : variables + operand.index();
+        }
+    }
+
+    // *****************************************************************************************************
+
+    /**
+     * Constant folding (and propagation). The constant value of each variable is tracked down the
+     * program; temporaries are assigned once, so their constant values hold everywhere.
+     */
+    private static final class Fold {
+        final Ir ir;
+        final boolean longs;
+        final Ir.Operand[] temporaries;
+
+        Fold(final Ir ir) {
+            this.ir = ir;
+            this.longs = ir.mode == Interpreter.Mode.LONG;
+            this.temporaries = new Ir.Operand[ir.temporaries()];
+        }
+
+        void block(final List<Ir.Node> block, final Ir.Operand[] known) {
+            for (int i = 0; i < block.size(); i++) {
+                final Ir.Node node = block.get(i);
+                if (node instanceof Ir.Assign assign) {
+                    assign.left = this.known(assign.left, known);
+                    assign.right = this.known(assign.right, known);
+                    final Ir.Operand value = this.evaluate(assign);
+                    if (value != null) {
+                        assign.copy(value);
+                    }
+                    final Ir.Operand constant = assign.operation == Ir.COPY && assign.left.isConstant() ? assign.left : null;
+                    if (assign.destination.kind() == Ir.TEMPORARY) {
+                        temporaries[assign.destination.index()] = constant;
+                    } else {
+                        known[assign.destination.index()] = constant;
+                    }
+                } else if (node instanceof Ir.Read read) {
+                    known[read.variable.index()] = null;
+                } else if (node instanceof Ir.Write write) {
+                    write.value = this.known(write.value, known);
+                } else if (node instanceof Ir.If branch) {
+                    final Boolean taken = this.test(branch.condition, known);
+                    if (taken != null) {
+                        // Only one branch can run: it replaces the "if" (and is folded next).
+                        block.remove(i);
+                        block.addAll(i, taken ? branch.then : branch.otherwise);
+                        i--;
+                        continue;
+                    }
+                    final Ir.Operand[] otherwise = known.clone();
+                    this.block(branch.then, known);
+                    this.block(branch.otherwise, otherwise);
+                    meet(known, otherwise);
+                } else if (node instanceof Ir.While loop) {
+                    forgetAssigned(loop, known);
+                    this.block(loop.header, known);
+                    if (Boolean.FALSE.equals(this.test(loop.condition, known))) {
+                        // The body never runs: only the header is left.
+                        block.remove(i);
+                        block.addAll(i, loop.header);
+                        i += loop.header.size() - 1;
+                        continue;
+                    }
+                    this.block(loop.body, known.clone());
+                } else if (node instanceof Ir.DoUntil loop) {
+                    forgetAssigned(loop, known);
+                    this.block(loop.body, known);
+                    if (Boolean.TRUE.equals(this.test(loop.condition, known))) {
+                        // The body runs once.
+                        block.remove(i);
+                        block.addAll(i, loop.body);
+                        i += loop.body.size() - 1;
+                    }
+                }
+            }
+        }
+
+        private Ir.Operand known(final Ir.Operand operand, final Ir.Operand[] known) {
+            if (operand == null || operand.isConstant()) {
+                return operand;
+            }
+            final Ir.Operand constant = operand.kind() == Ir.VARIABLE ? known[operand.index()] : temporaries[operand.index()];
+            return constant != null ? constant : operand;
+        }
+
+        // The value of an operation, if it is a constant or one of its operands (or null).
+        private Ir.Operand evaluate(final Ir.Assign assign) {
+            if (assign.operation == Ir.COPY) {
+                return null;
+            }
+            final Ir.Operand left = assign.left;
+            final Ir.Operand right = assign.right;
+
+            if (left.isConstant() && right.isConstant()) {
+                if (!longs) {
+                    final double l = left.doubleValue();
+                    final double r = right.doubleValue();
+                    return Ir.Operand.constant(0, switch (assign.operation) {
+                        case Ir.ADD -> l + r;
+                        case Ir.SUBTRACT -> l - r;
+                        case Ir.MULTIPLY -> l * r;
+                        default -> l / r;
+                    });
+                }
+                final long l = left.longValue();
+                final long r = right.longValue();
+                if (assign.operation == Ir.DIVIDE && r == 0) {
+                    return null; // (it fails when it runs)
+                }
+                return this.constant(switch (assign.operation) {
+                    case Ir.ADD -> l + r;
+                    case Ir.SUBTRACT -> l - r;
+                    case Ir.MULTIPLY -> l * r;
+                    default -> l / r;
+                });
+            }
+
+            if (!longs) {
+                return null; // (x + 0 is not x for x = -0.0, and x * 0 is not 0 for x = NaN)
+            }
+            return switch (assign.operation) {
+                case Ir.ADD -> this.is(left, 0) ? right : this.is(right, 0) ? left : null;
+                case Ir.SUBTRACT -> this.is(right, 0) ? left : left.equals(right) ? this.constant(0) : null;
+                case Ir.MULTIPLY -> this.is(left, 1) ? right : this.is(right, 1) ? left
+                        : this.is(left, 0) || this.is(right, 0) ? this.constant(0) : null;
+                default -> this.is(right, 1) ? left : null;
+            };
+        }
+
+        private boolean is(final Ir.Operand operand, final long value) {
+            return operand.isConstant() && operand.longValue() == value;
+        }
+
+        private Ir.Operand constant(final long value) {
+            return Ir.Operand.constant(value, value);
+        }
+
+        // Fold a condition's operands, and test it if they are constants (or null).
+        private Boolean test(final Ir.Cond condition, final Ir.Operand[] known) {
+            condition.left = this.known(condition.left, known);
+            condition.right = this.known(condition.right, known);
+            if (!condition.left.isConstant() || !condition.right.isConstant()) {
+                return null;
+            }
+            if (longs) {
+                return Interpreter.Compare.test(condition.comparison,
+                        Long.compare(condition.left.longValue(), condition.right.longValue()));
+            }
+            final double l = condition.left.doubleValue();
+            final double r = condition.right.doubleValue();
+            return l == l && r == r
+                    ? Interpreter.Compare.test(condition.comparison, l < r ? -1 : l > r ? 1 : 0)
+                    : condition.comparison == Interpreter.Compare.NE;
+        }
+    }
+
+    // *****************************************************************************************************
+
+    /**
+     * Loop-invariant hoisting. Inner loops first, so an invariant moves out as far as it can go.
+     * Only temporaries move (they are assigned once), and only if they cannot fail, since the loop
+     * body might not have computed them.
+     */
+    private static final class Hoist {
+        final Ir ir;
+
+        Hoist(final Ir ir) {
+            this.ir = ir;
+        }
+
+        void block(final List<Ir.Node> block) {
+            for (int i = 0; i < block.size(); i++) {
+                final Ir.Node node = block.get(i);
+                if (node instanceof Ir.If branch) {
+                    this.block(branch.then);
+                    this.block(branch.otherwise);
+                } else if (node instanceof Ir.While loop) {
+                    this.block(loop.header);
+                    this.block(loop.body);
+                    i += this.hoist(block, i, List.of(loop.header, loop.body));
+                } else if (node instanceof Ir.DoUntil loop) {
+                    this.block(loop.body);
+                    i += this.hoist(block, i, List.of(loop.body));
+                }
+            }
+        }
+
+        // Move the invariants of the loop at block[i] to just before it; return how many moved.
+        private int hoist(final List<Ir.Node> block, final int i, final List<List<Ir.Node>> loop) {
+            final var assigned = new BitSet();
+            final var defined = new BitSet();
+            assigned(List.of(block.get(i)), assigned);
+            for (final List<Ir.Node> part : loop) {
+                this.defined(part, defined);
+            }
+
+            final List<Ir.Node> invariants = new ArrayList<>();
+            for (final List<Ir.Node> part : loop) {
+                this.take(part, assigned, defined, invariants);
+            }
+            block.addAll(i, invariants);
+            return invariants.size();
+        }
+
+        // The temporaries a block defines.
+        private void defined(final List<Ir.Node> block, final BitSet temporaries) {
+            for (final Ir.Node node : block) {
+                if (node instanceof Ir.Assign assign && assign.destination.kind() == Ir.TEMPORARY) {
+                    temporaries.set(assign.destination.index());
+                } else if (node instanceof Ir.If branch) {
+                    this.defined(branch.then, temporaries);
+                    this.defined(branch.otherwise, temporaries);
+                } else if (node instanceof Ir.While loop) {
+                    this.defined(loop.header, temporaries);
+                    this.defined(loop.body, temporaries);
+                } else if (node instanceof Ir.DoUntil loop) {
+                    this.defined(loop.body, temporaries);
+                }
+            }
+        }
+
+        // Take the invariants out of a block (in order, so one can depend on another).
+        private void take(final List<Ir.Node> block, final BitSet assigned, final BitSet defined, final List<Ir.Node> invariants) {
+            for (int i = 0; i < block.size(); i++) {
+                final Ir.Node node = block.get(i);
+                if (node instanceof Ir.Assign assign) {
+                    if (assign.destination.kind() == Ir.TEMPORARY && !ir.canFail(assign)
+                            && this.invariant(assign.left, assigned, defined) && this.invariant(assign.right, assigned, defined)) {
+                        block.remove(i--);
+                        invariants.add(assign);
+                        defined.clear(assign.destination.index());
+                    }
+                } else if (node instanceof Ir.If branch) {
+                    this.take(branch.then, assigned, defined, invariants);
+                    this.take(branch.otherwise, assigned, defined, invariants);
+                } else if (node instanceof Ir.While loop) {
+                    this.take(loop.header, assigned, defined, invariants);
+                    this.take(loop.body, assigned, defined, invariants);
+                } else if (node instanceof Ir.DoUntil loop) {
+                    this.take(loop.body, assigned, defined, invariants);
+                }
+            }
+        }
+
+        // A constant, a variable the loop does not assign, or a temporary it no longer computes.
+        private boolean invariant(final Ir.Operand operand, final BitSet assigned, final BitSet defined) {
+            if (operand == null || operand.isConstant()) {
+                return true;
+            }
+            return operand.kind() == Ir.VARIABLE ? !assigned.get(operand.index()) : !defined.get(operand.index());
+        }
+    }
+
+    // *****************************************************************************************************
+
+    /**
+     * Dead-store elimination, by liveness (backwards, to a fixed point around loops). Nothing is
+     * live at the end of the program; a temporary is just a variable that is assigned once.
+     * <p>
+     * Liveness is found by passes over the whole program: each loop starts from what the last pass
+     * found live at its top (nothing, at first), and the passes stop once no loop's has changed.
+     * That takes about one pass per level of nesting (solving each loop to its own fixed point,
+     * inside each pass of the loops around it, would take exponentially many). Then one more pass
+     * removes the dead stores; as that can leave others dead, it all starts again until it does not.
+     */
+    private static final class DeadStores {
+        final Ir ir;
+        final int variables;
+
+        // What is live at the top of each loop, as far as the passes so far have found.
+        final Map<Ir.Node, BitSet> heads = new IdentityHashMap<>();
+        boolean changed;
+        boolean removed;
+
+        DeadStores(final Ir ir) {
+            this.ir = ir;
+            this.variables = ir.variables.size();
+        }
+
+        void run() {
+            do {
+                heads.clear();
+                do {
+                    changed = false;
+                    this.block(ir.program, new BitSet(), false);
+                } while (changed);
+
+                removed = false;
+                this.block(ir.program, new BitSet(), true);
+            } while (removed);
+        }
+
+        // The ids live at the start of a block, given those live at its end (removing dead stores if asked).
+        private BitSet block(final List<Ir.Node> block, final BitSet out, final boolean remove) {
+            BitSet live = (BitSet) out.clone();
+            for (int i = block.size() - 1; i >= 0; i--) {
+                final Ir.Node node = block.get(i);
+                if (node instanceof Ir.Assign assign) {
+                    final int destination = this.id(assign.destination);
+                    final boolean selfCopy = assign.operation == Ir.COPY && assign.left.equals(assign.destination);
+                    if (selfCopy || !live.get(destination) && !ir.canFail(assign)) {
+                        this.remove(block, i, remove);
+                        continue;
+                    }
+                    live.clear(destination);
+                    this.use(assign.left, live);
+                    this.use(assign.right, live);
+                } else if (node instanceof Ir.Read read) {
+                    live.clear(read.variable.index());
+                } else if (node instanceof Ir.Write write) {
+                    this.use(write.value, live);
+                } else if (node instanceof Ir.If branch) {
+                    final BitSet then = this.block(branch.then, live, remove);
+                    live = this.block(branch.otherwise, live, remove);
+                    live.or(then);
+                    this.use(branch.condition, live);
+                    if (branch.then.isEmpty() && branch.otherwise.isEmpty()) {
+                        this.remove(block, i, remove);
+                    }
+                } else if (node instanceof Ir.While loop) {
+                    live = this.update(loop, this.loop(loop, live, this.head(loop), remove));
+                } else if (node instanceof Ir.DoUntil loop) {
+                    live = this.update(loop, this.loop(loop, live, this.head(loop), remove));
+                }
+            }
+            if (remove) {
+                block.removeIf(Objects::isNull);
+            }
+            return live;
+        }
+
+        // What the last pass found live at the top of a loop.
+        private BitSet head(final Ir.Node loop) {
+            final BitSet head = heads.get(loop);
+            return head != null ? head : new BitSet();
+        }
+
+        // Record what this pass found live at the top of a loop (if it has changed, another pass is needed).
+        private BitSet update(final Ir.Node loop, final BitSet live) {
+            if (!live.equals(heads.get(loop))) {
+                heads.put(loop, (BitSet) live.clone());
+                changed = true;
+            }
+            return live;
+        }
+
+        // What is live at the top of a "while" loop, given what is live there (so far) and after it.
+        private BitSet loop(final Ir.While loop, final BitSet exit, final BitSet head, final boolean remove) {
+            final BitSet test = this.block(loop.body, head, remove);
+            test.or(exit);
+            this.use(loop.condition, test);
+            return this.block(loop.header, test, remove);
+        }
+
+        // What is live at the top of a "do" loop, given what is live there (so far) and after it.
+        private BitSet loop(final Ir.DoUntil loop, final BitSet exit, final BitSet head, final boolean remove) {
+            final BitSet test = (BitSet) exit.clone();
+            test.or(head);
+            this.use(loop.condition, test);
+            return this.block(loop.body, test, remove);
+        }
+
+        // Remove a node (it is left as null until its block is done, and then they all go at once).
+        private void remove(final List<Ir.Node> block, final int i, final boolean remove) {
+            if (remove) {
+                block.set(i, null);
+                removed = true;
+            }
+        }
+
+        private void use(final Ir.Cond condition, final BitSet live) {
+            this.use(condition.left, live);
+            this.use(condition.right, live);
+        }
+
+        private void use(final Ir.Operand operand, final BitSet live) {
+            if (operand != null && !operand.isConstant()) {
+                live.set(this.id(operand));
+            }
+        }
+
+        private int id(final Ir.Operand operand) {
+            return operand.kind() == Ir.VARIABLE ? operand.index() : variables + operand.index();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Where the generated code goes: a file, memory, the console, or more than one of these at once.
+ * <p>
+ * Sinks take bytes (text is written as UTF-8), and buffer them: nothing is flushed until the buffer
+ * is full or the sink is closed, so the output costs a system call per buffer, not per node. I/O
+ * errors are thrown as {@link UncheckedIOException}s. A sink is NOT thread safe.
+ */
+interface OutputSink extends AutoCloseable {
+
+    /**
+     * Write some bytes.
+     *
+     * @param bytes  The bytes.
+     * @param offset The offset of the first byte to write.
+     * @param length The number of bytes to write.
+     */
+    void write(byte[] bytes, int offset, int length);
+
+    /**
+     * Write some text (as UTF-8).
+     *
+     * @param text The text.
+     */
+    default void write(final String text) {
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        this.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Write out anything buffered.
+     */
+    void flush();
+
+    /**
+     * Flush the sink, and release whatever it holds open.
+     */
+    @Override
+    default void close() {
+        this.flush();
+    }
+
+    /**
+     * @param path The file to write (created, or truncated if it exists).
+     * @return a sink that writes to a file, through a fixed size buffer.
+     * @throws IOException if the file cannot be opened.
+     */
+    static OutputSink toFile(final Path path) throws IOException {
+        return new FileSink(FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * @return a sink that writes to the console (which is left open when the sink is closed).
+     */
+    static OutputSink toConsole() {
+        return new ConsoleSink(System.out);
+    }
+
+    /**
+     * @return a sink that collects the output in memory.
+     */
+    static MemorySink inMemory() {
+        return new MemorySink();
+    }
+
+    /**
+     * @param first  The first sink.
+     * @param second The second sink (e.g. the console, to echo the output).
+     * @return a sink that writes everything to both sinks.
+     */
+    static OutputSink tee(final OutputSink first, final OutputSink second) {
+        return new TeeSink(first, second);
+    }
+
+    /**
+     * Writes to a {@link FileChannel} through a direct buffer, so memory use is the same for any size
+     * of output, and the bytes are not copied again on their way to the file.
+     */
+    final class FileSink implements OutputSink {
+
+        static final int BUFFER_SIZE = 1 << 16;
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        FileSink(final FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(final byte[] bytes, int offset, int length) {
+            while (length > 0) {
+                if (!buffer.hasRemaining()) {
+                    this.drain();
+                }
+                final int count = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, count);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        @Override
+        public void flush() {
+            this.drain();
+        }
+
+        @Override
+        public void close() {
+            try (channel) {
+                this.drain();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        private void drain() {
+            try {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /**
+     * Collects the output in a growable byte array.
+     */
+    final class MemorySink implements OutputSink {
+
+        private byte[] bytes = new byte[1024];
+        private int size;
+
+        @Override
+        public void write(final byte[] source, final int offset, final int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+            }
+            System.arraycopy(source, offset, bytes, size, length);
+            size += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        /**
+         * @return the number of bytes written.
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Forget the output (the array is kept).
+         */
+        void clear() {
+            size = 0;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, size, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Writes to a {@link PrintStream} (such as stdout) through a buffer of its own, as the stream's
+     * own buffering is usually line by line.
+     */
+    final class ConsoleSink implements OutputSink {
+
+        private final PrintStream stream;
+        private final byte[] buffer = new byte[1 << 13];
+        private int size;
+
+        ConsoleSink(final PrintStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) {
+            if (size + length > buffer.length) {
+                this.flush();
+                if (length > buffer.length) {
+                    stream.write(bytes, offset, length);
+                    return;
+                }
+            }
+            System.arraycopy(bytes, offset, buffer, size, length);
+            size += length;
+        }
+
+        @Override
+        public void flush() {
+            stream.write(buffer, 0, size);
+            stream.flush();
+            size = 0;
+        }
+    }
+
+    /**
+     * Writes to two sinks.
+     */
+    final class TeeSink implements OutputSink {
+
+        private final OutputSink first;
+        private final OutputSink second;
+
+        TeeSink(final OutputSink first, final OutputSink second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) {
+            first.write(bytes, offset, length);
+            second.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() {
+            first.flush();
+            second.flush();
+        }
+
+        @Override
+        public void close() {
+            try (second) {
+                first.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Lexes a large input on several cores at once.
+ * <p>
+ * No token can span a line break, and a '#' comment is always a whole line, so the input can be cut
+ * into chunks at any line break and each chunk lexed on its own. The chunks are scanned on a
+ * {@link ForkJoinPool} (each into its own {@link TokenBuffer}, with offsets into the shared source)
+ * and then stitched back together, in order, into one token stream for the parser.
+ */
+final class ParallelLexer {
+
+    // Below this size a chunk is not worth splitting any further.
+    static final int MIN_CHUNK_SIZE = 1 << 20;
+
+    private ParallelLexer() {
+    }
+
+    /**
+     * Tokenize the whole input using the common ForkJoin pool.
+     *
+     * @param source The input (e.g. a memory-mapped file).
+     * @return all the tokens, in order.
+     */
+    static TokenBuffer tokenize(final ByteBuffer source) {
+        return tokenize(source, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Tokenize the whole input on the given pool.
+     *
+     * @param source The input (e.g. a memory-mapped file).
+     * @param pool   The pool to run on.
+     * @return all the tokens, in order.
+     */
+    static TokenBuffer tokenize(final ByteBuffer source, final ForkJoinPool pool) {
+        final int limit = source.limit();
+
+        // Aim for a few chunks per worker, so an uneven chunk doesn't hold everybody up.
+        final int chunkSize = Math.max(MIN_CHUNK_SIZE, limit / (pool.getParallelism() * 4) + 1);
+
+        final List<TokenBuffer> parts = pool.invoke(new ChunkTask(source, 0, limit, chunkSize));
+        return parts.size() == 1 ? parts.get(0) : TokenBuffer.concat(source, parts);
+    }
+
+    // Find the first line start at or after "offset" (limit, if there is none).
+    private static int nextLineStart(final ByteBuffer source, final int offset, final int limit) {
+        for (int i = offset; i < limit; i++) {
+            if (source.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Lex the region [start, limit), splitting it in two (at a line break) while it is too big.
+     */
+    private static final class ChunkTask extends RecursiveTask<List<TokenBuffer>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer source;
+        private final int start;
+        private final int limit;
+        private final int chunkSize;
+
+        ChunkTask(final ByteBuffer source, final int start, final int limit, final int chunkSize) {
+            this.source = source;
+            this.start = start;
+            this.limit = limit;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected List<TokenBuffer> compute() {
+            if (limit - start > chunkSize) {
+                final int middle = nextLineStart(source, start + (limit - start) / 2, limit);
+
+                if (middle < limit) {
+                    final var right = new ChunkTask(source, middle, limit, chunkSize);
+                    right.fork();
+
+                    final var parts = new ArrayList<>(new ChunkTask(source, start, middle, chunkSize).compute());
+                    parts.addAll(right.join());
+                    return parts;
+                }
+            }
+
+            // Roughly one token every 4 bytes, for the initial guess.
+            final var tokens = new TokenBuffer(source, (limit - start) / 4);
+            tokens.scan(start, limit);
+            return List.of(tokens);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses the top-level statements of a large program on several cores at once.
+ * <p>
+ * A Program is a flat list of top-level statements, and the only nesting is bracketed (WHILE ... OD,
+ * IF ... FI and DO ... UNTIL), so a quick pass over the tokens that counts the brackets finds where
+ * every top-level statement starts. The statements are then cut into slices, each slice is parsed
+ * (by the recursive descent {@link Parser}, into a tree of its own) on a {@link ForkJoinPool}, and
+ * the slices' subtrees are copied (again in parallel) into the tree, in order, under the StmtList
+ * node.
+ * <p>
+ * The parsers add nodes in pre-order, and so does the merge, so the tree (node ids included) and
+ * the output are exactly the same as a sequential parse. If the input cannot be cut up, or any
+ * slice has a syntax error, the whole input is simply parsed sequentially instead (so errors are
+ * reported just as they always are).
+ */
+public class ParallelParser extends Parser {
+
+    // Below this many tokens a slice is not worth splitting any further.
+    static final int MIN_SLICE_TOKENS = 1 << 16;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Construct a Parser that uses the common ForkJoin pool.
+     *
+     * @param lexer         The Lexer Object
+     * @param codeGenerator The CodeGenerator Object
+     */
+    public ParallelParser(LexicalAnalyzer lexer, CodeGenerator codeGenerator) {
+        this(lexer, codeGenerator, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Construct a Parser that runs on the given pool.
+     *
+     * @param lexer         The Lexer Object
+     * @param codeGenerator The CodeGenerator Object
+     * @param pool          The pool to run on
+     */
+    public ParallelParser(LexicalAnalyzer lexer, CodeGenerator codeGenerator, ForkJoinPool pool) {
+        super(lexer, codeGenerator);
+        this.pool = pool;
+    }
+
+    /**
+     * Parse the slices in parallel and merge them (or, if that is not possible, parse sequentially).
+     *
+     * @param parentNode The parent node for the parse tree
+     * @throws ParseException If there is a syntax error
+     */
+    @Override
+    void beginParsing(final int parentNode) throws ParseException {
+        final TokenBuffer tokens = lexer.tokens();
+        final int[] starts = tokens == null ? null : statementStarts(tokens);
+
+        if (starts == null || starts.length < 2 || lexer.currentTokenIndex() != 0) {
+            super.beginParsing(parentNode);
+            return;
+        }
+
+        // Aim for a few slices per worker, so an uneven slice doesn't hold everybody up.
+        final int sliceTokens = Math.max(MIN_SLICE_TOKENS, tokens.size() / (pool.getParallelism() * 4) + 1);
+        final boolean buildTree = codeGenerator.getParseTree() != null;
+        final List<Slice> slices = pool.invoke(new SliceTask(tokens, starts, 0, starts.length - 1, sliceTokens, buildTree));
+
+        for (final Slice slice : slices) {
+            if (!slice.parsed()) {
+                super.beginParsing(parentNode);
+                return;
+            }
+        }
+
+        // Program -> StmtList -> (the statements of every slice, in order) EMPTY
+        final int program = codeGenerator.addNonTerminalToTree(parentNode, NonTerminal.PROGRAM);
+        final int statements = codeGenerator.addNonTerminalToTree(program, NonTerminal.STMT_LIST);
+        if (buildTree) {
+            codeGenerator.getParseTree().appendChildren(statements, slices.stream().map(Slice::tree).toList(), pool);
+        }
+        lexer.seekToken(starts[starts.length - 1]);
+        EMPTY(statements);
+    }
+
+    /**
+     * Find where each top-level statement starts, by counting brackets: WHILE ... OD, IF ... FI,
+     * and DO ... UNTIL (a DO right after a WHILE's condition belongs to the WHILE).
+     * <p>
+     * An ID at the top level starts a new statement unless it carries on the previous one (after an
+     * operator, a '(', READ, WRITE or UNTIL).
+     *
+     * @param tokens The tokens.
+     * @return the index of the first token of every top-level statement, followed by the number of
+     * tokens; or null if the tokens are not a plain list of statements (so they have to be parsed
+     * sequentially, to report the error).
+     */
+    static int[] statementStarts(final TokenBuffer tokens) {
+        int[] starts = new int[64];
+        int count = 0;
+        int depth = 0;
+        boolean whileHeader = false;
+        Token previous = Token.$$;
+
+        for (int i = 0; i < tokens.size(); i++) {
+            final Token token = tokens.token(i);
+
+            if (depth == 0 && startsStatement(token, previous)) {
+                if (count + 1 >= starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                }
+                starts[count++] = i;
+            }
+
+            switch (token) {
+                case WHILE, IF -> {
+                    depth++;
+                    whileHeader = token == Token.WHILE;
+                }
+                case DO -> {
+                    if (whileHeader) {
+                        whileHeader = false;
+                    } else {
+                        depth++;
+                    }
+                }
+                case OD, FI, UNTIL -> depth--;
+                default -> {
+                }
+            }
+
+            if (depth < 0) {
+                return null;
+            }
+            previous = token;
+        }
+
+        if (depth != 0 || count == 0 || starts[0] != 0) {
+            return null;
+        }
+        starts[count++] = tokens.size();
+        return Arrays.copyOf(starts, count);
+    }
+
+    private static boolean startsStatement(final Token token, final Token previous) {
+        return switch (token) {
+            case READ, WRITE, IF, WHILE, DO -> true;
+            case ID -> switch (previous) {
+                case ASSIGN_OP, ADD_OP, MULT_OP, REL_OP, LEFT_PAREN, READ, WRITE, UNTIL -> false;
+                default -> true;
+            };
+            default -> false;
+        };
+    }
+
+    /**
+     * A parsed slice: whether it parsed (as statements that end exactly where the next slice
+     * starts), and its tree (null if no tree is being built).
+     */
+    private record Slice(boolean parsed, ParseTree tree) {
+    }
+
+    /**
+     * Parse the statements [first, last), splitting them in two while they hold too many tokens.
+     */
+    private static final class SliceTask extends RecursiveTask<List<Slice>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TokenBuffer tokens;
+        private final int[] starts;
+        private final int first;
+        private final int last;
+        private final int sliceTokens;
+        private final boolean buildTree;
+
+        SliceTask(final TokenBuffer tokens, final int[] starts, final int first, final int last,
+                  final int sliceTokens, final boolean buildTree) {
+            this.tokens = tokens;
+            this.starts = starts;
+            this.first = first;
+            this.last = last;
+            this.sliceTokens = sliceTokens;
+            this.buildTree = buildTree;
+        }
+
+        @Override
+        protected List<Slice> compute() {
+            if (last - first > 1 && starts[last] - starts[first] > sliceTokens) {
+                final int middle = (first + last) >>> 1;
+                final var right = new SliceTask(tokens, starts, middle, last, sliceTokens, buildTree);
+                right.fork();
+
+                final var slices = new ArrayList<>(new SliceTask(tokens, starts, first, middle, sliceTokens, buildTree).compute());
+                slices.addAll(right.join());
+                return slices;
+            }
+
+            final var lexer = new LexicalAnalyzer(tokens);
+            final var tree = buildTree ? new ParseTree() : null;
+            final var parser = new Parser(lexer, buildTree ? new CodeGenerator(tree) : new RecognizerCodeGenerator());
+
+            // The slice's statements go under a root of their own (node 0).
+            final int root = buildTree ? tree.addNode(ParseTree.NONE, ParseTree.NONTERMINAL, SymbolTable.of(NonTerminal.STMT_LIST), ParseTree.NONE) : 0;
+
+            lexer.seekToken(starts[first]);
+            try {
+                return List.of(new Slice(parser.parseStatements(root, starts[last]), tree));
+            } catch (ParseException | StackOverflowError ex) {
+                return List.of(new Slice(false, null));
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Everything needed to parse one input after another: a lexer (and its token buffer), a parse tree
+ * (and its symbol table), a code generator and a parser, all created once and re-used.
+ * <p>
+ * A session holds no static state, and node ids come from its own tree (starting at 0 for every
+ * parse), so any number of sessions can run at the same time on different threads. A single session
+ * is NOT thread safe: use one per thread.
+ */
+final class ParseSession {
+
+    private final LexicalAnalyzer lexer = new LexicalAnalyzer();
+    private final ParseTree parseTree;
+    private final CodeGenerator codeGenerator;
+    private final Parser parser;
+
+    /**
+     * Construct a session that builds parse trees with the recursive descent parser.
+     */
+    ParseSession() {
+        this(CompilerOptions.Engine.RECURSIVE, null, true);
+    }
+
+    /**
+     * Construct a session.
+     *
+     * @param engine    The parsing engine.
+     * @param grammar   The grammar for the TABLE engine (null for the built-in one).
+     * @param buildTree false to only check the syntax (see {@link RecognizerCodeGenerator}).
+     */
+    ParseSession(final CompilerOptions.Engine engine, final LL1Grammar grammar, final boolean buildTree) {
+        this.parseTree = buildTree ? new ParseTree() : null;
+        this.codeGenerator = buildTree ? new CodeGenerator(parseTree) : new RecognizerCodeGenerator();
+        this.parser = newParser(engine, lexer, codeGenerator, grammar);
+    }
+
+    /**
+     * Construct the parser for an engine.
+     *
+     * @param engine        The parsing engine.
+     * @param lexer         The Lexer Object
+     * @param codeGenerator The CodeGenerator Object
+     * @param grammar       The grammar for the TABLE engine (null for the built-in one).
+     * @return the parser.
+     */
+    static Parser newParser(final CompilerOptions.Engine engine, final LexicalAnalyzer lexer,
+                            final CodeGenerator codeGenerator, final LL1Grammar grammar) {
+        return switch (engine) {
+            case STACK -> new StackParser(lexer, codeGenerator);
+            case TABLE -> grammar != null
+                    ? new TableParser(lexer, codeGenerator, grammar)
+                    : new TableParser(lexer, codeGenerator);
+            case PARALLEL -> new ParallelParser(lexer, codeGenerator);
+            case RECURSIVE -> new Parser(lexer, codeGenerator);
+        };
+    }
+
+    /**
+     * Parse an input (after resetting the session).
+     *
+     * @param input The input (e.g. a memory-mapped file).
+     * @return the first syntax error, or null if the input is valid.
+     */
+    ParseException parse(final ByteBuffer input) {
+        this.reset();
+        lexer.reset(input);
+        return parser.parse();
+    }
+
+    /**
+     * Parse an input string.
+     *
+     * @param input The input.
+     * @return the first syntax error, or null if the input is valid.
+     */
+    ParseException parse(final String input) {
+        return this.parse(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Parse tokens that have already been scanned (e.g. by the {@link ParallelLexer}).
+     *
+     * @param tokens The tokens.
+     * @return the first syntax error, or null if the input is valid.
+     */
+    ParseException parse(final TokenBuffer tokens) {
+        this.reset();
+        lexer.reset(tokens);
+        return parser.parse();
+    }
+
+    /**
+     * Forget the last input: empty the tree and the symbol table (their arrays are kept).
+     */
+    void reset() {
+        if (parseTree != null) {
+            parseTree.clear();
+            parseTree.symbols().clear();
+        }
+    }
+
+    void setErrorRecovery(final boolean recovering) {
+        parser.setErrorRecovery(recovering);
+    }
+
+    /**
+     * @return the syntax errors found by the last parse.
+     */
+    List<ParseException> getDiagnostics() {
+        return parser.getDiagnostics();
+    }
+
+    /**
+     * @return the tree built by the last parse (null if the session does not build trees).
+     */
+    ParseTree getParseTree() {
+        return parseTree;
+    }
+
+    CodeGenerator getCodeGenerator() {
+        return codeGenerator;
+    }
+}
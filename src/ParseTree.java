@@ -0,0 +1,343 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * The parse tree, stored in an "arena" of parallel arrays instead of as node objects.
+ * <p>
+ * A node is just an index (its id, in the order the nodes were added, so the root is 0). For each
+ * node the arrays hold its kind, its label (a {@link SymbolTable} id), its parent, its first child,
+ * its next sibling and the index of the token it came from (or {@link #NONE}).
+ * <p>
+ * Output (DOT or anything else) is generated by separate passes that walk the finished tree, so the
+ * same parse can be written out several times, in several formats.
+ */
+final class ParseTree {
+
+    // The kinds of nodes.
+    static final byte NONTERMINAL = 0; // An inner node (label: a NonTerminal)
+    static final byte TERMINAL = 1;    // The box for a matched token (label: "<TOKEN>")
+    static final byte LEXEME = 2;      // The lexeme of a matched token (label: the lexeme)
+    static final byte EMPTY = 3;       // The result of an epsilon production
+    static final byte ERROR = 4;       // A syntax error (label: the message)
+
+    // "No node" / "no token".
+    static final int NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final SymbolTable symbols;
+
+    private byte[] kinds;
+    private int[] labels;
+    private int[] parents;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int[] tokens;
+
+    // Only used while building: makes appending a child O(1).
+    private int[] lastChildren;
+
+    private int size;
+
+    ParseTree() {
+        this(new SymbolTable());
+    }
+
+    /**
+     * Construct an empty tree.
+     *
+     * @param symbols The table the labels are interned in.
+     */
+    ParseTree(final SymbolTable symbols) {
+        this.symbols = symbols;
+        this.kinds = new byte[INITIAL_CAPACITY];
+        this.labels = new int[INITIAL_CAPACITY];
+        this.parents = new int[INITIAL_CAPACITY];
+        this.firstChildren = new int[INITIAL_CAPACITY];
+        this.nextSiblings = new int[INITIAL_CAPACITY];
+        this.tokens = new int[INITIAL_CAPACITY];
+        this.lastChildren = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Add a node as the last child of its parent.
+     *
+     * @param parent The parent (NONE for the root).
+     * @param kind   The kind of node.
+     * @param label  The node's label (a symbol id).
+     * @param token  The index of the token it came from, or NONE.
+     * @return the new node.
+     */
+    int addNode(final int parent, final byte kind, final int label, final int token) {
+        if (size == kinds.length) {
+            this.grow();
+        }
+
+        final int node = size++;
+        kinds[node] = kind;
+        labels[node] = label;
+        parents[node] = parent;
+        firstChildren[node] = NONE;
+        nextSiblings[node] = NONE;
+        lastChildren[node] = NONE;
+        tokens[node] = token;
+
+        if (parent != NONE) {
+            if (firstChildren[parent] == NONE) {
+                firstChildren[parent] = node;
+            } else {
+                nextSiblings[lastChildren[parent]] = node;
+            }
+            lastChildren[parent] = node;
+        }
+        return node;
+    }
+
+    /**
+     * Replace a run of siblings by the children of another (detached) node. The subtrees are moved,
+     * not copied, and everything else in the tree keeps its node id. The node "first" keeps its id
+     * and its place, and takes over the contents of the first new child (if there is one).
+     *
+     * @param first  The first node of the run.
+     * @param last   The last node of the run (first, or one of its later siblings).
+     * @param holder The node whose children replace the run.
+     */
+    void replaceSiblings(final int first, final int last, final int holder) {
+        final int parent = parents[first];
+        final int after = nextSiblings[last];
+        final int newFirst = firstChildren[holder];
+
+        if (newFirst == NONE) {
+            // Nothing to put back: unlink the run.
+            int previous = NONE;
+            for (int child = firstChildren[parent]; child != first; child = nextSiblings[child]) {
+                previous = child;
+            }
+            if (previous == NONE) {
+                firstChildren[parent] = after;
+            } else {
+                nextSiblings[previous] = after;
+            }
+            if (after == NONE) {
+                lastChildren[parent] = previous;
+            }
+            return;
+        }
+
+        kinds[first] = kinds[newFirst];
+        labels[first] = labels[newFirst];
+        tokens[first] = tokens[newFirst];
+        firstChildren[first] = firstChildren[newFirst];
+        lastChildren[first] = lastChildren[newFirst];
+        for (int child = firstChildren[first]; child != NONE; child = nextSiblings[child]) {
+            parents[child] = first;
+        }
+
+        int tail = first;
+        nextSiblings[first] = nextSiblings[newFirst];
+        for (int sibling = nextSiblings[newFirst]; sibling != NONE; sibling = nextSiblings[sibling]) {
+            parents[sibling] = parent;
+            tail = sibling;
+        }
+
+        nextSiblings[tail] = after;
+        if (after == NONE) {
+            lastChildren[parent] = tail;
+        }
+    }
+
+    /**
+     * Append a copy of other trees' nodes (all but their roots, node 0): the roots' children become
+     * the last children of "parent", in order. The other trees must have been built in pre-order (as
+     * the parsers build trees), and the copies are added in the same order, so the ids of this tree
+     * stay in pre-order as well.
+     * <p>
+     * Each tree lands in its own range of ids, so the trees are copied in parallel on the pool.
+     *
+     * @param parent The node to add the children to.
+     * @param others The trees to copy.
+     * @param pool   The pool to copy on.
+     */
+    void appendChildren(final int parent, final List<ParseTree> others, final ForkJoinPool pool) {
+        // Node n of others[i] becomes node bases[i] + n.
+        final int[] bases = new int[others.size()];
+        final int[][] labelMaps = new int[others.size()][];
+        int total = size;
+
+        for (int i = 0; i < others.size(); i++) {
+            final ParseTree other = others.get(i);
+            bases[i] = total - 1;
+            total += Math.max(other.size - 1, 0);
+
+            // Re-intern the other tree's symbols (the fixed ones are the same in every table).
+            labelMaps[i] = new int[other.symbols.size()];
+            for (int id = 0; id < labelMaps[i].length; id++) {
+                final byte[] symbol = other.symbols.bytes(id);
+                labelMaps[i][id] = id < SymbolTable.FIXED_SYMBOLS ? id : symbols.intern(ByteBuffer.wrap(symbol), 0, symbol.length);
+            }
+        }
+
+        this.ensureCapacity(total);
+        pool.submit(() -> IntStream.range(0, others.size()).parallel()
+                .forEach(i -> this.copyNodes(parent, others.get(i), bases[i], labelMaps[i]))).join();
+        size = total;
+
+        // Link the copied children in after the parent's last child.
+        for (int i = 0; i < others.size(); i++) {
+            final ParseTree other = others.get(i);
+            if (other.size <= 1) {
+                continue;
+            }
+
+            final int firstChild = bases[i] + other.firstChildren[0];
+            if (firstChildren[parent] == NONE) {
+                firstChildren[parent] = firstChild;
+            } else {
+                nextSiblings[lastChildren[parent]] = firstChild;
+            }
+            lastChildren[parent] = bases[i] + other.lastChildren[0];
+        }
+    }
+
+    // Copy all the nodes (but the root) of another tree to base + 1 onwards.
+    private void copyNodes(final int parent, final ParseTree other, final int base, final int[] labelMap) {
+        if (other.size <= 1) {
+            return;
+        }
+
+        System.arraycopy(other.kinds, 1, kinds, base + 1, other.size - 1);
+        System.arraycopy(other.tokens, 1, tokens, base + 1, other.size - 1);
+        for (int n = 1; n < other.size; n++) {
+            final int node = base + n;
+            labels[node] = labelMap[other.labels[n]];
+            parents[node] = other.parents[n] == 0 ? parent : base + other.parents[n];
+            firstChildren[node] = other.firstChildren[n] == NONE ? NONE : base + other.firstChildren[n];
+            nextSiblings[node] = other.nextSiblings[n] == NONE ? NONE : base + other.nextSiblings[n];
+            lastChildren[node] = other.lastChildren[n] == NONE ? NONE : base + other.lastChildren[n];
+        }
+    }
+
+    /**
+     * Renumber the token indexes after the tokens [from, to) were replaced by a different number
+     * of tokens. Indexes inside the replaced run are pointed at its start.
+     *
+     * @param from  The first token replaced.
+     * @param to    One past the last token replaced.
+     * @param shift How far the tokens after the run moved.
+     */
+    void shiftTokens(final int from, final int to, final int shift) {
+        for (int node = 0; node < size; node++) {
+            if (tokens[node] >= to) {
+                tokens[node] += shift;
+            } else if (tokens[node] >= from) {
+                tokens[node] = from;
+            }
+        }
+    }
+
+    /**
+     * Remove all the nodes (the symbol table is kept).
+     */
+    void clear() {
+        size = 0;
+    }
+
+    SymbolTable symbols() {
+        return symbols;
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte kind(final int node) {
+        return kinds[node];
+    }
+
+    int label(final int node) {
+        return labels[node];
+    }
+
+    int parent(final int node) {
+        return parents[node];
+    }
+
+    int firstChild(final int node) {
+        return firstChildren[node];
+    }
+
+    int nextSibling(final int node) {
+        return nextSiblings[node];
+    }
+
+    int token(final int node) {
+        return tokens[node];
+    }
+
+    /**
+     * @return the node's label as a string.
+     */
+    String labelText(final int node) {
+        return symbols.text(labels[node]);
+    }
+
+    /**
+     * The next node in a pre-order walk of the subtree rooted at "root" (no recursion, so any depth
+     * of tree is fine).
+     *
+     * @return the next node, or NONE when the walk is over.
+     */
+    int nextPreOrder(final int node, final int root) {
+        if (firstChildren[node] != NONE) {
+            return firstChildren[node];
+        }
+        return this.skipSubtree(node, root);
+    }
+
+    /**
+     * The next node in a pre-order walk of the subtree rooted at "root", skipping the descendants
+     * of "node".
+     *
+     * @return the next node, or NONE when the walk is over.
+     */
+    int skipSubtree(final int node, final int root) {
+        int current = node;
+        while (current != root) {
+            if (nextSiblings[current] != NONE) {
+                return nextSiblings[current];
+            }
+            current = parents[current];
+        }
+        return NONE;
+    }
+
+    /**
+     * Make room for a number of nodes in one go (instead of doubling a few times on the way).
+     *
+     * @param capacity The number of nodes.
+     */
+    void ensureCapacity(final int capacity) {
+        if (capacity > kinds.length) {
+            this.resize(Math.max(capacity, kinds.length * 2));
+        }
+    }
+
+    private void grow() {
+        this.resize(kinds.length * 2);
+    }
+
+    private void resize(final int capacity) {
+        kinds = Arrays.copyOf(kinds, capacity);
+        labels = Arrays.copyOf(labels, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        firstChildren = Arrays.copyOf(firstChildren, capacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+        tokens = Arrays.copyOf(tokens, capacity);
+        lastChildren = Arrays.copyOf(lastChildren, capacity);
+    }
+}
@@ -1,15 +1,25 @@
 //  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
 
 //import java.util.Objects;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.logging.Logger;
 
 public class Parser {
 
     // The lexer which will provide the tokens
-    private final LexicalAnalyzer lexer;
+    final LexicalAnalyzer lexer;
 
     // The actual "code generator"
-    private final CodeGenerator codeGenerator;
+    final CodeGenerator codeGenerator;
+
+    // Panic-mode error recovery: when it is on, a syntax error is recorded and the parser skips
+    // ahead to a token it can carry on from (instead of stopping at the first error).
+    private boolean recovering;
+    private final List<ParseException> diagnostics = new ArrayList<>();
+    // Errors are not reported again until a token has been matched (to avoid a cascade of them).
+    private boolean suppressing;
 
     /**
      * This is the constructor for the Parser class which
@@ -21,9 +31,6 @@ public class Parser {
     public Parser(LexicalAnalyzer lexer, CodeGenerator codeGenerator) {
         this.lexer = lexer;
         this.codeGenerator = codeGenerator;
-
-        // Change this to automatically prompt to see the Open WebGraphViz dialog or not.
-        MAIN.PROMPT_FOR_GRAPHVIZ = true;
     }
 
     /*
@@ -33,9 +40,42 @@ public class Parser {
      * Begin analyzing...
      */
     void analyze() {
+        this.parse();
+
+        for (final ParseException error : diagnostics) {
+            final String msg = String.format("%s\n", error.getMessage());
+            Logger.getAnonymousLogger().severe(msg);
+        }
+    }
+
+    /**
+     * Turn panic-mode error recovery on or off (it is off by default).
+     *
+     * @param recovering true to report every syntax error, false to stop at the first one.
+     */
+    void setErrorRecovery(final boolean recovering) {
+        this.recovering = recovering;
+    }
+
+    /**
+     * @return the syntax errors found by the last parse, in the order they were found.
+     */
+    List<ParseException> getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Parse the whole input (without logging anything).
+     *
+     * @return the first syntax error, or null if the input is valid.
+     */
+    ParseException parse() {
+        diagnostics.clear();
+        suppressing = false;
+
         try {
             // Generate header for our output
-            TreeNode startNode = codeGenerator.writeHeader("PARSE TREE");
+            final int startNode = codeGenerator.writeHeader(NonTerminal.PARSE_TREE);
 
             // THIS IS OUR START RULE
             this.beginParsing(startNode);
@@ -44,9 +84,12 @@ public class Parser {
             codeGenerator.writeFooter();
 
         } catch (ParseException ex) {
-            final String msg = String.format("%s\n", ex.getMessage());
-            Logger.getAnonymousLogger().severe(msg);
+            diagnostics.add(ex);
+        } catch (StackOverflowError ex) {
+            final String msg = String.format("INPUT NESTED TOO DEEPLY near '%s' (try --engine=stack)", lexer.getCurrentLexeme());
+            diagnostics.add(new ParseException(msg, lexer.currentLine(), lexer.currentColumn()));
         }
+        return diagnostics.isEmpty() ? null : diagnostics.get(0);
     }
 
     //////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -57,7 +100,7 @@ public class Parser {
      * @param parentNode The parent node for the parse tree
      * @throws ParseException If there is a syntax error
      */
-    private void beginParsing(final TreeNode parentNode) throws ParseException {
+    void beginParsing(final int parentNode) throws ParseException {
         // Invoke the start rule.
         // TODO: Change if necessary!
         //we should change this to pertain to our code
@@ -65,23 +108,60 @@ public class Parser {
     }
 
     // Start rule
-    private void Program(final TreeNode parentNode) throws ParseException {
-        final TreeNode thisNode = codeGenerator.addNonTerminalToTree(parentNode, "Program");
+    private void Program(final int parentNode) throws ParseException {
+        final int thisNode = codeGenerator.addNonTerminalToTree(parentNode, NonTerminal.PROGRAM);
         StmtList(thisNode);
-    }
 
+        // When recovering, a stray block closer ("od", "fi", ...) ends the statements early.
+        while (this.recoverAtEndOfInput(thisNode)) {
+            StmtList(thisNode);
+        }
 
-    private void StmtList(final TreeNode parentNode) throws ParseException {
-        final TreeNode thisNode = codeGenerator.addNonTerminalToTree(parentNode, "StmtList");
-        while (lexer.currentToken() == Token.ID || lexer.currentToken() == Token.READ || lexer.currentToken() == Token.WRITE
-                || lexer.currentToken() == Token.IF || lexer.currentToken() == Token.WHILE || lexer.currentToken() == Token.DO) {
-            stmt(thisNode);
+        // The statements must use up the whole input.
+        if (lexer.currentToken() != Token.$$) {
+            raiseException(Token.$$, thisNode);
         }
+    }
+
+
+    private void StmtList(final int parentNode) throws ParseException {
+        final int thisNode = codeGenerator.addNonTerminalToTree(parentNode, NonTerminal.STMT_LIST);
+        do {
+            while (this.atStatement()) {
+                try {
+                    stmt(thisNode);
+                } catch (ParseException ex) {
+                    this.recover(ex, SyncSets.STATEMENT);
+                }
+            }
+        } while (this.recoverInStatementList(thisNode));
         EMPTY(thisNode);
     }
 
-    private void stmt(final TreeNode parentNode) throws ParseException {
-        final TreeNode thisNode = codeGenerator.addNonTerminalToTree(parentNode, "<stmt>");
+    /**
+     * Parse a run of statements, stopping at a given token (this is how the
+     * {@link IncrementalParser} re-parses the statements around an edit).
+     *
+     * @param parentNode The node to add the statements to.
+     * @param endToken   The index of the token after the last statement.
+     * @return true if the statements end exactly at endToken.
+     * @throws ParseException If there is a syntax error
+     */
+    boolean parseStatements(final int parentNode, final int endToken) throws ParseException {
+        while (lexer.currentTokenIndex() < endToken && this.atStatement()) {
+            stmt(parentNode);
+        }
+        return lexer.currentTokenIndex() == endToken;
+    }
+
+    // Can a statement start at the current token?
+    private boolean atStatement() {
+        return lexer.currentToken() == Token.ID || lexer.currentToken() == Token.READ || lexer.currentToken() == Token.WRITE
+                || lexer.currentToken() == Token.IF || lexer.currentToken() == Token.WHILE || lexer.currentToken() == Token.DO;
+    }
+
+    private void stmt(final int parentNode) throws ParseException {
+        final int thisNode = codeGenerator.addNonTerminalToTree(parentNode, NonTerminal.STMT);
 
         switch (lexer.currentToken()) {
             case ID -> {
@@ -105,8 +185,8 @@ public class Parser {
     }
 
 
-    private void do_until_stmt(final TreeNode parentNode) throws ParseException {
-        final TreeNode thisNode = codeGenerator.addNonTerminalToTree(parentNode, "<do_until_stmt>");
+    private void do_until_stmt(final int parentNode) throws ParseException {
+        final int thisNode = codeGenerator.addNonTerminalToTree(parentNode, NonTerminal.DO_UNTIL_STMT);
 
         MATCH(thisNode, Token.DO);
         StmtList(thisNode);
@@ -114,8 +194,8 @@ public class Parser {
         condition(thisNode);
     }
 
-    private void if_stmt(final TreeNode parentNode) throws ParseException {
-        final TreeNode thisNode = codeGenerator.addNonTerminalToTree(parentNode, "<if_stmt>");
+    private void if_stmt(final int parentNode) throws ParseException {
+        final int thisNode = codeGenerator.addNonTerminalToTree(parentNode, NonTerminal.IF_STMT);
 
         MATCH(thisNode, Token.IF);
         condition(thisNode);
@@ -127,8 +207,8 @@ public class Parser {
         MATCH(thisNode, Token.FI);
     }
 
-    private void else_part(final TreeNode parentNode) throws ParseException {
-        final TreeNode thisNode = codeGenerator.addNonTerminalToTree(parentNode, "<else_part>");
+    private void else_part(final int parentNode) throws ParseException {
+        final int thisNode = codeGenerator.addNonTerminalToTree(parentNode, NonTerminal.ELSE_PART);
 
         if (lexer.currentToken() == Token.ELSE) {
             MATCH(thisNode, Token.ELSE);
@@ -136,8 +216,8 @@ public class Parser {
         }
     }
 
-    private void while_stmt(final TreeNode parentNode) throws ParseException {
-        final TreeNode thisNode = codeGenerator.addNonTerminalToTree(parentNode, "<while_stmt>");
+    private void while_stmt(final int parentNode) throws ParseException {
+        final int thisNode = codeGenerator.addNonTerminalToTree(parentNode, NonTerminal.WHILE_STMT);
 
         MATCH(thisNode, Token.WHILE);
         condition(thisNode);
@@ -146,28 +226,32 @@ public class Parser {
         MATCH(thisNode, Token.OD);
     }
 
-    private void condition(final TreeNode parentNode) throws ParseException {
-        final TreeNode thisNode = codeGenerator.addNonTerminalToTree(parentNode, "<condition>");
+    private void condition(final int parentNode) throws ParseException {
+        final int thisNode = codeGenerator.addNonTerminalToTree(parentNode, NonTerminal.CONDITION);
 
-        Expr(thisNode);
-        MATCH(thisNode, Token.REL_OP);
-        Expr(thisNode);
+        try {
+            Expr(thisNode);
+            MATCH(thisNode, Token.REL_OP);
+            Expr(thisNode);
+        } catch (ParseException ex) {
+            this.recover(ex, SyncSets.CONDITION);
+        }
     }
 
 
-    private void Expr(final TreeNode parentNode) throws ParseException {
-        final TreeNode thisNode = codeGenerator.addNonTerminalToTree(parentNode, "Expr");
+    private void Expr(final int parentNode) throws ParseException {
+        final int thisNode = codeGenerator.addNonTerminalToTree(parentNode, NonTerminal.EXPR);
         Expo(thisNode);
     }
 
-    private void Expo(final TreeNode parentNode) throws ParseException {
-        final TreeNode thisNode = codeGenerator.addNonTerminalToTree(parentNode, "Expo");
+    private void Expo(final int parentNode) throws ParseException {
+        final int thisNode = codeGenerator.addNonTerminalToTree(parentNode, NonTerminal.EXPO);
         Term(thisNode);
         TermTail(thisNode);
     }
 
-    private void TermTail(final TreeNode parentNode) throws ParseException {
-        final TreeNode thisNode = codeGenerator.addNonTerminalToTree(parentNode, "TermTail");
+    private void TermTail(final int parentNode) throws ParseException {
+        final int thisNode = codeGenerator.addNonTerminalToTree(parentNode, NonTerminal.TERM_TAIL);
         if (lexer.currentToken() == Token.ADD_OP) {
             MATCH(thisNode, Token.ADD_OP);
             Term(thisNode);
@@ -177,14 +261,14 @@ public class Parser {
         }
     }
 
-    private void Term(final TreeNode parentNode) throws ParseException {
-        final TreeNode thisNode = codeGenerator.addNonTerminalToTree(parentNode, "Term");
+    private void Term(final int parentNode) throws ParseException {
+        final int thisNode = codeGenerator.addNonTerminalToTree(parentNode, NonTerminal.TERM);
         Factor(thisNode);
         FactorTail(thisNode);
     }
 
-    private void FactorTail(final TreeNode parentNode) throws ParseException {
-        final TreeNode thisNode = codeGenerator.addNonTerminalToTree(parentNode, "FactorTail");
+    private void FactorTail(final int parentNode) throws ParseException {
+        final int thisNode = codeGenerator.addNonTerminalToTree(parentNode, NonTerminal.FACTOR_TAIL);
         if (lexer.currentToken() == Token.MULT_OP) {
             MATCH(thisNode, Token.MULT_OP);
             Factor(thisNode);
@@ -194,8 +278,8 @@ public class Parser {
         }
     }
 
-    private void Factor(final TreeNode parentNode) throws ParseException {
-        final TreeNode thisNode = codeGenerator.addNonTerminalToTree(parentNode, "Factor");
+    private void Factor(final int parentNode) throws ParseException {
+        final int thisNode = codeGenerator.addNonTerminalToTree(parentNode, NonTerminal.FACTOR);
         if (lexer.currentToken() == Token.LEFT_PAREN) {
             MATCH(thisNode, Token.LEFT_PAREN);
             Expr(thisNode);
@@ -217,7 +301,7 @@ public class Parser {
      *
      * @param parentNode The parent of the terminal node.
      */
-    void EMPTY(final TreeNode parentNode) {
+    void EMPTY(final int parentNode) {
         codeGenerator.addEmptyToTree(parentNode);
     }
 
@@ -229,13 +313,13 @@ public class Parser {
      * @param expectedToken The token to be matched.
      * @throws ParseException Thrown if the token does not match the expected token.
      */
-    void MATCH(final TreeNode parentNode, final Token expectedToken) throws ParseException {
+    void MATCH(final int parentNode, final Token expectedToken) throws ParseException {
         final Token currentToken = lexer.currentToken();
 
         if (currentToken == expectedToken) {
-            var currentLexeme = lexer.getCurrentLexeme();
-            this.addTerminalToTree(parentNode, currentToken, currentLexeme);
+            this.addTerminalToTree(parentNode, currentToken);
             lexer.advanceToken();
+            suppressing = false;
         } else {
             this.raiseException(expectedToken, parentNode);
         }
@@ -244,18 +328,98 @@ public class Parser {
     //////////////////////////////////////////////////////////////////////////////////////////////////////////
 
     /**
-     * Add a terminal node to the parse tree.
+     * Add a terminal node (the current token and its lexeme) to the parse tree.
      *
-     * @param parentNode    The parent of the terminal node.
-     * @param currentToken  The token to be added.
-     * @param currentLexeme The lexeme of the token being added.
+     * @param parentNode   The parent of the terminal node.
+     * @param currentToken The token to be added.
      * @throws ParseException Throws a ParseException if the token cannot be added to the tree.
      */
-    void addTerminalToTree(final TreeNode parentNode, final Token currentToken, final String currentLexeme) throws ParseException {
-        var nodeLabel = "<%s>".formatted(currentToken);
-        var terminalNode = codeGenerator.addNonTerminalToTree(parentNode, nodeLabel);
+    void addTerminalToTree(final int parentNode, final Token currentToken) throws ParseException {
+        codeGenerator.addTerminalToTree(parentNode, currentToken, lexer);
+    }
+
+    /**
+     * Panic-mode error recovery: record a syntax error, then skip tokens until one that the parser
+     * can resynchronize on (or the end of the input).
+     *
+     * @param error The syntax error.
+     * @param sync  The tokens (by ordinal) to stop at, or null to not skip anything.
+     * @throws ParseException The error itself, if error recovery is off.
+     */
+    void recover(final ParseException error, final BitSet sync) throws ParseException {
+        if (!recovering) {
+            throw error;
+        }
+
+        if (!suppressing) {
+            diagnostics.add(error);
+            suppressing = true;
+        }
+
+        while (sync != null && lexer.currentToken() != Token.$$ && !sync.get(lexer.currentToken().ordinal())) {
+            lexer.advanceToken();
+        }
+    }
+
+    /**
+     * When recovering, report (and skip) tokens in a statement list that can neither start a
+     * statement nor end the list.
+     *
+     * @param parentNode The StmtList node.
+     * @return true if tokens were skipped (so the caller should look for more statements), false if
+     * the list really does end here or if error recovery is off.
+     */
+    boolean recoverInStatementList(final int parentNode) {
+        if (!recovering || lexer.currentToken() == Token.$$ || SyncSets.STATEMENT.get(lexer.currentToken().ordinal())) {
+            return false;
+        }
+
+        try {
+            this.raiseException(Token.ID, parentNode);
+        } catch (ParseException ex) {
+            this.recover(ex, SyncSets.STATEMENT);
+        }
+        return true;
+    }
+
+    /**
+     * When recovering, report (and skip) a token that is left over after the start rule is done.
+     *
+     * @param parentNode The node to add the error to.
+     * @return true if a token was skipped (so the caller should carry on parsing), false at the end
+     * of the input or if error recovery is off.
+     */
+    boolean recoverAtEndOfInput(final int parentNode) {
+        if (!recovering || lexer.currentToken() == Token.$$) {
+            return false;
+        }
+
+        try {
+            this.raiseException(Token.$$, parentNode);
+        } catch (ParseException ex) {
+            this.recover(ex, null);
+        }
+        lexer.advanceToken();
+        return true;
+    }
+
+    /**
+     * Where to resume after an error in a statement (FIRST and FOLLOW of &lt;stmt&gt;) or in a
+     * condition (FOLLOW of &lt;condition&gt;), as sets of token ordinals. They come from the built-in
+     * grammar, and are computed the first time an error is recovered from.
+     */
+    static final class SyncSets {
+        static final BitSet STATEMENT;
+        static final BitSet CONDITION;
 
-        codeGenerator.addTerminalToTree(terminalNode, currentLexeme);
+        static {
+            final LL1Grammar grammar = LL1Grammar.builtIn();
+            final int stmt = grammar.rule(NonTerminal.STMT);
+
+            STATEMENT = grammar.first(stmt);
+            STATEMENT.or(grammar.follow(stmt));
+            CONDITION = grammar.follow(grammar.rule(NonTerminal.CONDITION));
+        }
     }
 
     /**
@@ -264,10 +428,10 @@ public class Parser {
      * @param expected   The expected token
      * @param parentNode The token's parent node
      */
-    private void raiseException(Token expected, TreeNode parentNode) throws ParseException {
+    void raiseException(Token expected, int parentNode) throws ParseException {
         final var template = "SYNTAX ERROR: '%s' was expected but '%s' was found.";
         final var errorMessage = template.formatted(expected.name(), lexer.getCurrentLexeme());
-        codeGenerator.syntaxError(errorMessage, parentNode);
+        codeGenerator.syntaxError(errorMessage, parentNode, lexer);
     }
 }
 
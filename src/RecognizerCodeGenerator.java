@@ -0,0 +1,59 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+/**
+ * A "code generator" for when we only need to know whether the input is valid: it builds no tree
+ * and generates no output, it just counts the nodes the parser would have added.
+ * <p>
+ * Nothing is allocated per node (lexemes are never even turned into strings), so parsing with this
+ * generator is just the cost of lexing and recognizing the input.
+ */
+class RecognizerCodeGenerator extends CodeGenerator {
+
+    // The number of nodes that would have been in the tree.
+    private int nodeCount;
+
+    RecognizerCodeGenerator() {
+        super(null);
+    }
+
+    @Override
+    public void addTerminalToTree(final int parentNode, final Token token, final LexicalAnalyzer lexer) {
+        // The token's box and its lexeme.
+        nodeCount += 2;
+    }
+
+    @Override
+    public int addNonTerminalToTree(final int parentNode, final NonTerminal nonTerminal) {
+        return nodeCount++;
+    }
+
+    @Override
+    public void addEmptyToTree(final int parentNode) {
+        nodeCount++;
+    }
+
+    @Override
+    public void syntaxError(final String err, final int fromNode, final LexicalAnalyzer lexer) throws ParseException {
+        throw new ParseException(err, lexer.currentLine(), lexer.currentColumn());
+    }
+
+    @Override
+    public int writeHeader(final NonTerminal rootNode) {
+        nodeCount = 0;
+        return nodeCount++;
+    }
+
+    // There is no output.
+    @Override
+    void generateCode() {
+    }
+
+    @Override
+    public String getGeneratedCodeBuffer() {
+        return "";
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+}
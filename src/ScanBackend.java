@@ -0,0 +1,159 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The "inner loops" of the {@link TokenScanner}: finding where a run of blanks, comment text, word
+ * characters or digits ends.
+ * <p>
+ * SCALAR looks at one byte at a time. SWAR ("SIMD Within A Register") loads 8 bytes into a long and
+ * classifies all of them at once with a few arithmetic/bitwise operations, falling back to the scalar
+ * loop for the last few bytes of the input.
+ * <p>
+ * SCALAR is the default; the active backend can be switched (e.g. "--scan=swar") to compare the two.
+ */
+enum ScanBackend {
+
+    SCALAR {
+        @Override
+        int skipBlanks(final ByteBuffer source, int pos, final int limit) {
+            while (pos < limit && TokenScanner.isBlank(source.get(pos) & 0xFF)) {
+                pos++;
+            }
+            return pos;
+        }
+
+        @Override
+        int findLineEnd(final ByteBuffer source, int pos, final int limit) {
+            while (pos < limit && source.get(pos) != '\n' && source.get(pos) != '\r') {
+                pos++;
+            }
+            return pos;
+        }
+
+        @Override
+        int skipWordChars(final ByteBuffer source, int pos, final int limit) {
+            while (pos < limit && isWordOrDigit(source.get(pos) & 0xFF)) {
+                pos++;
+            }
+            return pos;
+        }
+
+        @Override
+        int skipDigits(final ByteBuffer source, int pos, final int limit) {
+            while (pos < limit && TokenScanner.isDigit(source.get(pos))) {
+                pos++;
+            }
+            return pos;
+        }
+    },
+
+    SWAR {
+        @Override
+        int skipBlanks(final ByteBuffer source, int pos, final int limit) {
+            while (pos + Long.BYTES <= limit) {
+                final long word = source.getLong(pos);
+                final long stop = ~(equal(word, ' ') | equal(word, '\t') | equal(word, '\f') | equal(word, 0x0B)) & HIGH;
+                if (stop != 0) {
+                    return pos + firstByte(source, stop);
+                }
+                pos += Long.BYTES;
+            }
+            return SCALAR.skipBlanks(source, pos, limit);
+        }
+
+        @Override
+        int findLineEnd(final ByteBuffer source, int pos, final int limit) {
+            while (pos + Long.BYTES <= limit) {
+                final long word = source.getLong(pos);
+                final long stop = equal(word, '\n') | equal(word, '\r');
+                if (stop != 0) {
+                    return pos + firstByte(source, stop);
+                }
+                pos += Long.BYTES;
+            }
+            return SCALAR.findLineEnd(source, pos, limit);
+        }
+
+        @Override
+        int skipWordChars(final ByteBuffer source, int pos, final int limit) {
+            while (pos + Long.BYTES <= limit) {
+                final long word = source.getLong(pos);
+                final long letters = between(word | 0x2020202020202020L, 'a' - 1, 'z' + 1);
+                final long stop = ~(letters | digits(word) | equal(word, '_') | (word & HIGH)) & HIGH;
+                if (stop != 0) {
+                    return pos + firstByte(source, stop);
+                }
+                pos += Long.BYTES;
+            }
+            return SCALAR.skipWordChars(source, pos, limit);
+        }
+
+        @Override
+        int skipDigits(final ByteBuffer source, int pos, final int limit) {
+            while (pos + Long.BYTES <= limit) {
+                final long stop = ~digits(source.getLong(pos)) & HIGH;
+                if (stop != 0) {
+                    return pos + firstByte(source, stop);
+                }
+                pos += Long.BYTES;
+            }
+            return SCALAR.skipDigits(source, pos, limit);
+        }
+    };
+
+    // The backend used by new scanners.
+    static ScanBackend active = SCALAR;
+
+    // 0x01 and 0x80 in every byte.
+    private static final long LOW = 0x0101010101010101L;
+    private static final long HIGH = 0x8080808080808080L;
+
+    /**
+     * @return the first offset in [pos, limit) that is not a blank (space, tab...), or limit.
+     */
+    abstract int skipBlanks(ByteBuffer source, int pos, int limit);
+
+    /**
+     * @return the first offset in [pos, limit) that is a CR or LF, or limit.
+     */
+    abstract int findLineEnd(ByteBuffer source, int pos, int limit);
+
+    /**
+     * @return the first offset in [pos, limit) that is not a letter, digit, '_' or non-ASCII byte.
+     */
+    abstract int skipWordChars(ByteBuffer source, int pos, int limit);
+
+    /**
+     * @return the first offset in [pos, limit) that is not a digit, or limit.
+     */
+    abstract int skipDigits(ByteBuffer source, int pos, int limit);
+
+    private static boolean isWordOrDigit(final int ch) {
+        return TokenScanner.isWordChar(ch) || TokenScanner.isDigit(ch);
+    }
+
+    // 0x80 in each byte of "word" that equals "ch" (exact, no false positives).
+    private static long equal(final long word, final int ch) {
+        final long x = word ^ (LOW * ch);
+        return ~(((x & ~HIGH) + ~HIGH) | x | ~HIGH);
+    }
+
+    // 0x80 in each byte of "word" that is strictly between m and n (exact for 0 <= m, n <= 127).
+    private static long between(final long word, final int m, final int n) {
+        final long low7 = word & ~HIGH;
+        return (LOW * (127 + n) - low7) & ~word & (low7 + LOW * (127 - m)) & HIGH;
+    }
+
+    private static long digits(final long word) {
+        return between(word, '0' - 1, '9' + 1);
+    }
+
+    // The index (in memory order) of the first byte whose high bit is set in "mask".
+    private static int firstByte(final ByteBuffer source, final long mask) {
+        return (source.order() == ByteOrder.BIG_ENDIAN
+                ? Long.numberOfLeadingZeros(mask)
+                : Long.numberOfTrailingZeros(mask)) >>> 3;
+    }
+}
@@ -0,0 +1,238 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.util.Arrays;
+
+/**
+ * The same grammar as {@link Parser}, but driven by an explicit stack (on the heap) instead of
+ * recursive method calls.
+ * <p>
+ * Each entry on the stack is a "task" (parse a rule, match a token, add an EMPTY node) plus the tree
+ * node it belongs under. A rule is expanded by pushing the tasks for its right-hand side in reverse
+ * order, so they are done left to right, and nodes are added in exactly the same order as the
+ * recursive parser adds them: the tree (and the output) is identical.
+ * <p>
+ * The Java call stack never grows, no matter how long or deeply nested the input is. Right
+ * recursive rules (TermTail, FactorTail, the StmtList loop) are expanded as tail calls, so a long
+ * expression like "a + b + c + ..." runs in constant stack space and linear time; only nesting
+ * (parentheses, blocks) makes the heap stack grow.
+ */
+public class StackParser extends Parser {
+
+    // The tasks.
+    private static final int PROGRAM = 0;
+    private static final int STMT_LIST = 1;
+    private static final int STMT_LIST_LOOP = 2;
+    private static final int STMT = 3;
+    private static final int DO_UNTIL_STMT = 4;
+    private static final int IF_STMT = 5;
+    private static final int OPTIONAL_ELSE = 6;
+    private static final int ELSE_PART = 7;
+    private static final int WHILE_STMT = 8;
+    private static final int CONDITION = 9;
+    private static final int EXPR = 10;
+    private static final int EXPO = 11;
+    private static final int TERM_TAIL = 12;
+    private static final int TERM = 13;
+    private static final int FACTOR_TAIL = 14;
+    private static final int FACTOR = 15;
+
+    // Marks the end of a condition's tasks (so error recovery knows where the condition ends).
+    private static final int CONDITION_END = 16;
+
+    // MATCH_TOKEN + token.ordinal() means "match this token".
+    private static final int MATCH_TOKEN = 32;
+
+    private static final Token[] TOKENS = Token.values();
+
+    // The stack of (task, node) pairs.
+    private int[] tasks = new int[64];
+    private int[] nodes = new int[64];
+    private int top;
+
+    // The Program node (where statements go after a stray block closer, when recovering).
+    private int programNode;
+
+    /**
+     * Construct a Parser that uses an explicit stack.
+     *
+     * @param lexer         The Lexer Object
+     * @param codeGenerator The CodeGenerator Object
+     */
+    public StackParser(LexicalAnalyzer lexer, CodeGenerator codeGenerator) {
+        super(lexer, codeGenerator);
+    }
+
+    /**
+     * Run the start rule: keep popping and doing tasks until there are none left.
+     *
+     * @param parentNode The parent node for the parse tree
+     * @throws ParseException If there is a syntax error
+     */
+    @Override
+    void beginParsing(final int parentNode) throws ParseException {
+        top = 0;
+        push(PROGRAM, parentNode);
+
+        while (top > 0) {
+            top--;
+            try {
+                this.perform(tasks[top], nodes[top]);
+            } catch (ParseException ex) {
+                this.unwind(ex);
+            }
+
+            // When recovering, a stray block closer ("od", "fi", ...) ends the statements early.
+            if (top == 0 && this.recoverAtEndOfInput(programNode)) {
+                push(STMT_LIST, programNode);
+            }
+        }
+
+        // The statements must use up the whole input.
+        if (lexer.currentToken() != Token.$$) {
+            raiseException(Token.$$, programNode);
+        }
+    }
+
+    /**
+     * Recover from a syntax error the same way {@link Parser} does: drop the tasks of the innermost
+     * condition or statement that failed, and skip ahead to a token that can follow it.
+     *
+     * @param error The syntax error.
+     * @throws ParseException The error itself, if error recovery is off.
+     */
+    private void unwind(final ParseException error) throws ParseException {
+        while (top > 0 && tasks[top - 1] != STMT_LIST_LOOP && tasks[top - 1] != CONDITION_END) {
+            top--;
+        }
+
+        if (top > 0 && tasks[top - 1] == CONDITION_END) {
+            top--;
+            this.recover(error, SyncSets.CONDITION);
+        } else {
+            this.recover(error, SyncSets.STATEMENT);
+        }
+    }
+
+    /**
+     * Do a single task.
+     *
+     * @param task       The task.
+     * @param parentNode The node the task belongs under.
+     */
+    private void perform(final int task, final int parentNode) throws ParseException {
+        if (task >= MATCH_TOKEN) {
+            MATCH(parentNode, TOKENS[task - MATCH_TOKEN]);
+            return;
+        }
+
+        final Token current = lexer.currentToken();
+
+        switch (task) {
+            case PROGRAM -> {
+                programNode = add(parentNode, NonTerminal.PROGRAM);
+                push(STMT_LIST, programNode);
+            }
+            case STMT_LIST -> push(STMT_LIST_LOOP, add(parentNode, NonTerminal.STMT_LIST));
+            case STMT_LIST_LOOP -> {
+                // "parentNode" is the StmtList: one more statement, then loop again.
+                if (current == Token.ID || current == Token.READ || current == Token.WRITE
+                        || current == Token.IF || current == Token.WHILE || current == Token.DO) {
+                    push(STMT_LIST_LOOP, parentNode);
+                    push(STMT, parentNode);
+                } else if (this.recoverInStatementList(parentNode)) {
+                    push(STMT_LIST_LOOP, parentNode);
+                } else {
+                    EMPTY(parentNode);
+                }
+            }
+            case STMT -> {
+                final int thisNode = add(parentNode, NonTerminal.STMT);
+                switch (current) {
+                    case ID -> expand(thisNode, match(Token.ID), match(Token.ASSIGN_OP), EXPR);
+                    case READ -> expand(thisNode, match(Token.READ), match(Token.ID));
+                    case WRITE -> expand(thisNode, match(Token.WRITE), EXPR);
+                    case IF -> push(IF_STMT, thisNode);
+                    case WHILE -> push(WHILE_STMT, thisNode);
+                    case DO -> push(DO_UNTIL_STMT, thisNode);
+                    default -> EMPTY(thisNode);
+                }
+            }
+            case DO_UNTIL_STMT -> expand(add(parentNode, NonTerminal.DO_UNTIL_STMT),
+                    match(Token.DO), STMT_LIST, match(Token.UNTIL), CONDITION);
+            case IF_STMT -> expand(add(parentNode, NonTerminal.IF_STMT),
+                    match(Token.IF), CONDITION, match(Token.THEN), STMT_LIST, OPTIONAL_ELSE, match(Token.FI));
+            case OPTIONAL_ELSE -> {
+                if (current == Token.ELSE) {
+                    push(ELSE_PART, parentNode);
+                }
+            }
+            case ELSE_PART -> {
+                final int thisNode = add(parentNode, NonTerminal.ELSE_PART);
+                if (current == Token.ELSE) {
+                    expand(thisNode, match(Token.ELSE), STMT_LIST);
+                }
+            }
+            case WHILE_STMT -> expand(add(parentNode, NonTerminal.WHILE_STMT),
+                    match(Token.WHILE), CONDITION, match(Token.DO), STMT_LIST, match(Token.OD));
+            case CONDITION -> expand(add(parentNode, NonTerminal.CONDITION), EXPR, match(Token.REL_OP), EXPR, CONDITION_END);
+            case CONDITION_END -> {
+            }
+            case EXPR -> push(EXPO, add(parentNode, NonTerminal.EXPR));
+            case EXPO -> expand(add(parentNode, NonTerminal.EXPO), TERM, TERM_TAIL);
+            case TERM_TAIL -> {
+                final int thisNode = add(parentNode, NonTerminal.TERM_TAIL);
+                if (current == Token.ADD_OP) {
+                    expand(thisNode, match(Token.ADD_OP), TERM, TERM_TAIL);
+                } else {
+                    EMPTY(thisNode);
+                }
+            }
+            case TERM -> expand(add(parentNode, NonTerminal.TERM), FACTOR, FACTOR_TAIL);
+            case FACTOR_TAIL -> {
+                final int thisNode = add(parentNode, NonTerminal.FACTOR_TAIL);
+                if (current == Token.MULT_OP) {
+                    expand(thisNode, match(Token.MULT_OP), FACTOR, FACTOR_TAIL);
+                } else {
+                    EMPTY(thisNode);
+                }
+            }
+            case FACTOR -> {
+                final int thisNode = add(parentNode, NonTerminal.FACTOR);
+                switch (current) {
+                    case LEFT_PAREN -> expand(thisNode, match(Token.LEFT_PAREN), EXPR, match(Token.RIGHT_PAREN));
+                    case ID -> MATCH(thisNode, Token.ID);
+                    case NUMBER -> MATCH(thisNode, Token.NUMBER);
+                    default -> raiseException(Token.LEFT_PAREN, thisNode);
+                }
+            }
+            default -> throw new IllegalStateException("Unknown parser task: " + task);
+        }
+    }
+
+    // Add a non-terminal node to the tree.
+    private int add(final int parentNode, final NonTerminal nonTerminal) {
+        return codeGenerator.addNonTerminalToTree(parentNode, nonTerminal);
+    }
+
+    // The task that matches a token.
+    private static int match(final Token token) {
+        return MATCH_TOKEN + token.ordinal();
+    }
+
+    // Push the tasks for a right-hand side (in reverse, so the first one is done first).
+    private void expand(final int parentNode, final int... rightHandSide) {
+        for (int i = rightHandSide.length - 1; i >= 0; i--) {
+            push(rightHandSide[i], parentNode);
+        }
+    }
+
+    private void push(final int task, final int node) {
+        if (top == tasks.length) {
+            tasks = Arrays.copyOf(tasks, top * 2);
+            nodes = Arrays.copyOf(nodes, top * 2);
+        }
+        tasks[top] = task;
+        nodes[top] = node;
+        top++;
+    }
+}
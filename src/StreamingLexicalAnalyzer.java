@@ -0,0 +1,206 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A "pull" based lexer: tokens are scanned on demand, as the parser asks for them, instead of all
+ * at once up front.
+ * <p>
+ * The input is read from a channel (a file, a pipe, stdin...) into a small byte window, one or more
+ * complete lines at a time. Since no token can span a line break, the {@link TokenScanner} only
+ * ever sees whole lines. Scanned tokens wait in a small ring buffer until they are consumed, which
+ * also gives the parser a bounded amount of lookahead.
+ * <p>
+ * Memory use is constant: it depends on the longest line and the lookahead, NOT the input size.
+ */
+final class StreamingLexicalAnalyzer extends LexicalAnalyzer {
+
+    // How many tokens can be buffered (must be a power of two).
+    static final int LOOKAHEAD = 8;
+
+    private static final int WINDOW_SIZE = 64 * 1024;
+
+    // values() clones its array on every call, so keep one copy around.
+    private static final Token[] TOKENS = Token.values();
+
+    // Where the input comes from.
+    private final ReadableByteChannel channel;
+
+    // The input window: [0, scanLimit) is handed to the scanner, [scanLimit, position) is a
+    // partial line still waiting for the rest of its bytes.
+    private ByteBuffer window;
+    private int scanLimit;
+    private boolean endOfInput;
+    private TokenScanner scanner;
+
+    // The ring buffer of scanned (but not yet consumed) tokens.
+    private final int[] kinds = new int[LOOKAHEAD];
+    private final int[] offsets = new int[LOOKAHEAD];
+    private final int[] lengths = new int[LOOKAHEAD];
+    private final int[] lines = new int[LOOKAHEAD];
+    private final int[] columns = new int[LOOKAHEAD];
+    private int head;
+    private int count;
+
+    // The number of tokens consumed so far.
+    private int consumed;
+
+    // The number of lines before the ones the scanner is working on.
+    private int linesBefore;
+
+    /**
+     * Construct a lexer that pulls its input from a channel.
+     *
+     * @param channel The input channel (it is NOT closed by the lexer).
+     */
+    StreamingLexicalAnalyzer(final ReadableByteChannel channel) {
+        this.channel = channel;
+        this.window = ByteBuffer.allocate(WINDOW_SIZE);
+        this.scanner = new TokenScanner(window, 0, 0);
+    }
+
+    @Override
+    public String getCurrentLexeme() {
+        if (!this.fill(1) || this.currentToken() == Token.$$) {
+            return "EOF";
+        }
+        return TokenScanner.lexeme(window, offsets[head], lengths[head]);
+    }
+
+    @Override
+    public int currentLine() {
+        return this.fill(1) ? lines[head] : linesBefore + scanner.lines + 1;
+    }
+
+    @Override
+    public int currentColumn() {
+        return this.fill(1) ? columns[head] : scanLimit - scanner.lineStart + 1;
+    }
+
+    @Override
+    public int currentTokenIndex() {
+        return consumed;
+    }
+
+    @Override
+    int internCurrentLexeme(final SymbolTable symbols) {
+        this.fill(1);
+        return symbols.intern(window, offsets[head], lengths[head]);
+    }
+
+    @Override
+    public Token currentToken() {
+        return this.peekToken(0);
+    }
+
+    @Override
+    public Token peekToken(final int distance) {
+        if (distance >= LOOKAHEAD) {
+            throw new IllegalArgumentException("Lookahead is limited to " + LOOKAHEAD + " tokens");
+        }
+        return this.fill(distance + 1) ? TOKENS[kinds[(head + distance) & (LOOKAHEAD - 1)]] : Token.$$;
+    }
+
+    @Override
+    public void advanceToken() {
+        if (this.fill(1)) {
+            head = (head + 1) & (LOOKAHEAD - 1);
+            count--;
+            consumed++;
+        }
+    }
+
+    /**
+     * Make sure the ring buffer holds at least "needed" tokens, scanning more if necessary.
+     *
+     * @return false if the input ran out first.
+     */
+    private boolean fill(final int needed) {
+        while (count < needed) {
+            if (scanner.next()) {
+                final int tail = (head + count) & (LOOKAHEAD - 1);
+                kinds[tail] = Token.fromLexeme(window, scanner.tokenStart, scanner.tokenLength).ordinal();
+                offsets[tail] = scanner.tokenStart;
+                lengths[tail] = scanner.tokenLength;
+                lines[tail] = linesBefore + scanner.lines + 1;
+                columns[tail] = scanner.tokenStart - scanner.lineStart + 1;
+                count++;
+            } else if (endOfInput) {
+                return false;
+            } else {
+                this.readLines();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read from the channel until at least one more complete line (or the end of the input) is
+     * available, and point the scanner at it.
+     */
+    private void readLines() {
+        // Drop everything before the oldest token still in the ring buffer.
+        final int keep = count > 0 ? offsets[head] : scanLimit;
+        window.flip().position(keep);
+        window.compact();
+        for (int i = 0; i < count; i++) {
+            offsets[(head + i) & (LOOKAHEAD - 1)] -= keep;
+        }
+
+        final int scanStart = scanLimit - keep;
+        int lineEnd = -1;
+
+        try {
+            while (lineEnd < 0 && !endOfInput) {
+                // A single line longer than the window: make the window bigger.
+                if (!window.hasRemaining()) {
+                    window = ByteBuffer.allocate(window.capacity() * 2).put(window.flip());
+                }
+
+                final int readFrom = window.position();
+                if (channel.read(window) < 0) {
+                    endOfInput = true;
+                }
+                lineEnd = lastLineEnd(readFrom, window.position());
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        linesBefore += scanner.lines;
+        scanLimit = endOfInput ? window.position() : lineEnd;
+        scanner = new TokenScanner(window, scanStart, scanLimit);
+    }
+
+    // One past the last '\n' in [from, to), or -1 if there is none.
+    private int lastLineEnd(final int from, final int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (window.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * To string for debugging.
+     * <p>
+     * (Only the tokens currently held in the ring buffer.)
+     */
+    @Override
+    public String toString() {
+        final var builder = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            final int slot = (head + i) & (LOOKAHEAD - 1);
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(String.format("{lexeme=%s, token=%s}",
+                    TokenScanner.lexeme(window, offsets[slot], lengths[slot]), TOKENS[kinds[slot]]));
+        }
+        return builder.append(']').toString();
+    }
+}
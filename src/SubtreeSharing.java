@@ -0,0 +1,156 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.util.Arrays;
+
+/**
+ * Finds the structurally identical subtrees of a parse tree (hash-consing), so the output can be a
+ * DAG that has each distinct subtree once, with an edge to it from every place it is used.
+ * <p>
+ * Two subtrees are the same if their roots have the same kind and label and their children are,
+ * in order, the same subtrees (which tokens they came from doesn't matter). The tree is hashed
+ * bottom up, in one pass: every node gets the id of its "class" of identical subtrees, and each
+ * class is represented by the first of its nodes in pre-order.
+ */
+final class SubtreeSharing {
+
+    // The representative of every node (the first node in pre-order with an identical subtree).
+    private final int[] representatives;
+
+    // The number of nodes, and the number of distinct subtrees.
+    private final int nodes;
+    private final int unique;
+
+    private SubtreeSharing(final int[] representatives, final int nodes, final int unique) {
+        this.representatives = representatives;
+        this.nodes = nodes;
+        this.unique = unique;
+    }
+
+    /**
+     * Hash-cons a tree.
+     *
+     * @param tree The tree.
+     * @return which nodes are shared.
+     */
+    static SubtreeSharing of(final ParseTree tree) {
+        final int size = tree.size();
+        if (size == 0) {
+            return new SubtreeSharing(new int[0], 0, 0);
+        }
+
+        // The nodes in pre-order (walked backwards, so every child's class is known before its parent's).
+        final int[] order = new int[size];
+        int count = 0;
+        for (int node = 0; node != ParseTree.NONE; node = tree.nextPreOrder(node, 0)) {
+            order[count++] = node;
+        }
+
+        final var classes = new Classes(count);
+        final int[] classOf = new int[size];
+        final int[] first = new int[count];
+
+        for (int i = count - 1; i >= 0; i--) {
+            final int node = order[i];
+            final int id = classes.intern(tree, node, classOf);
+            classOf[node] = id;
+            first[id] = node;
+        }
+
+        final int[] representatives = new int[size];
+        Arrays.fill(representatives, ParseTree.NONE);
+        for (int i = 0; i < count; i++) {
+            representatives[order[i]] = first[classOf[order[i]]];
+        }
+        return new SubtreeSharing(representatives, count, classes.size);
+    }
+
+    /**
+     * @return the node that stands for this one's subtree (itself, if this is its first occurrence).
+     */
+    int representative(final int node) {
+        return representatives[node];
+    }
+
+    int nodes() {
+        return nodes;
+    }
+
+    int unique() {
+        return unique;
+    }
+
+    /**
+     * @return how many times smaller the DAG is than the tree (in nodes).
+     */
+    double ratio() {
+        return unique == 0 ? 1.0 : (double) nodes / unique;
+    }
+
+    /**
+     * The classes of identical subtrees: each is a kind, a label and a list of child classes (kept
+     * in one shared array), found through an open addressing hash table.
+     */
+    private static final class Classes {
+
+        private final byte[] kinds;
+        private final int[] labels;
+        private final int[] childStarts;
+        private final int[] childCounts;
+        private final int[] hashes;
+        private int size;
+
+        private int[] children = new int[1024];
+        private int childrenSize;
+
+        // (class id + 1); 0 is an empty slot.
+        private final int[] slots;
+
+        Classes(final int capacity) {
+            this.kinds = new byte[capacity];
+            this.labels = new int[capacity];
+            this.childStarts = new int[capacity];
+            this.childCounts = new int[capacity];
+            this.hashes = new int[capacity];
+            this.slots = new int[Integer.highestOneBit(capacity) << 2];
+        }
+
+        // The class of a node (whose children have their classes already).
+        int intern(final ParseTree tree, final int node, final int[] classOf) {
+            final byte kind = tree.kind(node);
+            final int label = tree.label(node);
+
+            // Append the child classes (they are taken back out if the class already exists).
+            final int start = childrenSize;
+            int hash = 31 * kind + label;
+            for (int child = tree.firstChild(node); child != ParseTree.NONE; child = tree.nextSibling(child)) {
+                if (childrenSize == children.length) {
+                    children = Arrays.copyOf(children, children.length * 2);
+                }
+                children[childrenSize++] = classOf[child];
+                hash = 31 * hash + classOf[child];
+            }
+            final int childCount = childrenSize - start;
+            hash ^= hash >>> 16;
+
+            int slot = hash & (slots.length - 1);
+            while (slots[slot] != 0) {
+                final int id = slots[slot] - 1;
+                if (hashes[id] == hash && kinds[id] == kind && labels[id] == label && childCounts[id] == childCount
+                        && Arrays.equals(children, childStarts[id], childStarts[id] + childCount, children, start, childrenSize)) {
+                    childrenSize = start;
+                    return id;
+                }
+                slot = (slot + 1) & (slots.length - 1);
+            }
+
+            final int id = size++;
+            kinds[id] = kind;
+            labels[id] = label;
+            childStarts[id] = start;
+            childCounts[id] = childCount;
+            hashes[id] = hash;
+            slots[slot] = id + 1;
+            return id;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An output pass that draws a {@link ParseTree} as an SVG picture (laid out by {@link TreeLayout}),
+ * so the tree can be looked at in any browser, with no GraphViz and no network.
+ * <p>
+ * The shapes follow the DOT output: non-terminals and token boxes are rectangles, lexemes are
+ * ovals, epsilons are bare text and syntax errors are red. All the edges are one path.
+ */
+final class SvgWriter {
+
+    // Flush the text to the sink in pieces of about this many characters.
+    private static final int CHUNK_SIZE = 1 << 15;
+
+    private final OutputSink sink;
+    private final StringBuilder text = new StringBuilder(CHUNK_SIZE + 256);
+    private long length;
+
+    private SvgWriter(final OutputSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Lay out a tree, and draw it.
+     *
+     * @param tree The parse tree.
+     * @param sink Receives the SVG.
+     * @return the number of bytes written.
+     */
+    static long write(final ParseTree tree, final OutputSink sink) {
+        return write(TreeLayout.of(tree), sink);
+    }
+
+    /**
+     * Draw a laid out tree.
+     *
+     * @param layout The layout.
+     * @param sink   Receives the SVG.
+     * @return the number of bytes written.
+     */
+    static long write(final TreeLayout layout, final OutputSink sink) {
+        final ParseTree tree = layout.tree();
+        final var writer = new SvgWriter(sink);
+        final StringBuilder text = writer.text;
+
+        final long width = Math.round(Math.ceil(layout.totalWidth()));
+        text.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(width)
+                .append("\" height=\"").append(layout.totalHeight())
+                .append("\" viewBox=\"0 0 ").append(width).append(' ').append(layout.totalHeight()).append("\">\n")
+                .append("<style>text{font:12px monospace;text-anchor:middle;dominant-baseline:central}")
+                .append(".n{fill:#fff;stroke:#333}.e{fill:none;stroke:#999}.r{fill:#fdd;stroke:#c00}</style>\n");
+        if (tree.size() == 0) {
+            text.append("</svg>\n");
+            writer.flush();
+            return writer.length;
+        }
+
+        // The edges: from the bottom of each parent to the top of each child.
+        text.append("<path class=\"e\" d=\"");
+        for (int node = tree.nextPreOrder(0, 0); node != ParseTree.NONE; node = tree.nextPreOrder(node, 0)) {
+            final int parent = tree.parent(node);
+            text.append('M').append(Math.round(layout.x(parent))).append(' ').append(layout.y(parent) + TreeLayout.NODE_HEIGHT)
+                    .append('L').append(Math.round(layout.x(node))).append(' ').append(layout.y(node));
+            writer.flushIfFull();
+        }
+        text.append("\"/>\n");
+
+        // The nodes.
+        for (int node = 0; node != ParseTree.NONE; node = tree.nextPreOrder(node, 0)) {
+            final long x = Math.round(layout.x(node));
+            final int y = layout.y(node);
+            final int half = layout.width(node) / 2;
+
+            switch (tree.kind(node)) {
+                case ParseTree.LEXEME -> text.append("<ellipse class=\"n\" cx=\"").append(x)
+                        .append("\" cy=\"").append(y + TreeLayout.NODE_HEIGHT / 2)
+                        .append("\" rx=\"").append(half).append("\" ry=\"").append(TreeLayout.NODE_HEIGHT / 2).append("\"/>");
+                case ParseTree.EMPTY -> {
+                }
+                default -> text.append("<rect class=\"").append(tree.kind(node) == ParseTree.ERROR ? 'r' : 'n')
+                        .append("\" x=\"").append(x - half).append("\" y=\"").append(y)
+                        .append("\" width=\"").append(layout.width(node)).append("\" height=\"").append(TreeLayout.NODE_HEIGHT).append("\"/>");
+            }
+
+            text.append("<text x=\"").append(x).append("\" y=\"").append(y + TreeLayout.NODE_HEIGHT / 2).append("\">");
+            escape(TreeLayout.text(tree, node), text);
+            text.append("</text>\n");
+            writer.flushIfFull();
+        }
+
+        text.append("</svg>\n");
+        writer.flush();
+        return writer.length;
+    }
+
+    // Escape text for XML.
+    private static void escape(final String label, final StringBuilder text) {
+        for (int i = 0; i < label.length(); i++) {
+            final char c = label.charAt(i);
+            switch (c) {
+                case '<' -> text.append("&lt;");
+                case '>' -> text.append("&gt;");
+                case '&' -> text.append("&amp;");
+                case '"' -> text.append("&quot;");
+                default -> text.append(c);
+            }
+        }
+    }
+
+    private void flushIfFull() {
+        if (text.length() >= CHUNK_SIZE) {
+            this.flush();
+        }
+    }
+
+    private void flush() {
+        final byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        sink.write(bytes, 0, bytes.length);
+        length += bytes.length;
+        text.setLength(0);
+    }
+}
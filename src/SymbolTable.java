@@ -0,0 +1,182 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A table of interned strings (node labels, lexemes, error messages), each identified by a small
+ * int.
+ * <p>
+ * The fixed labels always come first, in a known order: the label of every {@link NonTerminal}
+ * (id = its ordinal) followed by the "&lt;TOKEN&gt;" label of every {@link Token}. Anything else
+ * gets the next free id the first time it is interned.
+ * <p>
+ * Lexemes can be interned straight out of the lexer's byte buffer; a String is only created the
+ * first time a new lexeme is seen.
+ */
+final class SymbolTable {
+
+    private static final NonTerminal[] NON_TERMINALS = NonTerminal.values();
+    private static final Token[] TOKENS = Token.values();
+
+    // The number of fixed labels at the start of every table.
+    static final int FIXED_SYMBOLS = NON_TERMINALS.length + TOKENS.length;
+
+    // The symbols themselves (UTF-8 bytes, plus the string, created lazily).
+    private byte[][] bytes;
+    private String[] strings;
+    private int[] hashes;
+    private int size;
+
+    // Open addressing hash table of (id + 1); 0 is an empty slot.
+    private int[] slots;
+
+    SymbolTable() {
+        this.bytes = new byte[64][];
+        this.strings = new String[64];
+        this.hashes = new int[64];
+        this.slots = new int[128];
+
+        for (var nonTerminal : NON_TERMINALS) {
+            this.intern(nonTerminal.getLabel());
+        }
+        for (var token : TOKENS) {
+            this.intern("<%s>".formatted(token));
+        }
+    }
+
+    /**
+     * Forget everything but the fixed labels (keeping the arrays, for the next input).
+     */
+    void clear() {
+        Arrays.fill(bytes, FIXED_SYMBOLS, size, null);
+        Arrays.fill(strings, FIXED_SYMBOLS, size, null);
+        size = FIXED_SYMBOLS;
+        this.rehash(slots.length);
+    }
+
+    /**
+     * @return the id of a Non-Terminal's label.
+     */
+    static int of(final NonTerminal nonTerminal) {
+        return nonTerminal.ordinal();
+    }
+
+    /**
+     * @return the id of a Token's "&lt;TOKEN&gt;" label.
+     */
+    static int of(final Token token) {
+        return NON_TERMINALS.length + token.ordinal();
+    }
+
+    /**
+     * Intern a string.
+     *
+     * @param string The string.
+     * @return its id.
+     */
+    int intern(final String string) {
+        final byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+        final int id = this.intern(ByteBuffer.wrap(encoded), 0, encoded.length);
+        if (strings[id] == null) {
+            strings[id] = string;
+        }
+        return id;
+    }
+
+    /**
+     * Intern the bytes in a region of a buffer.
+     *
+     * @param source The buffer.
+     * @param start  The absolute offset of the first byte.
+     * @param length The number of bytes.
+     * @return the id of the (UTF-8) string.
+     */
+    int intern(final ByteBuffer source, final int start, final int length) {
+        final int hash = hash(source, start, length);
+        int slot = hash & (slots.length - 1);
+
+        while (slots[slot] != 0) {
+            final int id = slots[slot] - 1;
+            if (hashes[id] == hash && equal(bytes[id], source, start, length)) {
+                return id;
+            }
+            slot = (slot + 1) & (slots.length - 1);
+        }
+
+        // A new symbol.
+        if (size == bytes.length) {
+            bytes = Arrays.copyOf(bytes, size * 2);
+            strings = Arrays.copyOf(strings, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+
+        final byte[] copy = new byte[length];
+        source.get(start, copy);
+
+        final int id = size++;
+        bytes[id] = copy;
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+
+        // Keep the table at most half full.
+        if (size * 2 > slots.length) {
+            this.rehash(slots.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * @return the symbol as a string.
+     */
+    String text(final int id) {
+        if (strings[id] == null) {
+            strings[id] = new String(bytes[id], StandardCharsets.UTF_8);
+        }
+        return strings[id];
+    }
+
+    /**
+     * @return the symbol as UTF-8 bytes (do NOT modify the array).
+     */
+    byte[] bytes(final int id) {
+        return bytes[id];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash(final int capacity) {
+        slots = new int[capacity];
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & (capacity - 1);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    // FNV-1a over the bytes.
+    private static int hash(final ByteBuffer source, final int start, final int length) {
+        int hash = 0x811C9DC5;
+        for (int i = start; i < start + length; i++) {
+            hash = (hash ^ (source.get(i) & 0xFF)) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equal(final byte[] symbol, final ByteBuffer source, final int start, final int length) {
+        if (symbol.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (symbol[i] != source.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,149 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A table-driven LL(1) parser: the grammar is NOT hand-coded here, it comes from an
+ * {@link LL1Grammar} (by default, the built-in one, {@code LL1Grammar.BUILT_IN}).
+ * <p>
+ * A single loop pops a grammar symbol (and the tree node it belongs under) off the stack. A token
+ * is matched, EMPTY adds an epsilon node, and a rule looks up its production in the prediction table
+ * with ONE array access (rule x current token) and pushes the right-hand side in reverse.
+ * <p>
+ * With the built-in grammar, a valid program gets the same tree as the one built by
+ * {@link Parser}. Errors are caught as soon as the table has no entry (which may be a little
+ * earlier than Parser notices), and anything left over after the program is a syntax error.
+ * <p>
+ * Error recovery (when it is on) is the textbook panic mode for any LL(1) grammar: a missing token
+ * is assumed to be there, and a rule that cannot start at the current token skips ahead to a token
+ * in its FIRST set (and is parsed after all) or its FOLLOW set (and is given up on).
+ */
+public class TableParser extends Parser {
+
+    private static final Token[] TOKENS = Token.values();
+
+    // The grammar (and its prediction table).
+    private final LL1Grammar grammar;
+
+    // The stack of (symbol, node) pairs.
+    private int[] symbols = new int[64];
+    private int[] nodes = new int[64];
+    private int top;
+
+    /**
+     * Construct a Parser for the built-in grammar.
+     *
+     * @param lexer         The Lexer Object
+     * @param codeGenerator The CodeGenerator Object
+     */
+    public TableParser(LexicalAnalyzer lexer, CodeGenerator codeGenerator) {
+        this(lexer, codeGenerator, LL1Grammar.builtIn());
+    }
+
+    /**
+     * Construct a Parser for any LL(1) grammar.
+     *
+     * @param lexer         The Lexer Object
+     * @param codeGenerator The CodeGenerator Object
+     * @param grammar       The grammar to parse with
+     */
+    public TableParser(LexicalAnalyzer lexer, CodeGenerator codeGenerator, LL1Grammar grammar) {
+        super(lexer, codeGenerator);
+        this.grammar = grammar;
+    }
+
+    /**
+     * Parse the start symbol, then check that all the input has been used.
+     *
+     * @param parentNode The parent node for the parse tree
+     * @throws ParseException If there is a syntax error
+     */
+    @Override
+    void beginParsing(final int parentNode) throws ParseException {
+        top = 0;
+        push(grammar.startSymbol(), parentNode);
+
+        while (top > 0) {
+            top--;
+            final int symbol = symbols[top];
+            final int node = nodes[top];
+
+            try {
+                if (LL1Grammar.isToken(symbol)) {
+                    MATCH(node, TOKENS[symbol]);
+                } else if (symbol == LL1Grammar.EMPTY) {
+                    EMPTY(node);
+                } else {
+                    this.expand(symbol, node);
+                }
+            } catch (ParseException ex) {
+                this.recover(ex, symbol, node);
+            }
+
+            // When recovering, parse whatever is left over after a stray token as another program.
+            if (top == 0 && this.recoverAtEndOfInput(parentNode)) {
+                push(grammar.startSymbol(), parentNode);
+            }
+        }
+
+        if (lexer.currentToken() != Token.$$) {
+            raiseException(Token.$$, parentNode);
+        }
+    }
+
+    /**
+     * Recover from a syntax error in a symbol.
+     *
+     * @param error      The syntax error.
+     * @param symbol     The token or rule that could not be parsed.
+     * @param parentNode The node it belongs under.
+     * @throws ParseException The error itself, if error recovery is off.
+     */
+    private void recover(final ParseException error, final int symbol, final int parentNode) throws ParseException {
+        if (!LL1Grammar.isRule(symbol)) {
+            // Carry on as if the missing token had been there.
+            this.recover(error, null);
+            return;
+        }
+
+        final BitSet first = grammar.first(symbol);
+        final BitSet sync = grammar.follow(symbol);
+        sync.or(first);
+        this.recover(error, sync);
+
+        // Try the rule again if it can start here; otherwise, it is done.
+        if (first.get(lexer.currentToken().ordinal())) {
+            push(symbol, parentNode);
+        }
+    }
+
+    /**
+     * Replace a rule by its right-hand side (chosen by the current token).
+     */
+    private void expand(final int rule, final int parentNode) throws ParseException {
+        final NonTerminal label = grammar.label(rule);
+        final int thisNode = label == null ? parentNode : codeGenerator.addNonTerminalToTree(parentNode, label);
+        final int[] rightHandSide = grammar.predict(rule, lexer.currentToken());
+
+        if (rightHandSide == null) {
+            // Report the first token that could have been used here.
+            raiseException(TOKENS[grammar.expected(rule).nextSetBit(0)], thisNode);
+            return;
+        }
+
+        for (int i = rightHandSide.length - 1; i >= 0; i--) {
+            push(rightHandSide[i], thisNode);
+        }
+    }
+
+    private void push(final int symbol, final int node) {
+        if (top == symbols.length) {
+            symbols = Arrays.copyOf(symbols, top * 2);
+            nodes = Arrays.copyOf(nodes, top * 2);
+        }
+        symbols[top] = symbol;
+        nodes[top] = node;
+        top++;
+    }
+}
@@ -1,6 +1,6 @@
 //  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 
@@ -52,45 +52,159 @@ public enum Token {
     private final List<String> lexemeList;
 
     Token(final String... tokenStrings) {
-        this.lexemeList = new ArrayList<>(tokenStrings.length);
-        this.lexemeList.addAll(Arrays.asList(tokenStrings));
+        this.lexemeList = List.of(tokenStrings);
     }
 
+    // Only the 7-bit ASCII characters can appear in a keyword or operator.
+    private static final int ALPHABET = 128;
+
+    /**
+     * A character trie over every lexeme of every token, built once when the class is loaded.
+     * <p>
+     * TRIE[state * ALPHABET + ch] is the state reached from "state" on character "ch" (0 means "no
+     * transition", since nothing can lead back to the root state). ACCEPT[state] is the token whose
+     * lexeme ends at "state", or null.
+     */
+    private static final int[] TRIE;
+    private static final Token[] ACCEPT;
+
+    static {
+        // Count the states needed (worst case: one per character, plus the root).
+        int maxStates = 1;
+        for (var token : values()) {
+            for (var lexeme : token.lexemeList) {
+                maxStates += lexeme.length();
+            }
+        }
+
+        final int[] trie = new int[maxStates * ALPHABET];
+        final Token[] accept = new Token[maxStates];
+        int stateCount = 1;
+
+        for (var token : values()) {
+            for (var lexeme : token.lexemeList) {
+                int state = 0;
+                for (int i = 0; i < lexeme.length(); i++) {
+                    final int index = state * ALPHABET + lexeme.charAt(i);
+                    if (trie[index] == 0) {
+                        trie[index] = stateCount++;
+                    }
+                    state = trie[index];
+                }
+                accept[state] = token;
+            }
+        }
+
+        TRIE = Arrays.copyOf(trie, stateCount * ALPHABET);
+        ACCEPT = Arrays.copyOf(accept, stateCount);
+    }
 
     /**
      * Get a Token object from the Lexeme string.
+     * <p>
+     * Leading and trailing whitespace is ignored. This does not allocate and runs in O(length).
      *
      * @param string The String (lexeme) to convert to a compiler.Token
      * @return A compiler.Token object based on the input String (lexeme)
      */
     public static Token fromLexeme(final String string) {
-        // Just to be safe...
-        final var lexeme = string.trim();
+        // Just to be safe... (skip surrounding whitespace without trimming)
+        int start = 0;
+        int end = string.length();
+        while (start < end && string.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && string.charAt(end - 1) <= ' ') {
+            end--;
+        }
 
         // An empty string/lexeme should mean no more tokens to process.
         // Return the "end of input maker" if the string is empty.
-        if (lexeme.isEmpty()) {
+        if (start == end) {
             return $$;
         }
 
-        // Regex for one or more digits optionally followed by and more digits.
+        // One or more digits optionally followed by a "." and more digits.
         // (doesn't handle "-", "+" etc., only digits)
-        // Return the number token if the string represents a number.
-        if (lexeme.matches("\\d+(?:\\.\\d+)?")) {
+        if (isNumber(string, start, end)) {
             return NUMBER;
         }
 
-        // Search through ALL lexemes looking for a match with early bailout.
-        // Return the matching token if found.
-        for (var token : Token.values()) {
-            if (token.lexemeList.contains(lexeme)) {
-                // early bailout from for loop.
-                return token;
-            }
+        // Walk the trie; any character that leaves it means the lexeme is unknown.
+        int state = 0;
+        for (int i = start; i < end && state >= 0; i++) {
+            state = step(state, string.charAt(i));
         }
 
         // NOTE: UNKNOWN could represent an ID, for example.
-        // Return "UNKNOWN" if
-        return UNKNOWN;
+        return state > 0 && ACCEPT[state] != null ? ACCEPT[state] : UNKNOWN;
+    }
+
+    /**
+     * Get a Token object from a lexeme stored in a byte buffer (as found by the lexer).
+     *
+     * @param source The buffer holding the lexeme.
+     * @param start  The absolute offset of the lexeme.
+     * @param length The length of the lexeme in bytes.
+     * @return A compiler.Token object based on the lexeme.
+     */
+    public static Token fromLexeme(final ByteBuffer source, final int start, final int length) {
+        if (length == 0) {
+            return $$;
+        }
+
+        final int end = start + length;
+
+        // Same rules as above: digits, optionally followed by a "." and more digits.
+        int pos = start;
+        while (pos < end && isDigit(source.get(pos))) {
+            pos++;
+        }
+        if (pos > start) {
+            if (pos < end && source.get(pos) == '.' && pos + 1 < end) {
+                pos++;
+                while (pos < end && isDigit(source.get(pos))) {
+                    pos++;
+                }
+            }
+            return pos == end ? NUMBER : UNKNOWN;
+        }
+
+        int state = 0;
+        for (int i = start; i < end && state >= 0; i++) {
+            state = step(state, source.get(i));
+        }
+
+        return state > 0 && ACCEPT[state] != null ? ACCEPT[state] : UNKNOWN;
+    }
+
+    // Follow one trie transition; -1 means there is none.
+    private static int step(final int state, final int ch) {
+        if (ch < 0 || ch >= ALPHABET) {
+            return -1;
+        }
+        final int next = TRIE[state * ALPHABET + ch];
+        return next == 0 ? -1 : next;
+    }
+
+    private static boolean isNumber(final String lexeme, final int start, final int end) {
+        int pos = start;
+        while (pos < end && isDigit(lexeme.charAt(pos))) {
+            pos++;
+        }
+        if (pos == start) {
+            return false;
+        }
+        if (pos < end && lexeme.charAt(pos) == '.' && pos + 1 < end) {
+            pos++;
+            while (pos < end && isDigit(lexeme.charAt(pos))) {
+                pos++;
+            }
+        }
+        return pos == end;
+    }
+
+    private static boolean isDigit(final int ch) {
+        return ch >= '0' && ch <= '9';
     }
 }
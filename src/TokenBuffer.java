@@ -0,0 +1,275 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A packed, "struct of arrays" list of tokens.
+ * <p>
+ * Instead of one object (plus a list node and a String) per token, each token is just three ints:
+ * the ordinal of its {@link Token}, and the offset and length of its lexeme within the source
+ * buffer. The lexeme itself is only turned into a String when somebody asks for it.
+ */
+final class TokenBuffer {
+
+    // values() clones its array on every call, so keep one copy around.
+    private static final Token[] TOKENS = Token.values();
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // The bytes the offsets refer to.
+    private ByteBuffer source;
+
+    private int[] kinds;
+    private int[] offsets;
+    private int[] lengths;
+    private int size;
+
+    /**
+     * Construct an empty token buffer.
+     *
+     * @param source The input the tokens were scanned from.
+     */
+    TokenBuffer(final ByteBuffer source) {
+        this(source, INITIAL_CAPACITY);
+    }
+
+    /**
+     * Construct an empty token buffer with room for a given number of tokens.
+     *
+     * @param source   The input the tokens were scanned from.
+     * @param capacity The initial capacity.
+     */
+    TokenBuffer(final ByteBuffer source, final int capacity) {
+        this.source = source;
+        this.kinds = new int[Math.max(capacity, 16)];
+        this.offsets = new int[kinds.length];
+        this.lengths = new int[kinds.length];
+    }
+
+    /**
+     * Empty the buffer (keeping its arrays), ready to scan a new input.
+     *
+     * @param source The new input.
+     */
+    void reset(final ByteBuffer source) {
+        this.source = source;
+        this.size = 0;
+    }
+
+    /**
+     * Stitch several token buffers (scanned from consecutive regions of the same source) into one.
+     *
+     * @param source The input all the tokens were scanned from.
+     * @param parts  The token buffers, in source order.
+     * @return a single token buffer holding all the tokens.
+     */
+    static TokenBuffer concat(final ByteBuffer source, final List<TokenBuffer> parts) {
+        int total = 0;
+        for (var part : parts) {
+            total += part.size;
+        }
+
+        final var result = new TokenBuffer(source, total);
+        for (var part : parts) {
+            System.arraycopy(part.kinds, 0, result.kinds, result.size, part.size);
+            System.arraycopy(part.offsets, 0, result.offsets, result.size, part.size);
+            System.arraycopy(part.lengths, 0, result.lengths, result.size, part.size);
+            result.size += part.size;
+        }
+        return result;
+    }
+
+    /**
+     * Replace a run of tokens after an edit of the source: the tokens before the run are kept as
+     * they are, and the ones after it are moved along with the text.
+     *
+     * @param edited      The edited source.
+     * @param from        The first token replaced.
+     * @param to          One past the last token replaced.
+     * @param replacement The new tokens (scanned from the edited source).
+     * @param shift       How far the text after the edit moved.
+     * @return a token buffer over the edited source.
+     */
+    TokenBuffer splice(final ByteBuffer edited, final int from, final int to, final TokenBuffer replacement, final int shift) {
+        final int tail = size - to;
+        final var result = new TokenBuffer(edited, from + replacement.size + tail);
+
+        System.arraycopy(kinds, 0, result.kinds, 0, from);
+        System.arraycopy(offsets, 0, result.offsets, 0, from);
+        System.arraycopy(lengths, 0, result.lengths, 0, from);
+
+        System.arraycopy(replacement.kinds, 0, result.kinds, from, replacement.size);
+        System.arraycopy(replacement.offsets, 0, result.offsets, from, replacement.size);
+        System.arraycopy(replacement.lengths, 0, result.lengths, from, replacement.size);
+
+        final int moved = from + replacement.size;
+        System.arraycopy(kinds, to, result.kinds, moved, tail);
+        System.arraycopy(lengths, to, result.lengths, moved, tail);
+        for (int i = 0; i < tail; i++) {
+            result.offsets[moved + i] = offsets[to + i] + shift;
+        }
+
+        result.size = moved + tail;
+        return result;
+    }
+
+    /**
+     * Find the first token that starts at or after an offset.
+     *
+     * @param offset The offset in the source.
+     * @return the index of the token (size() if there is none).
+     */
+    int indexAt(final int offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (offsets[middle] < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Scan a region of the source and append its tokens.
+     * <p>
+     * The region must begin at the start of a line, so that '#' comments are recognized.
+     *
+     * @param start The first offset to scan.
+     * @param limit One past the last offset to scan.
+     */
+    void scan(final int start, final int limit) {
+        final var scanner = new TokenScanner(source, start, limit);
+
+        while (scanner.next()) {
+            final Token token = Token.fromLexeme(source, scanner.tokenStart, scanner.tokenLength);
+            this.add(token, scanner.tokenStart, scanner.tokenLength);
+        }
+    }
+
+    /**
+     * Append a token.
+     *
+     * @param token  The token type.
+     * @param offset The offset of its lexeme in the source.
+     * @param length The length of its lexeme.
+     */
+    void add(final Token token, final int offset, final int length) {
+        if (size == kinds.length) {
+            final int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+
+        kinds[size] = token.ordinal();
+        offsets[size] = offset;
+        lengths[size] = length;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Token token(final int index) {
+        return TOKENS[kinds[index]];
+    }
+
+    int offset(final int index) {
+        return offsets[index];
+    }
+
+    int length(final int index) {
+        return lengths[index];
+    }
+
+    ByteBuffer source() {
+        return source;
+    }
+
+    /**
+     * Find the (1 based) line number of an offset in the source.
+     * <p>
+     * This counts line breaks, so it is meant for error messages; lookups that move forward
+     * through the source continue from the previous one made with the same position.
+     *
+     * @param position The caller's position (see {@link Position}).
+     * @param offset   The offset.
+     */
+    int line(final Position position, final int offset) {
+        this.seek(position, offset);
+        return position.line;
+    }
+
+    /**
+     * @return the (1 based) column of an offset in the source.
+     */
+    int column(final Position position, final int offset) {
+        this.seek(position, offset);
+        return offset - position.lineStart + 1;
+    }
+
+    private void seek(final Position position, final int offset) {
+        if (position.source != source || offset < position.offset) {
+            position.source = source;
+            position.offset = 0;
+            position.line = 1;
+            position.lineStart = 0;
+        }
+        for (int i = position.offset; i < offset; i++) {
+            if (source.get(i) == '\n') {
+                position.line++;
+                position.lineStart = i + 1;
+            }
+        }
+        position.offset = offset;
+    }
+
+    /**
+     * The last position a reader looked up with line()/column(), so its next lookup can continue
+     * from it. Every reader has its own, so readers of one buffer on different threads (the
+     * {@link ParallelParser}'s slices) do not share one.
+     */
+    static final class Position {
+        private ByteBuffer source;
+        private int offset;
+        private int line = 1;
+        private int lineStart;
+
+        // Start again from the beginning of the source.
+        void reset() {
+            this.source = null;
+        }
+    }
+
+    /**
+     * Materialize the lexeme of a token.
+     *
+     * @param index The index of the token.
+     * @return the lexeme as a new string.
+     */
+    String lexeme(final int index) {
+        return TokenScanner.lexeme(source, offsets[index], lengths[index]);
+    }
+
+    /**
+     * To string for debugging.
+     */
+    @Override
+    public String toString() {
+        final var builder = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(String.format("{lexeme=%s, token=%s}", lexeme(i), token(i)));
+        }
+        return builder.append(']').toString();
+    }
+}
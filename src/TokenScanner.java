@@ -0,0 +1,183 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A character level, DFA based scanner that walks a byte buffer (usually a memory-mapped file) in a
+ * single pass.
+ * <p>
+ * Whitespace and '#' comment lines are skipped inline, so the input never has to be split, trimmed
+ * or joined into one big string first. Operators are recognized by their characters, so tokens like
+ * ":=", "&lt;=" and "(" do NOT need to be surrounded by spaces anymore.
+ * <p>
+ * A comment is (as before) a line whose first non-blank character is a '#'; it runs to the end of
+ * the line.
+ * <p>
+ * The long runs (blanks, comment text, words and digits) are skipped by the active
+ * {@link ScanBackend}.
+ * <p>
+ * Each call to {@link #next()} leaves the boundaries of the scanned lexeme in {@link #tokenStart}
+ * and {@link #tokenLength} (absolute offsets into the source buffer).
+ */
+final class TokenScanner {
+
+    // The states of the scanner's DFA.
+    private static final int START = 0;
+    private static final int COMMENT = 1;
+    private static final int WORD = 2;
+    private static final int INTEGER = 3;
+    private static final int FRACTION = 4;
+    private static final int DONE = 5;
+
+    // The input, indexed absolutely from 0 up to "limit".
+    private final ByteBuffer source;
+    private final int limit;
+
+    // Finds the ends of whitespace, comment, word and number runs.
+    private final ScanBackend backend;
+
+    // Where the scanner currently is.
+    private int position;
+
+    // True until something other than whitespace is seen on the current line.
+    private boolean atLineStart;
+
+    // The number of line breaks ('\n') passed so far, and the offset where the current line starts.
+    int lines;
+    int lineStart;
+
+    // The lexeme found by the last call to next().
+    int tokenStart;
+    int tokenLength;
+
+    /**
+     * Construct a scanner over the whole buffer (from 0 to its limit).
+     *
+     * @param source The input bytes.
+     */
+    TokenScanner(final ByteBuffer source) {
+        this(source, 0, source.limit());
+    }
+
+    /**
+     * Construct a scanner over a region of the buffer.
+     *
+     * @param source The input bytes.
+     * @param start  The first offset to scan.
+     * @param limit  One past the last offset to scan.
+     */
+    TokenScanner(final ByteBuffer source, final int start, final int limit) {
+        this.source = source;
+        this.position = start;
+        this.limit = limit;
+        this.atLineStart = true;
+        this.lineStart = start;
+        this.backend = ScanBackend.active;
+    }
+
+    /**
+     * Scan the next lexeme.
+     *
+     * @return false once the end of the input has been reached.
+     */
+    boolean next() {
+        int state = START;
+        int pos = this.position;
+
+        while (state != DONE) {
+            final int ch = pos < limit ? source.get(pos) & 0xFF : -1;
+
+            switch (state) {
+                case START -> {
+                    if (ch == -1) {
+                        this.position = pos;
+                        return false;
+                    } else if (ch == '\n' || ch == '\r') {
+                        atLineStart = true;
+                        if (ch == '\n') {
+                            lines++;
+                            lineStart = pos + 1;
+                        }
+                        pos++;
+                    } else if (isBlank(ch)) {
+                        pos = backend.skipBlanks(source, pos + 1, limit);
+                    } else if (ch == '#' && atLineStart) {
+                        state = COMMENT;
+                        pos++;
+                    } else {
+                        atLineStart = false;
+                        tokenStart = pos++;
+                        state = switch (ch) {
+                            case ':', '<', '>', '!' -> {
+                                // One of ":=", "<=", ">=" or "!=", or the single character alone.
+                                if (pos < limit && source.get(pos) == '=') {
+                                    pos++;
+                                }
+                                yield DONE;
+                            }
+                            default -> isDigit(ch) ? INTEGER : isWordChar(ch) ? WORD : DONE;
+                        };
+                    }
+                }
+                case COMMENT -> {
+                    pos = backend.findLineEnd(source, pos, limit);
+                    state = START;
+                }
+                case WORD -> {
+                    pos = backend.skipWordChars(source, pos, limit);
+                    state = DONE;
+                }
+                case INTEGER -> {
+                    pos = backend.skipDigits(source, pos, limit);
+                    if (pos + 1 < limit && source.get(pos) == '.' && isDigit(source.get(pos + 1))) {
+                        pos += 2;
+                        state = FRACTION;
+                    } else {
+                        state = DONE;
+                    }
+                }
+                case FRACTION -> {
+                    pos = backend.skipDigits(source, pos, limit);
+                    state = DONE;
+                }
+                default -> throw new IllegalStateException("Unknown scanner state: " + state);
+            }
+        }
+
+        this.tokenLength = pos - tokenStart;
+        this.position = pos;
+        return true;
+    }
+
+    /**
+     * Copy the last scanned lexeme out of the buffer.
+     *
+     * @return the lexeme as a string.
+     */
+    String lexeme() {
+        return lexeme(source, tokenStart, tokenLength);
+    }
+
+    /**
+     * Materialize a lexeme from a region of a buffer.
+     */
+    static String lexeme(final ByteBuffer source, final int start, final int length) {
+        final byte[] bytes = new byte[length];
+        source.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static boolean isBlank(final int ch) {
+        return ch == ' ' || ch == '\t' || ch == '\f' || ch == 0x0B;
+    }
+
+    static boolean isDigit(final int ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    // Letters, '_' and any non-ASCII byte (so UTF-8 sequences stay in one lexeme).
+    static boolean isWordChar(final int ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || ch == '_' || ch >= 0x80;
+    }
+}
@@ -0,0 +1,109 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+/**
+ * Turns a parse tree into a compact, AST-like tree (for "--compact" output).
+ * <p>
+ * Three things are folded away:
+ * <ul>
+ *     <li>epsilon productions (and non-terminals left with no children at all);</li>
+ *     <li>chains of non-terminals with a single child: Expr &rarr; Expo &rarr; Term &rarr; Factor
+ *     &rarr; x is just "x";</li>
+ *     <li>the "&lt;TOKEN&gt;" box of every matched token: the token and its lexeme are one node
+ *     (a LEXEME, which still knows its token index).</li>
+ * </ul>
+ * The root is always kept. The compact tree shares the original's symbol table, and its nodes are
+ * added in pre-order, so every output pass works on it unchanged.
+ */
+final class TreeCompactor {
+
+    private TreeCompactor() {
+    }
+
+    /**
+     * Build the compact version of a tree.
+     *
+     * @param tree The parse tree.
+     * @return a new, compact tree.
+     */
+    static ParseTree compact(final ParseTree tree) {
+        final var compact = new ParseTree(tree.symbols());
+        if (tree.size() == 0) {
+            return compact;
+        }
+
+        // The nodes in pre-order (so walking it backwards visits every child before its parent).
+        final int[] order = new int[tree.size()];
+        int count = 0;
+        for (int node = 0; node != ParseTree.NONE; node = tree.nextPreOrder(node, 0)) {
+            order[count++] = node;
+        }
+
+        // What each node becomes: itself, the node that replaces it (the end of a chain), or
+        // NONE if it disappears.
+        final int[] replacement = new int[tree.size()];
+        for (int i = count - 1; i >= 0; i--) {
+            final int node = order[i];
+            replacement[node] = switch (tree.kind(node)) {
+                case ParseTree.EMPTY -> ParseTree.NONE;
+                case ParseTree.NONTERMINAL -> {
+                    int survivors = 0;
+                    int only = ParseTree.NONE;
+                    for (int child = tree.firstChild(node); child != ParseTree.NONE; child = tree.nextSibling(child)) {
+                        if (replacement[child] != ParseTree.NONE) {
+                            survivors++;
+                            only = replacement[child];
+                        }
+                    }
+                    yield node == 0 || survivors > 1 ? node : survivors == 1 ? only : ParseTree.NONE;
+                }
+                default -> node;
+            };
+        }
+
+        // Copy what is left, in pre-order: (original node, parent in the compact tree) pairs.
+        final int[] stack = new int[2 * tree.size()];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = ParseTree.NONE;
+
+        while (top > 0) {
+            final int parent = stack[--top];
+            final int node = replacement[stack[--top]];
+
+            switch (tree.kind(node)) {
+                case ParseTree.TERMINAL -> {
+                    final int lexeme = tree.firstChild(node);
+                    final int label = lexeme != ParseTree.NONE ? tree.label(lexeme) : tree.label(node);
+                    compact.addNode(parent, ParseTree.LEXEME, label, tree.token(node));
+                }
+                case ParseTree.NONTERMINAL -> {
+                    final int copy = compact.addNode(parent, ParseTree.NONTERMINAL, tree.label(node), ParseTree.NONE);
+
+                    // Push the surviving children last to first, so they come off first to last.
+                    final int mark = top;
+                    for (int child = tree.firstChild(node); child != ParseTree.NONE; child = tree.nextSibling(child)) {
+                        if (replacement[child] != ParseTree.NONE) {
+                            stack[top++] = child;
+                            stack[top++] = copy;
+                        }
+                    }
+                    reversePairs(stack, mark, top);
+                }
+                default -> compact.addNode(parent, tree.kind(node), tree.label(node), tree.token(node));
+            }
+        }
+        return compact;
+    }
+
+    // Reverse the order of the (node, parent) pairs in stack[from, to).
+    private static void reversePairs(final int[] stack, int from, int to) {
+        for (to -= 2; from < to; from += 2, to -= 2) {
+            final int node = stack[from];
+            final int parent = stack[from + 1];
+            stack[from] = stack[to];
+            stack[from + 1] = stack[to + 1];
+            stack[to] = node;
+            stack[to + 1] = parent;
+        }
+    }
+}
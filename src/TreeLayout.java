@@ -0,0 +1,301 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+/**
+ * A tidy drawing of a {@link ParseTree}: Buchheim, Junger and Leipert's linear time version of the
+ * Reingold-Tilford algorithm ("Improving Walker's Algorithm to Run in Linear Time", 2002), with
+ * nodes as wide as their labels.
+ * <p>
+ * Parents are centered over their children, every level is a row, and subtrees are pushed as close
+ * together as they can go without overlapping (the smaller subtrees between two that are pushed
+ * apart are spaced out evenly). Both passes walk the tree without recursion, so any depth of tree
+ * is fine.
+ */
+final class TreeLayout {
+
+    // Sizes, in pixels (for a 12px monospace font).
+    static final int CHAR_WIDTH = 7;
+    static final int NODE_HEIGHT = 24;
+    static final int NODE_PADDING = 16;
+    static final int SIBLING_GAP = 10;
+    static final int LEVEL_HEIGHT = 60;
+    static final int MARGIN = 20;
+
+    private final ParseTree tree;
+
+    // The results: the center of every node, and the size of the whole drawing.
+    private final double[] x;
+    private final int[] depth;
+    private final int[] width;
+    private double totalWidth;
+    private int totalHeight;
+
+    // Working storage for the first walk.
+    private final double[] prelim;
+    private final double[] mod;
+    private final double[] shift;
+    private final double[] change;
+    private final int[] thread;
+    private final int[] ancestor;
+    private final int[] defaultAncestor;
+    private final int[] number;
+    private final int[] leftSibling;
+    private final int[] lastChild;
+
+    private TreeLayout(final ParseTree tree) {
+        final int size = tree.size();
+        this.tree = tree;
+        this.x = new double[size];
+        this.depth = new int[size];
+        this.width = new int[size];
+        this.prelim = new double[size];
+        this.mod = new double[size];
+        this.shift = new double[size];
+        this.change = new double[size];
+        this.thread = new int[size];
+        this.ancestor = new int[size];
+        this.defaultAncestor = new int[size];
+        this.number = new int[size];
+        this.leftSibling = new int[size];
+        this.lastChild = new int[size];
+    }
+
+    /**
+     * Lay out a tree.
+     *
+     * @param tree The tree (node 0 is the root).
+     * @return the layout.
+     */
+    static TreeLayout of(final ParseTree tree) {
+        final var layout = new TreeLayout(tree);
+        if (tree.size() > 0) {
+            layout.prepare();
+            layout.firstWalk();
+            layout.secondWalk();
+        }
+        return layout;
+    }
+
+    /**
+     * @return the text shown for a node.
+     */
+    static String text(final ParseTree tree, final int node) {
+        return tree.kind(node) == ParseTree.EMPTY ? "\u03B5" : tree.labelText(node);
+    }
+
+    /**
+     * @return the horizontal center of a node.
+     */
+    double x(final int node) {
+        return x[node];
+    }
+
+    /**
+     * @return the top of a node.
+     */
+    int y(final int node) {
+        return MARGIN + depth[node] * LEVEL_HEIGHT;
+    }
+
+    int width(final int node) {
+        return width[node];
+    }
+
+    double totalWidth() {
+        return totalWidth;
+    }
+
+    int totalHeight() {
+        return totalHeight;
+    }
+
+    ParseTree tree() {
+        return tree;
+    }
+
+    // The node sizes, and the sibling links the algorithm needs.
+    private void prepare() {
+        for (int node = 0; node != ParseTree.NONE; node = tree.nextPreOrder(node, 0)) {
+            width[node] = text(tree, node).length() * CHAR_WIDTH + NODE_PADDING;
+            thread[node] = ParseTree.NONE;
+            ancestor[node] = node;
+            defaultAncestor[node] = tree.firstChild(node);
+
+            int previous = ParseTree.NONE;
+            int count = 0;
+            for (int child = tree.firstChild(node); child != ParseTree.NONE; child = tree.nextSibling(child)) {
+                depth[child] = depth[node] + 1;
+                leftSibling[child] = previous;
+                number[child] = ++count;
+                previous = child;
+            }
+            lastChild[node] = previous;
+        }
+        leftSibling[0] = ParseTree.NONE;
+        number[0] = 1;
+    }
+
+    // The first (post-order) walk: every node's position relative to its siblings.
+    private void firstWalk() {
+        int node = this.leftmostLeaf(0);
+        while (true) {
+            this.place(node);
+            if (node == 0) {
+                return;
+            }
+
+            final int parent = tree.parent(node);
+            defaultAncestor[parent] = this.apportion(node, defaultAncestor[parent]);
+
+            final int next = tree.nextSibling(node);
+            node = next != ParseTree.NONE ? this.leftmostLeaf(next) : parent;
+        }
+    }
+
+    // Place a node whose children (if any) have all been placed.
+    private void place(final int node) {
+        final int left = leftSibling[node];
+        final int first = tree.firstChild(node);
+
+        if (first == ParseTree.NONE) {
+            prelim[node] = left == ParseTree.NONE ? 0 : prelim[left] + this.separation(left, node);
+            return;
+        }
+
+        this.executeShifts(node);
+        final double midpoint = (prelim[first] + prelim[lastChild[node]]) / 2;
+        if (left == ParseTree.NONE) {
+            prelim[node] = midpoint;
+        } else {
+            prelim[node] = prelim[left] + this.separation(left, node);
+            mod[node] = prelim[node] - midpoint;
+        }
+    }
+
+    /**
+     * Push the subtree of "node" clear of the subtrees of its left siblings (following the contours
+     * of both sides down, level by level).
+     *
+     * @return the new "default ancestor" for the parent.
+     */
+    private int apportion(final int node, int defaultAncestor) {
+        final int left = leftSibling[node];
+        if (left == ParseTree.NONE) {
+            return defaultAncestor;
+        }
+
+        // The inside and outside contours, on the right (of node) and the left (of its siblings).
+        int insideRight = node;
+        int outsideRight = node;
+        int insideLeft = left;
+        int outsideLeft = tree.firstChild(tree.parent(node));
+        double shiftInsideRight = mod[insideRight];
+        double shiftOutsideRight = mod[outsideRight];
+        double shiftInsideLeft = mod[insideLeft];
+        double shiftOutsideLeft = mod[outsideLeft];
+
+        while (this.nextRight(insideLeft) != ParseTree.NONE && this.nextLeft(insideRight) != ParseTree.NONE) {
+            insideLeft = this.nextRight(insideLeft);
+            insideRight = this.nextLeft(insideRight);
+            outsideLeft = this.nextLeft(outsideLeft);
+            outsideRight = this.nextRight(outsideRight);
+            ancestor[outsideRight] = node;
+
+            final double distance = (prelim[insideLeft] + shiftInsideLeft) - (prelim[insideRight] + shiftInsideRight)
+                    + this.separation(insideLeft, insideRight);
+            if (distance > 0) {
+                this.moveSubtree(this.ancestorOf(insideLeft, node, defaultAncestor), node, distance);
+                shiftInsideRight += distance;
+                shiftOutsideRight += distance;
+            }
+            shiftInsideLeft += mod[insideLeft];
+            shiftInsideRight += mod[insideRight];
+            shiftOutsideLeft += mod[outsideLeft];
+            shiftOutsideRight += mod[outsideRight];
+        }
+
+        if (this.nextRight(insideLeft) != ParseTree.NONE && this.nextRight(outsideRight) == ParseTree.NONE) {
+            thread[outsideRight] = this.nextRight(insideLeft);
+            mod[outsideRight] += shiftInsideLeft - shiftOutsideRight;
+        }
+        if (this.nextLeft(insideRight) != ParseTree.NONE && this.nextLeft(outsideLeft) == ParseTree.NONE) {
+            thread[outsideLeft] = this.nextLeft(insideRight);
+            mod[outsideLeft] += shiftInsideRight - shiftOutsideLeft;
+            defaultAncestor = node;
+        }
+        return defaultAncestor;
+    }
+
+    // Move the subtree "right" by "distance", and spread the subtrees between it and "left" out evenly.
+    private void moveSubtree(final int left, final int right, final double distance) {
+        final double subtrees = number[right] - number[left];
+        change[right] -= distance / subtrees;
+        shift[right] += distance;
+        change[left] += distance / subtrees;
+        prelim[right] += distance;
+        mod[right] += distance;
+    }
+
+    // Apply the shifts that moveSubtree spread out, to the children of a node (right to left).
+    private void executeShifts(final int node) {
+        double totalShift = 0;
+        double totalChange = 0;
+        for (int child = lastChild[node]; child != ParseTree.NONE; child = leftSibling[child]) {
+            prelim[child] += totalShift;
+            mod[child] += totalShift;
+            totalChange += change[child];
+            totalShift += shift[child] + totalChange;
+        }
+    }
+
+    // The greatest uncommon ancestor of insideLeft and node (a left sibling of node).
+    private int ancestorOf(final int insideLeft, final int node, final int defaultAncestor) {
+        return tree.parent(ancestor[insideLeft]) == tree.parent(node) ? ancestor[insideLeft] : defaultAncestor;
+    }
+
+    private int nextLeft(final int node) {
+        final int first = tree.firstChild(node);
+        return first != ParseTree.NONE ? first : thread[node];
+    }
+
+    private int nextRight(final int node) {
+        final int last = lastChild[node];
+        return last != ParseTree.NONE ? last : thread[node];
+    }
+
+    // How far apart the centers of two neighbours must be.
+    private double separation(final int left, final int right) {
+        return (width[left] + width[right]) / 2.0 + SIBLING_GAP;
+    }
+
+    private int leftmostLeaf(int node) {
+        while (tree.firstChild(node) != ParseTree.NONE) {
+            node = tree.firstChild(node);
+        }
+        return node;
+    }
+
+    // The second (pre-order) walk: add up the modifiers on the way down, then fit the drawing to the margins.
+    private void secondWalk() {
+        final double[] sums = shift; // (no longer needed) the sum of the modifiers of a node's ancestors
+        double minimum = Double.MAX_VALUE;
+        double maximum = -Double.MAX_VALUE;
+        int deepest = 0;
+
+        sums[0] = 0;
+        for (int node = 0; node != ParseTree.NONE; node = tree.nextPreOrder(node, 0)) {
+            x[node] = prelim[node] + sums[node];
+            for (int child = tree.firstChild(node); child != ParseTree.NONE; child = tree.nextSibling(child)) {
+                sums[child] = sums[node] + mod[node];
+            }
+            minimum = Math.min(minimum, x[node] - width[node] / 2.0);
+            maximum = Math.max(maximum, x[node] + width[node] / 2.0);
+            deepest = Math.max(deepest, depth[node]);
+        }
+
+        for (int node = 0; node < x.length; node++) {
+            x[node] += MARGIN - minimum;
+        }
+        totalWidth = maximum - minimum + 2 * MARGIN;
+        totalHeight = deepest * LEVEL_HEIGHT + NODE_HEIGHT + 2 * MARGIN;
+    }
+}
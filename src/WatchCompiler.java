@@ -0,0 +1,174 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Watches directories ("--watch"), and compiles every ".txt" file in them (or in their
+ * subdirectories, new ones too) as soon as it is created or changed, the way "--batch" would.
+ * <p>
+ * Editors often save a file with more than one write, so the changes are collected until none
+ * has come for {@value #SETTLE_MILLIS} ms, and each changed file is compiled once. The JVM, the
+ * session and the JIT's work are kept from one change to the next.
+ */
+final class WatchCompiler {
+
+    // How long the changes must stop for before compiling.
+    private static final long SETTLE_MILLIS = 50;
+
+    private final CompilerOptions options;
+    private final WatchService watcher;
+    private final LL1Grammar grammar;
+    private ParseSession session;
+    private final Path outputDirectory;
+
+    // The directory of each watch, and the watched directory it is in (the base of its outputs under "--out").
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Map<WatchKey, Path> bases = new HashMap<>();
+
+    private WatchCompiler(final CompilerOptions options, final WatchService watcher, final LL1Grammar grammar) {
+        this.options = options;
+        this.watcher = watcher;
+        this.grammar = grammar;
+        this.session = this.newSession();
+        this.outputDirectory = options.outputDirectory != null ? Path.of(options.outputDirectory) : null;
+    }
+
+    /**
+     * Watch until the process is stopped.
+     *
+     * @param options The command line options (the files are the directories to watch).
+     * @return the exit code: 2 if a directory does not exist, 3 if it cannot be watched, 4 for a bad grammar.
+     */
+    static int watch(final CompilerOptions options) {
+        for (final String file : options.files) {
+            if (!Files.isDirectory(Path.of(file))) {
+                System.err.printf("Not a directory: %s%n", file);
+                return 2;
+            }
+        }
+
+        final LL1Grammar grammar;
+        try {
+            grammar = options.grammarFile != null ? LL1Grammar.fromFile(Path.of(options.grammarFile)) : null;
+        } catch (IOException | IllegalArgumentException ex) {
+            System.err.printf("Bad grammar!!! %s%n", ex.getMessage());
+            return 4;
+        }
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            final var watchCompiler = new WatchCompiler(options, watcher, grammar);
+            for (final String file : options.files) {
+                final Path directory = Path.of(file);
+                watchCompiler.register(directory, directory);
+            }
+            System.out.printf("Watching %d directories (stop with Ctrl-C)%n", watchCompiler.directories.size());
+            watchCompiler.run();
+            return 0;
+        } catch (IOException | UncheckedIOException ex) {
+            System.err.printf("Could not watch the directories!!! %s%n", ex.getMessage());
+            return 3;
+        }
+    }
+
+    // Watch a directory and every directory under it; return the ".txt" files already in them.
+    private List<Path> register(final Path directory, final Path base) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (final Path path : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+                final WatchKey key = path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, path);
+                bases.put(key, base);
+            }
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(WatchCompiler::isSource).toList();
+        }
+    }
+
+    private void run() throws IOException {
+        final Map<Path, Path> changed = new LinkedHashMap<>(); // file -> base, in the order they changed
+
+        while (true) {
+            // Wait for a change, then take the ones that follow it until they settle.
+            WatchKey key;
+            try {
+                key = watcher.take();
+                while (key != null) {
+                    this.collect(key, changed);
+                    key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                return;
+            }
+
+            changed.forEach(this::compile);
+            changed.clear();
+        }
+    }
+
+    // The ".txt" files a watch saw created or changed (and the ones in any new directory, which is watched too).
+    private void collect(final WatchKey key, final Map<Path, Path> changed) throws IOException {
+        final Path directory = directories.get(key);
+        final Path base = bases.get(key);
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                continue;
+            }
+            final Path path = directory.resolve((Path) event.context());
+            final List<Path> files = Files.isDirectory(path)
+                    ? (event.kind() == StandardWatchEventKinds.ENTRY_CREATE ? this.register(path, base) : List.of())
+                    : isSource(path) ? List.of(path) : List.of();
+            for (final Path file : files) {
+                changed.put(file, base);
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+            bases.remove(key);
+        }
+    }
+
+    private void compile(final Path file, final Path base) {
+        if (!Files.isRegularFile(file)) {
+            return; // (deleted since)
+        }
+        final long start = System.nanoTime();
+        final var input = new BatchCompiler.Input(file, base);
+        final boolean compiled;
+        try {
+            compiled = BatchCompiler.compile(session, input, outputDirectory, options.format, System.err);
+        } catch (RuntimeException ex) {
+            System.err.printf("%s: Could not compile the file!!! %s%n", file, ex);
+            session = this.newSession(); // (the old one may be left half way through a parse)
+            return;
+        }
+        if (compiled) {
+            System.out.printf("%s: %s in %.2f ms%n", file, options.validate ? "OK" : "compiled",
+                    (System.nanoTime() - start) / 1e6);
+        }
+    }
+
+    private ParseSession newSession() {
+        final var session = new ParseSession(options.engine, grammar, !options.validate);
+        session.setErrorRecovery(options.recover);
+        session.getCodeGenerator().configure(options);
+        return session;
+    }
+
+    private static boolean isSource(final Path path) {
+        return path.getFileName().toString().endsWith(".txt") && Files.isRegularFile(path);
+    }
+}
@@ -0,0 +1,80 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Every parsing engine, with and without error recovery, building a tree or only recognizing,
+ * must give the same verdict (valid or not) on the same input: in particular on input left over
+ * after a complete program, which the table-driven engine always rejected and the others used to
+ * ignore.
+ * <p>
+ * Run it with the compiler's sources:
+ * <pre>
+ *     javac -d out src/*.java test/*.java
+ *     java -cp out EngineAgreementTest
+ * </pre>
+ * It exits with 1 if any input gets different verdicts (printing them).
+ */
+public final class EngineAgreementTest {
+
+    private EngineAgreementTest() {
+    }
+
+    public static void main(final String[] args) {
+        final List<Case> cases = new ArrayList<>();
+        cases.add(new Case("write 1\nwrite 2\n", true));
+        cases.add(new Case("", true));
+        cases.add(new Case("while n < 3 do n := n + 1 od\nwrite n\n", true));
+        cases.add(new Case("write 1\nod\nwrite 2\n", false));
+        cases.add(new Case("write 1\nfi\n", false));
+        cases.add(new Case("write 1\nuntil n > 2\n", false));
+        cases.add(new Case("write 1\nwrite 2 )\n", false));
+        cases.add(new Case("sum := 1\n:= 2\n", false));
+        cases.add(new Case("write 1\nthen\n", false));
+        cases.add(new Case("if n > 1 then write 1 fi fi\n", false));
+        cases.add(new Case("write (1\n", false));
+        // Big enough for the parallel engine to cut it into several slices.
+        final String statements = "sum := sum + n * 2\n".repeat(ParallelParser.MIN_SLICE_TOKENS / 2);
+        cases.add(new Case(statements, true));
+        cases.add(new Case(statements + "od\n" + statements, false));
+        cases.add(new Case(statements + "write 2 )\n", false));
+
+        int failures = 0;
+        for (final Case test : cases) {
+            final var verdicts = new StringBuilder();
+            boolean agree = true;
+            for (final CompilerOptions.Engine engine : CompilerOptions.Engine.values()) {
+                for (final boolean recover : new boolean[]{false, true}) {
+                    for (final boolean buildTree : new boolean[]{false, true}) {
+                        final boolean valid = parse(test.source(), engine, recover, buildTree);
+                        agree &= valid == test.valid();
+                        verdicts.append(String.format("  %s%s%s: %s%n", engine, recover ? " --recover" : "",
+                                buildTree ? "" : " --validate", valid ? "valid" : "invalid"));
+                    }
+                }
+            }
+            if (!agree) {
+                failures++;
+                final String source = test.source();
+                System.out.printf("%s (expected %s):%n%s%n", source.length() > 80 ? source.substring(0, 80) + "..." : source,
+                        test.valid() ? "valid" : "invalid", verdicts);
+            }
+        }
+
+        System.out.printf("%d inputs, %d got different verdicts%n", cases.size(), failures);
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static boolean parse(final String source, final CompilerOptions.Engine engine, final boolean recover,
+                                 final boolean buildTree) {
+        final CodeGenerator codeGenerator = buildTree ? new CodeGenerator() : new RecognizerCodeGenerator();
+        final Parser parser = ParseSession.newParser(engine, new LexicalAnalyzer(source), codeGenerator, null);
+        parser.setErrorRecovery(recover);
+        parser.parse();
+        return parser.getDiagnostics().isEmpty();
+    }
+
+    private record Case(String source, boolean valid) {
+    }
+}
@@ -0,0 +1,206 @@
+//  ************** REQUIRES JAVA 17 OR ABOVE! (https://adoptium.net/) ************** //
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A differential test of the {@link Optimizer}: random programs (with loops, branches, reads and
+ * divisions that may be by 0, in long and in double mode) are run as they are, and after each set
+ * of passes, on the {@link Interpreter} and on the {@link BytecodeCompiler}. What they write, and
+ * where they fail, must always be the same.
+ * <p>
+ * Run it with the compiler's sources:
+ * <pre>
+ *     javac -d out src/*.java test/*.java
+ *     java -cp out OptimizerFuzzTest [programs (default 10000)] [first seed (default 0)]
+ * </pre>
+ * It exits with 1 if any program differs (printing the first few that do).
+ */
+public final class OptimizerFuzzTest {
+
+    private static final String[] VARIABLES = {"sum", "count", "n", "abs"};
+    private static final String[] RELATIONS = {"<", ">", "<=", ">=", "=", "!="};
+    private static final int[] NUMBERS = {0, 1, 2, 3, 7, 10};
+
+    // How many numbers each program is given to read.
+    private static final int INPUTS = 200;
+
+    // How many differing programs to print.
+    private static final int SHOWN = 3;
+
+    private final Random random;
+    private final boolean doubles;
+
+    private OptimizerFuzzTest(final long seed) {
+        this.random = new Random(seed);
+        this.doubles = seed % 3 == 0;
+    }
+
+    public static void main(final String[] args) {
+        final int programs = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        final long firstSeed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+
+        // No passes, each pass by itself, all of them, and a couple of mixes.
+        final List<Set<Optimizer.Pass>> passSets = new ArrayList<>();
+        passSets.add(EnumSet.noneOf(Optimizer.Pass.class));
+        for (final Optimizer.Pass pass : Optimizer.Pass.values()) {
+            passSets.add(EnumSet.of(pass));
+        }
+        passSets.add(EnumSet.allOf(Optimizer.Pass.class));
+        passSets.add(EnumSet.of(Optimizer.Pass.FOLD, Optimizer.Pass.DSE));
+        passSets.add(EnumSet.of(Optimizer.Pass.HOIST, Optimizer.Pass.DSE));
+
+        int failures = 0;
+        int runtimeErrors = 0;
+        for (long seed = firstSeed; seed < firstSeed + programs; seed++) {
+            final var test = new OptimizerFuzzTest(seed);
+            final String source = test.program();
+            final String input = test.input();
+
+            final var codeGenerator = new CodeGenerator();
+            new Parser(new LexicalAnalyzer(source), codeGenerator).parse();
+            final Interpreter original = Interpreter.compile(codeGenerator.getParseTree(), null);
+            final String expected = run(original, input);
+            if (expected.contains("Runtime error: ")) {
+                runtimeErrors++;
+            }
+
+            for (final Set<Optimizer.Pass> passes : passSets) {
+                final Ir ir = Ir.lower(original);
+                Optimizer.optimize(ir, passes, null);
+                final Interpreter optimized = ir.toInterpreter();
+
+                final String interpreted = run(optimized, input);
+                final String compiled = run(BytecodeCompiler.compile(optimized), input);
+                if (!expected.equals(interpreted) || !expected.equals(compiled)) {
+                    if (++failures <= SHOWN) {
+                        System.out.printf("Seed %d, passes %s:%n%s%nExpected:%n%s%nInterpreted:%n%s%nCompiled:%n%s%n%n",
+                                seed, passes, source, expected, interpreted, compiled);
+                    }
+                    break;
+                }
+            }
+        }
+
+        System.out.printf("%d programs (%d ending in a runtime error), %d differed%n", programs, runtimeErrors, failures);
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    // What a program writes (and the error it stops with, if it does).
+    private static String run(final Object program, final String input) {
+        final var output = OutputSink.inMemory();
+        final var in = new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII));
+        try {
+            if (program instanceof Interpreter interpreter) {
+                interpreter.run(in, output);
+            } else {
+                ((BytecodeCompiler.Compiled) program).run(in, output);
+            }
+            return output.toString();
+        } catch (Interpreter.RuntimeError ex) {
+            return output + "Runtime error: " + ex.getMessage();
+        }
+    }
+
+    // *****************************************************************************************************
+
+    private String program() {
+        final var program = new StringBuilder();
+        this.statements(program, 0, new HashSet<>(), 3 + random.nextInt(8));
+        program.append("write sum\nwrite abs\n");
+        return program.toString();
+    }
+
+    private String input() {
+        final var input = new StringBuilder();
+        for (int i = 0; i < INPUTS; i++) {
+            input.append(random.nextInt(20) - 5).append(' ');
+        }
+        return input.toString();
+    }
+
+    // Statements; a loop counter is "frozen" inside its loop (nothing else assigns it, so every loop ends).
+    private void statements(final StringBuilder program, final int depth, final Set<String> frozen, final int count) {
+        for (int i = 0; i < count; i++) {
+            this.statement(program, depth, frozen);
+        }
+    }
+
+    private void statement(final StringBuilder program, final int depth, final Set<String> frozen) {
+        switch (random.nextInt(depth > 2 ? 4 : 7)) {
+            case 0, 1 -> program.append(this.assignable(frozen)).append(" := ").append(this.expression(3)).append('\n');
+            case 2 -> program.append("write ").append(this.expression(3)).append('\n');
+            case 3 -> program.append("read ").append(this.assignable(frozen)).append('\n');
+            case 4 -> {
+                program.append("if ").append(this.condition()).append(" then\n");
+                this.statements(program, depth + 1, frozen, 1 + random.nextInt(3));
+                if (random.nextBoolean()) {
+                    program.append("else\n");
+                    this.statements(program, depth + 1, frozen, 1 + random.nextInt(3));
+                }
+                program.append("fi\n");
+            }
+            case 5 -> {
+                if (frozen.contains("count")) {
+                    this.statement(program, depth, frozen);
+                    return;
+                }
+                program.append("count := 0\nwhile count < ").append(random.nextInt(6)).append(" do\n");
+                this.statements(program, depth + 1, with(frozen, "count"), 1 + random.nextInt(4));
+                program.append("count := count + 1\nod\n");
+            }
+            default -> {
+                if (frozen.contains("n")) {
+                    this.statement(program, depth, frozen);
+                    return;
+                }
+                program.append("n := 0\ndo\n");
+                this.statements(program, depth + 1, with(frozen, "n"), 1 + random.nextInt(4));
+                program.append("n := n + 1\nuntil n > ").append(random.nextInt(5)).append('\n');
+            }
+        }
+    }
+
+    private static Set<String> with(final Set<String> frozen, final String variable) {
+        final Set<String> set = new HashSet<>(frozen);
+        set.add(variable);
+        return set;
+    }
+
+    private String assignable(final Set<String> frozen) {
+        String variable;
+        do {
+            variable = this.variable();
+        } while (frozen.contains(variable));
+        return variable;
+    }
+
+    private String condition() {
+        return this.expression(2) + " " + RELATIONS[random.nextInt(RELATIONS.length)] + " " + this.expression(2);
+    }
+
+    private String expression(final int depth) {
+        return switch (random.nextInt(depth <= 0 ? 2 : 5)) {
+            case 0 -> this.number();
+            case 1 -> this.variable();
+            case 2 -> "(" + this.expression(depth - 1) + ")";
+            default -> this.expression(depth - 1) + " " + "+-*/".charAt(random.nextInt(4)) + " " + this.expression(depth - 1);
+        };
+    }
+
+    private String variable() {
+        return VARIABLES[random.nextInt(VARIABLES.length)];
+    }
+
+    private String number() {
+        return doubles && random.nextInt(3) == 0
+                ? random.nextInt(5) + ".5"
+                : String.valueOf(NUMBERS[random.nextInt(NUMBERS.length)]);
+    }
+}